@@ -0,0 +1,72 @@
+package se.ifmo.ru.lab1.cache;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import se.ifmo.ru.lab1.transaction.TransactionCallbacks;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Точка (x, y) -> id строки coordinates с этим значением. Повторный upsert той же точки
+// не обращается к БД. Новые id попадают сюда только после коммита, чтобы откат не оставил
+// в кэше ссылку на несуществующую строку.
+@ApplicationScoped
+public class CoordinatesInternCache {
+
+    private static final int MAX_ENTRIES = 10_000;
+
+    @Inject
+    private TransactionCallbacks transactionCallbacks;
+
+    private final Map<Point, Long> entries = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Point, Long> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    // Растет при каждой инвалидации; id, найденный до нее, в кэш не попадает
+    private long generation;
+
+    public synchronized Long get(float x, Double y) {
+        return entries.get(new Point(x, y));
+    }
+
+    public synchronized long generation() {
+        return generation;
+    }
+
+    // loadedAt — значение generation() до обращения к БД
+    public void put(float x, Double y, Long id, long loadedAt) {
+        transactionCallbacks.afterCommit(() -> putIfCurrent(new Point(x, y), id, loadedAt));
+    }
+
+    // Сброс сразу и повторно после завершения транзакции, как в SpaceMarineResponseCache
+    public void invalidate(Long id) {
+        transactionCallbacks.nowAndAfterCompletion(() -> evict(id));
+    }
+
+    public synchronized void clear() {
+        generation++;
+        entries.clear();
+    }
+
+    private synchronized void putIfCurrent(Point point, Long id, long loadedAt) {
+        if (generation == loadedAt) {
+            entries.put(point, id);
+        }
+    }
+
+    private synchronized void evict(Long id) {
+        generation++;
+        entries.values().removeIf(id::equals);
+    }
+
+    // -0.0 и 0.0 в PostgreSQL равны, поэтому знак нуля нормализуется
+    private record Point(float x, Double y) {
+        private Point {
+            x = x + 0.0f;
+            y = y != null ? y + 0.0 : null;
+        }
+    }
+}
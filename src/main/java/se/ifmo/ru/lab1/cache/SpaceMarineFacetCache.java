@@ -0,0 +1,60 @@
+package se.ifmo.ru.lab1.cache;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import se.ifmo.ru.lab1.dto.FacetsResponse;
+import se.ifmo.ru.lab1.transaction.TransactionCallbacks;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+// Фасеты по nameFilter и размеру интервала health. Любая запись в space_marines (и переименование
+// или удаление главы) сбрасывает кэш целиком: фасеты зависят от всей таблицы.
+@ApplicationScoped
+public class SpaceMarineFacetCache {
+
+    private static final int MAX_ENTRIES = 256;
+
+    @Inject
+    private TransactionCallbacks transactionCallbacks;
+
+    private final Map<String, FacetsResponse> entries = new LinkedHashMap<>(32, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, FacetsResponse> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    // Растет при каждой инвалидации; результат, посчитанный до нее, в кэш не попадает
+    private long generation;
+
+    public FacetsResponse get(String nameFilter, int healthBucketSize, Supplier<FacetsResponse> loader) {
+        String key = healthBucketSize + ":" + (nameFilter != null ? nameFilter.toLowerCase().trim() : "");
+        long loadedAt;
+        synchronized (this) {
+            FacetsResponse cached = entries.get(key);
+            if (cached != null) {
+                return cached;
+            }
+            loadedAt = generation;
+        }
+        FacetsResponse facets = loader.get();
+        synchronized (this) {
+            if (generation == loadedAt) {
+                entries.put(key, facets);
+            }
+        }
+        return facets;
+    }
+
+    // Сброс сразу и повторно после завершения транзакции, как в SpaceMarineResponseCache
+    public void invalidateAll() {
+        transactionCallbacks.nowAndAfterCompletion(this::clear);
+    }
+
+    private synchronized void clear() {
+        generation++;
+        entries.clear();
+    }
+}
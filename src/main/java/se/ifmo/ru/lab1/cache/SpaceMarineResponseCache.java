@@ -0,0 +1,221 @@
+package se.ifmo.ru.lab1.cache;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.json.bind.Jsonb;
+import jakarta.json.bind.JsonbBuilder;
+import se.ifmo.ru.lab1.dto.SpaceMarineDTO;
+import se.ifmo.ru.lab1.transaction.TransactionCallbacks;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+
+// Ограниченный LRU-кэш готовых JSON-ответов GET /spacemarines/{id}. В ответ входят данные главы
+// и координат, поэтому записи сбрасываются не только при изменении десантника, но и при записи
+// в его главу или координаты.
+@ApplicationScoped
+public class SpaceMarineResponseCache {
+
+    private static final int MAX_ENTRIES = 10_000;
+
+    @Inject
+    private TransactionCallbacks transactionCallbacks;
+
+    private final Jsonb jsonb = JsonbBuilder.create();
+
+    private final Map<Integer, Entry> entries = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest) {
+            if (size() > MAX_ENTRIES) {
+                unindex(eldest.getKey(), eldest.getValue());
+                return true;
+            }
+            return false;
+        }
+    };
+
+    // Обратные индексы: какие закэшированные ответы содержат данную главу / координаты
+    private final Map<Long, Set<Integer>> byChapter = new HashMap<>();
+    private final Map<Long, Set<Integer>> byCoordinates = new HashMap<>();
+
+    // Отметки инвалидаций по ключам: ответ, загрузка которого началась раньше отметки его
+    // десантника, главы или координат, в кэш не попадает. Отметки нужны только пока идут
+    // загрузки, поэтому без них карты очищаются
+    private long clock;
+    private long allStamp;
+    private int loading;
+    private final Map<Integer, Long> marineStamps = new HashMap<>();
+    private final Map<Long, Long> chapterStamps = new HashMap<>();
+    private final Map<Long, Long> coordinatesStamps = new HashMap<>();
+
+    // Закэшированный ответ либо результат loader; null, если десантника нет
+    public Entry get(Integer id, Function<Integer, Optional<SpaceMarineDTO>> loader) {
+        long loadedAt;
+        synchronized (this) {
+            Entry cached = entries.get(id);
+            if (cached != null) {
+                return cached;
+            }
+            loadedAt = clock;
+            loading++;
+        }
+        Entry entry = null;
+        try {
+            Optional<SpaceMarineDTO> dto = loader.apply(id);
+            if (dto.isEmpty()) {
+                return null;
+            }
+            entry = new Entry(jsonb.toJson(dto.get()).getBytes(StandardCharsets.UTF_8),
+                    dto.get().getChapter() != null ? dto.get().getChapter().getId() : null,
+                    dto.get().getCoordinates() != null ? dto.get().getCoordinates().getId() : null);
+            return entry;
+        } finally {
+            synchronized (this) {
+                if (entry != null && isFresh(id, entry, loadedAt)) {
+                    remove(id);
+                    entries.put(id, entry);
+                    index(byChapter, entry.chapterId, id);
+                    index(byCoordinates, entry.coordinatesId, id);
+                }
+                if (--loading == 0) {
+                    marineStamps.clear();
+                    chapterStamps.clear();
+                    coordinatesStamps.clear();
+                }
+            }
+        }
+    }
+
+    public void invalidate(Integer id) {
+        invalidateTwice(() -> {
+            remove(id);
+            stamp(marineStamps, id);
+        });
+    }
+
+    public void invalidateChapter(Long chapterId) {
+        invalidateTwice(() -> {
+            removeAll(byChapter.get(chapterId));
+            stamp(chapterStamps, chapterId);
+        });
+    }
+
+    public void invalidateCoordinates(Long coordinatesId) {
+        invalidateTwice(() -> {
+            removeAll(byCoordinates.get(coordinatesId));
+            stamp(coordinatesStamps, coordinatesId);
+        });
+    }
+
+    public void invalidateAll() {
+        invalidateTwice(() -> {
+            entries.clear();
+            byChapter.clear();
+            byCoordinates.clear();
+            if (loading > 0) {
+                allStamp = ++clock;
+            }
+        });
+    }
+
+    // Сброс сразу и повторно после завершения транзакции: иначе параллельный запрос
+    // может положить в кэш версию, прочитанную до коммита
+    private void invalidateTwice(Runnable eviction) {
+        transactionCallbacks.nowAndAfterCompletion(() -> {
+            synchronized (this) {
+                eviction.run();
+            }
+        });
+    }
+
+    private boolean isFresh(Integer id, Entry entry, long loadedAt) {
+        return allStamp <= loadedAt
+                && marineStamps.getOrDefault(id, 0L) <= loadedAt
+                && (entry.chapterId == null || chapterStamps.getOrDefault(entry.chapterId, 0L) <= loadedAt)
+                && (entry.coordinatesId == null
+                        || coordinatesStamps.getOrDefault(entry.coordinatesId, 0L) <= loadedAt);
+    }
+
+    private <K> void stamp(Map<K, Long> stamps, K key) {
+        if (loading > 0) {
+            stamps.put(key, ++clock);
+        }
+    }
+
+    private void removeAll(Set<Integer> ids) {
+        if (ids != null) {
+            for (Integer id : List.copyOf(ids)) {
+                remove(id);
+            }
+        }
+    }
+
+    private void remove(Integer id) {
+        Entry removed = entries.remove(id);
+        if (removed != null) {
+            unindex(id, removed);
+        }
+    }
+
+    private void unindex(Integer id, Entry entry) {
+        unindex(byChapter, entry.chapterId, id);
+        unindex(byCoordinates, entry.coordinatesId, id);
+    }
+
+    private static void index(Map<Long, Set<Integer>> index, Long key, Integer id) {
+        if (key != null) {
+            index.computeIfAbsent(key, k -> new HashSet<>()).add(id);
+        }
+    }
+
+    private static void unindex(Map<Long, Set<Integer>> index, Long key, Integer id) {
+        if (key != null) {
+            Set<Integer> ids = index.get(key);
+            if (ids != null && ids.remove(id) && ids.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    public static class Entry {
+        private final byte[] body;
+        private final String etag;
+        private final Long chapterId;
+        private final Long coordinatesId;
+
+        private Entry(byte[] body, Long chapterId, Long coordinatesId) {
+            this.body = body;
+            this.etag = digest(body);
+            this.chapterId = chapterId;
+            this.coordinatesId = coordinatesId;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+
+        // Строгий ETag: хэш байтов ответа
+        public String getETag() {
+            return etag;
+        }
+
+        private static String digest(byte[] body) {
+            try {
+                byte[] hash = MessageDigest.getInstance("SHA-256").digest(body);
+                return HexFormat.of().formatHex(hash, 0, 16);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 is not available", e);
+            }
+        }
+    }
+}
@@ -1,23 +1,53 @@
 package se.ifmo.ru.lab1.dao;
 
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Tuple;
 import jakarta.persistence.TypedQuery;
 import jakarta.persistence.criteria.CriteriaBuilder;
 import jakarta.persistence.criteria.CriteriaQuery;
 import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Subquery;
+import org.hibernate.Session;
+import se.ifmo.ru.lab1.cache.SpaceMarineFacetCache;
+import se.ifmo.ru.lab1.cache.SpaceMarineResponseCache;
+import se.ifmo.ru.lab1.dto.CountMode;
 import se.ifmo.ru.lab1.entity.Chapter;
+import se.ifmo.ru.lab1.stats.ChapterCounterBuffer;
+import se.ifmo.ru.lab1.transaction.TransactionCallbacks;
 
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 @ApplicationScoped
 public class ChapterDAO {
 
+    private static final int IN_CHUNK_SIZE = 1000;
+    // Результат запроса кэшируется и сбрасывается Hibernate при любой записи в таблицу
+    private static final String CACHEABLE = "org.hibernate.cacheable";
+
     @PersistenceContext(unitName = "PostgresDS")
     private EntityManager entityManager;
 
+    @Inject
+    private SpaceMarineResponseCache spaceMarineResponseCache;
+
+    @Inject
+    private SpaceMarineFacetCache spaceMarineFacetCache;
+
+    @Inject
+    private ChapterCounterBuffer chapterCounterBuffer;
+
+    @Inject
+    private TransactionCallbacks transactionCallbacks;
+
     public Chapter save(Chapter chapter) {
         entityManager.persist(chapter);
         return chapter;
@@ -27,10 +57,39 @@ public class ChapterDAO {
         return Optional.ofNullable(entityManager.find(Chapter.class, id));
     }
 
+    public List<Chapter> findByIds(Collection<Long> ids) {
+        List<Chapter> result = new ArrayList<>(ids.size());
+        List<Long> idList = new ArrayList<>(ids);
+        // IN-список разбивается на части, чтобы не упереться в лимит параметров JDBC
+        for (int from = 0; from < idList.size(); from += IN_CHUNK_SIZE) {
+            TypedQuery<Chapter> query = entityManager.createQuery(
+                    "SELECT c FROM Chapter c WHERE c.id IN :ids", 
+                    Chapter.class);
+            query.setParameter("ids", idList.subList(from, Math.min(from + IN_CHUNK_SIZE, idList.size())));
+            result.addAll(query.getResultList());
+        }
+        return result;
+    }
+
+    // Только id, без загрузки сущностей в контекст персистентности
+    public Set<Long> findExistingIds(Collection<Long> ids) {
+        Set<Long> result = new HashSet<>();
+        List<Long> idList = new ArrayList<>(ids);
+        for (int from = 0; from < idList.size(); from += IN_CHUNK_SIZE) {
+            TypedQuery<Long> query = entityManager.createQuery(
+                    "SELECT c.id FROM Chapter c WHERE c.id IN :ids", 
+                    Long.class);
+            query.setParameter("ids", idList.subList(from, Math.min(from + IN_CHUNK_SIZE, idList.size())));
+            result.addAll(query.getResultList());
+        }
+        return result;
+    }
+
     public List<Chapter> findAll() {
         TypedQuery<Chapter> query = entityManager.createQuery(
                 "SELECT c FROM Chapter c", 
                 Chapter.class);
+        query.setHint(CACHEABLE, true);
         return query.getResultList();
     }
 
@@ -50,13 +109,7 @@ public class ChapterDAO {
         
         cq.select(root);
         
-        if (sortBy != null && !sortBy.trim().isEmpty()) {
-            if ("desc".equalsIgnoreCase(sortOrder)) {
-                cq.orderBy(cb.desc(root.get(sortBy)));
-            } else {
-                cq.orderBy(cb.asc(root.get(sortBy)));
-            }
-        }
+        cq.orderBy(KeysetCursor.orderBy(cb, root, sortBy, sortOrder));
         
         TypedQuery<Chapter> query = entityManager.createQuery(cq);
         query.setFirstResult(page * size);
@@ -64,46 +117,170 @@ public class ChapterDAO {
         return query.getResultList();
     }
 
+    // Страница и (при withTotal) общее число строк одним запросом через скалярный подзапрос COUNT
+    public PageResult<Chapter> findPage(String sortBy, String sortOrder, int page, String after,
+                                      int size, boolean withTotal) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> cq = cb.createTupleQuery();
+        Root<Chapter> root = cq.from(Chapter.class);
+        
+        boolean keyset = after != null && !after.trim().isEmpty();
+        if (keyset) {
+            cq.where(KeysetCursor.decode(after).toPredicate(cb, root, sortBy, sortOrder));
+        }
+        cq.orderBy(KeysetCursor.orderBy(cb, root, sortBy, sortOrder));
+        
+        if (withTotal) {
+            Subquery<Long> total = cq.subquery(Long.class);
+            total.select(cb.count(total.from(Chapter.class)));
+            cq.select(cb.tuple(root, total));
+        } else {
+            cq.select(cb.tuple(root));
+        }
+        
+        TypedQuery<Tuple> query = entityManager.createQuery(cq);
+        query.setHint(CACHEABLE, true);
+        if (!keyset) {
+            query.setFirstResult(page * size);
+        }
+        query.setMaxResults(size);
+        List<Tuple> rows = query.getResultList();
+        
+        List<Chapter> content = new ArrayList<>(rows.size());
+        for (Tuple row : rows) {
+            content.add(row.get(0, Chapter.class));
+        }
+        
+        if (!withTotal) {
+            return new PageResult<>(content, null, CountMode.NONE);
+        }
+        long totalElements;
+        if (!rows.isEmpty()) {
+            totalElements = rows.get(0).get(1, Long.class);
+        } else if (!keyset && page == 0) {
+            totalElements = 0;
+        } else {
+            totalElements = count();
+        }
+        return new PageResult<>(content, totalElements, CountMode.EXACT);
+    }
+
+    public String nextCursor(List<Chapter> page, int size, String sortBy) {
+        return KeysetCursor.next(entityManager, Chapter.class, page, size, sortBy);
+    }
+
     public long count() {
         TypedQuery<Long> query = entityManager.createQuery(
                 "SELECT COUNT(c) FROM Chapter c", 
                 Long.class);
+        query.setHint(CACHEABLE, true);
         return query.getSingleResult();
     }
 
+    public long estimateCount() {
+        return TableStatistics.estimateRowCount(entityManager, "chapters");
+    }
+
     public Optional<Chapter> findByName(String name) {
         TypedQuery<Chapter> query = entityManager.createQuery(
                 "SELECT c FROM Chapter c WHERE c.name = :name", 
                 Chapter.class);
         query.setParameter("name", name);
+        query.setHint(CACHEABLE, true);
         List<Chapter> results = query.getResultList();
         return results.isEmpty() ? Optional.empty() : Optional.of(results.get(0));
     }
 
     public Chapter update(Chapter chapter) {
+        if (chapter.getId() != null) {
+            spaceMarineResponseCache.invalidateChapter(chapter.getId());
+        }
+        // Имя главы входит в фасеты
+        spaceMarineFacetCache.invalidateAll();
         return entityManager.merge(chapter);
     }
 
     public void delete(Long id) {
+        spaceMarineResponseCache.invalidateChapter(id);
+        spaceMarineFacetCache.invalidateAll();
         Chapter chapter = entityManager.find(Chapter.class, id);
         if (chapter != null) {
             entityManager.remove(chapter);
         }
     }
 
-    public void removeMarineFromChapter(Long chapterId) {
-        Chapter chapter = entityManager.find(Chapter.class, chapterId);
-        if (chapter != null && chapter.getMarinesCount() > 0) {
-            chapter.setMarinesCount(chapter.getMarinesCount() - 1);
-            entityManager.merge(chapter);
+    // Условный UPDATE вместо find + merge: параллельные изменения одной главы не теряются,
+    // а граница проверяется в той же операции. false, если главы нет или счетчик уже 0
+    public boolean removeMarineFromChapter(Long chapterId) {
+        spaceMarineResponseCache.invalidateChapter(chapterId);
+        if (chapterCounterBuffer.isEnabled()) {
+            chapterCounterBuffer.add(chapterId, -1);
+            return true;
         }
+        return adjustMarinesCount(chapterId, -1, "marines_count > 0");
+    }
+
+    // false, если главы нет или в ней уже 1000 десантников. В отложенном режиме буферизуется только
+    // запись: наличие главы и лимит проверяются сразу по БД с учетом несброшенных дельт
+    public boolean addMarineToChapter(Long chapterId) {
+        spaceMarineResponseCache.invalidateChapter(chapterId);
+        if (chapterCounterBuffer.isEnabled()) {
+            return chapterCounterBuffer.tryAdd(chapterId, 1, 1000, () -> findMarinesCount(chapterId));
+        }
+        return adjustMarinesCount(chapterId, 1, "marines_count < 1000");
+    }
+
+    // Значение из БД, минуя кэш второго уровня; null, если главы нет
+    private Integer findMarinesCount(Long chapterId) {
+        List<Integer> counts = entityManager.createQuery(
+                "SELECT c.marinesCount FROM Chapter c WHERE c.id = :chapterId",
+                Integer.class)
+                .setParameter("chapterId", chapterId)
+                .getResultList();
+        return counts.isEmpty() ? null : counts.get(0);
+    }
+
+    // Один UPDATE на главу для пакетного создания и сброса отложенных счетчиков;
+    // счетчик остается в пределах 0..1000, как и в addMarineToChapter/removeMarineFromChapter
+    public void addMarinesToChapter(Long chapterId, int delta) {
+        spaceMarineResponseCache.invalidateChapter(chapterId);
+        updateMarinesCount(
+                "UPDATE chapters SET marines_count = LEAST(1000, GREATEST(0, marines_count + ?)) WHERE id = ?",
+                chapterId, delta);
+    }
+
+    private boolean adjustMarinesCount(Long chapterId, int delta, String condition) {
+        return updateMarinesCount(
+                "UPDATE chapters SET marines_count = marines_count + ? WHERE id = ? AND " + condition,
+                chapterId, delta) > 0;
+    }
+
+    // UPDATE через JDBC, а не JPQL: после массового UPDATE Hibernate сбрасывает весь регион Chapter.
+    // Здесь из L2-кэша убирается только эта глава (сразу и после завершения транзакции), а в кэше
+    // запросов — только запросы по chapters
+    private int updateMarinesCount(String sql, Long chapterId, int delta) {
+        // Несброшенные изменения главы иначе перезаписали бы новое значение счетчика
+        entityManager.flush();
+        QuerySpaces.invalidate(entityManager, "chapters");
+        int updated = entityManager.unwrap(Session.class).doReturningWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                statement.setInt(1, delta);
+                statement.setLong(2, chapterId);
+                return statement.executeUpdate();
+            }
+        });
+        transactionCallbacks.nowAndAfterCompletion(
+                () -> entityManager.getEntityManagerFactory().getCache().evict(Chapter.class, chapterId));
+        refreshIfLoaded(chapterId);
+        return updated;
     }
 
-    public void addMarineToChapter(Long chapterId) {
-        Chapter chapter = entityManager.find(Chapter.class, chapterId);
-        if (chapter != null && chapter.getMarinesCount() < 1000) {
-            chapter.setMarinesCount(chapter.getMarinesCount() + 1);
-            entityManager.merge(chapter);
+    // UPDATE в обход контекста не трогает уже загруженную в него главу; перечитываем ее,
+    // чтобы ответ текущего запроса содержал новое значение счетчика
+    private void refreshIfLoaded(Long chapterId) {
+        Chapter reference = entityManager.getReference(Chapter.class, chapterId);
+        if (entityManager.getEntityManagerFactory().getPersistenceUnitUtil().isLoaded(reference)) {
+            entityManager.refresh(reference);
         }
     }
 }
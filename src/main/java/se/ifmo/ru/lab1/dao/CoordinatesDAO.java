@@ -1,23 +1,64 @@
 package se.ifmo.ru.lab1.dao;
 
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
 import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
 import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.PersistenceUnit;
+import jakarta.persistence.Tuple;
 import jakarta.persistence.TypedQuery;
 import jakarta.persistence.criteria.CriteriaBuilder;
 import jakarta.persistence.criteria.CriteriaQuery;
 import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Subquery;
+import org.hibernate.Session;
+import se.ifmo.ru.lab1.cache.CoordinatesInternCache;
+import se.ifmo.ru.lab1.cache.SpaceMarineResponseCache;
+import se.ifmo.ru.lab1.dto.CountMode;
 import se.ifmo.ru.lab1.entity.Coordinates;
+import se.ifmo.ru.lab1.transaction.TransactionCallbacks;
 
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 @ApplicationScoped
 public class CoordinatesDAO {
 
+    private static final int IN_CHUNK_SIZE = 1000;
+    // Результат запроса кэшируется и сбрасывается Hibernate при любой записи в таблицу
+    private static final String CACHEABLE = "org.hibernate.cacheable";
+    // Выражение GiST-индекса idx_coordinates_point (schema.sql); точки без y в него не попадают
+    private static final String POINT = "point(x::float8, y)";
+
     @PersistenceContext(unitName = "PostgresDS")
     private EntityManager entityManager;
 
+    @PersistenceUnit(unitName = "PostgresDS")
+    private EntityManagerFactory entityManagerFactory;
+
+    @Inject
+    private TransactionCallbacks transactionCallbacks;
+
+    @Inject
+    private SpaceMarineResponseCache spaceMarineResponseCache;
+
+    @Inject
+    private CoordinatesInternCache coordinatesInternCache;
+
+    // Текущий блок id для upsert
+    private long nextPooledId = 1;
+    private long lastPooledId = 0;
+
     public Coordinates save(Coordinates coordinates) {
         entityManager.persist(coordinates);
         return coordinates;
@@ -27,10 +68,39 @@ public class CoordinatesDAO {
         return Optional.ofNullable(entityManager.find(Coordinates.class, id));
     }
 
+    public List<Coordinates> findByIds(Collection<Long> ids) {
+        List<Coordinates> result = new ArrayList<>(ids.size());
+        List<Long> idList = new ArrayList<>(ids);
+        // IN-список разбивается на части, чтобы не упереться в лимит параметров JDBC
+        for (int from = 0; from < idList.size(); from += IN_CHUNK_SIZE) {
+            TypedQuery<Coordinates> query = entityManager.createQuery(
+                    "SELECT c FROM Coordinates c WHERE c.id IN :ids", 
+                    Coordinates.class);
+            query.setParameter("ids", idList.subList(from, Math.min(from + IN_CHUNK_SIZE, idList.size())));
+            result.addAll(query.getResultList());
+        }
+        return result;
+    }
+
+    // Только id, без загрузки сущностей в контекст персистентности
+    public Set<Long> findExistingIds(Collection<Long> ids) {
+        Set<Long> result = new HashSet<>();
+        List<Long> idList = new ArrayList<>(ids);
+        for (int from = 0; from < idList.size(); from += IN_CHUNK_SIZE) {
+            TypedQuery<Long> query = entityManager.createQuery(
+                    "SELECT c.id FROM Coordinates c WHERE c.id IN :ids", 
+                    Long.class);
+            query.setParameter("ids", idList.subList(from, Math.min(from + IN_CHUNK_SIZE, idList.size())));
+            result.addAll(query.getResultList());
+        }
+        return result;
+    }
+
     public List<Coordinates> findAll() {
         TypedQuery<Coordinates> query = entityManager.createQuery(
                 "SELECT c FROM Coordinates c", 
                 Coordinates.class);
+        query.setHint(CACHEABLE, true);
         return query.getResultList();
     }
 
@@ -50,13 +120,7 @@ public class CoordinatesDAO {
         
         cq.select(root);
         
-        if (sortBy != null && !sortBy.trim().isEmpty()) {
-            if ("desc".equalsIgnoreCase(sortOrder)) {
-                cq.orderBy(cb.desc(root.get(sortBy)));
-            } else {
-                cq.orderBy(cb.asc(root.get(sortBy)));
-            }
-        }
+        cq.orderBy(KeysetCursor.orderBy(cb, root, sortBy, sortOrder));
         
         TypedQuery<Coordinates> query = entityManager.createQuery(cq);
         query.setFirstResult(page * size);
@@ -64,21 +128,189 @@ public class CoordinatesDAO {
         return query.getResultList();
     }
 
+    // Страница и (при withTotal) общее число строк одним запросом через скалярный подзапрос COUNT
+    public PageResult<Coordinates> findPage(String sortBy, String sortOrder, int page, String after,
+                                      int size, boolean withTotal) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> cq = cb.createTupleQuery();
+        Root<Coordinates> root = cq.from(Coordinates.class);
+        
+        boolean keyset = after != null && !after.trim().isEmpty();
+        if (keyset) {
+            cq.where(KeysetCursor.decode(after).toPredicate(cb, root, sortBy, sortOrder));
+        }
+        cq.orderBy(KeysetCursor.orderBy(cb, root, sortBy, sortOrder));
+        
+        if (withTotal) {
+            Subquery<Long> total = cq.subquery(Long.class);
+            total.select(cb.count(total.from(Coordinates.class)));
+            cq.select(cb.tuple(root, total));
+        } else {
+            cq.select(cb.tuple(root));
+        }
+        
+        TypedQuery<Tuple> query = entityManager.createQuery(cq);
+        query.setHint(CACHEABLE, true);
+        if (!keyset) {
+            query.setFirstResult(page * size);
+        }
+        query.setMaxResults(size);
+        List<Tuple> rows = query.getResultList();
+        
+        List<Coordinates> content = new ArrayList<>(rows.size());
+        for (Tuple row : rows) {
+            content.add(row.get(0, Coordinates.class));
+        }
+        
+        if (!withTotal) {
+            return new PageResult<>(content, null, CountMode.NONE);
+        }
+        long totalElements;
+        if (!rows.isEmpty()) {
+            totalElements = rows.get(0).get(1, Long.class);
+        } else if (!keyset && page == 0) {
+            totalElements = 0;
+        } else {
+            totalElements = count();
+        }
+        return new PageResult<>(content, totalElements, CountMode.EXACT);
+    }
+
+    public String nextCursor(List<Coordinates> page, int size, String sortBy) {
+        return KeysetCursor.next(entityManager, Coordinates.class, page, size, sortBy);
+    }
+
     public long count() {
         TypedQuery<Long> query = entityManager.createQuery(
                 "SELECT COUNT(c) FROM Coordinates c", 
                 Long.class);
+        query.setHint(CACHEABLE, true);
         return query.getSingleResult();
     }
 
+    // k ближайших к (x, y) по евклидову расстоянию: id -> расстояние в порядке возрастания.
+    // ORDER BY по оператору <-> выполняется KNN-обходом GiST-индекса idx_coordinates_point
+    // (O(log n + k)); выражение point(...) должно совпадать с выражением индекса
+    public Map<Long, Double> findNearestIds(double x, double y, int k) {
+        List<?> rows = entityManager.createNativeQuery(
+                "SELECT id, " + POINT + " <-> point(?1, ?2) AS distance FROM coordinates " +
+                "WHERE y IS NOT NULL ORDER BY " + POINT + " <-> point(?1, ?2) LIMIT ?3")
+                .setParameter(1, x)
+                .setParameter(2, y)
+                .setParameter(3, k)
+                .getResultList();
+        Map<Long, Double> result = new LinkedHashMap<>();
+        for (Object row : rows) {
+            Object[] values = (Object[]) row;
+            result.put(((Number) values[0]).longValue(), ((Number) values[1]).doubleValue());
+        }
+        return result;
+    }
+
+    // Точки внутри прямоугольника (границы включены), тот же GiST-индекс через оператор <@
+    public List<Long> findIdsWithin(double minX, double minY, double maxX, double maxY, int limit) {
+        List<?> rows = entityManager.createNativeQuery(
+                "SELECT id FROM coordinates " +
+                "WHERE " + POINT + " <@ box(point(?1, ?2), point(?3, ?4)) ORDER BY id LIMIT ?5")
+                .setParameter(1, minX)
+                .setParameter(2, minY)
+                .setParameter(3, maxX)
+                .setParameter(4, maxY)
+                .setParameter(5, limit)
+                .getResultList();
+        List<Long> ids = new ArrayList<>(rows.size());
+        for (Object id : rows) {
+            ids.add(((Number) id).longValue());
+        }
+        return ids;
+    }
+
+    public long estimateCount() {
+        return TableStatistics.estimateRowCount(entityManager, "coordinates");
+    }
+
     public Coordinates update(Coordinates coordinates) {
+        if (coordinates.getId() != null) {
+            spaceMarineResponseCache.invalidateCoordinates(coordinates.getId());
+            coordinatesInternCache.invalidate(coordinates.getId());
+        }
         return entityManager.merge(coordinates);
     }
 
     public void delete(Long id) {
+        spaceMarineResponseCache.invalidateCoordinates(id);
+        coordinatesInternCache.invalidate(id);
         Coordinates coordinates = entityManager.find(Coordinates.class, id);
         if (coordinates != null) {
             entityManager.remove(coordinates);
         }
     }
+
+    // id строки с данным значением (x, y); новая строка создается, только если такой еще нет.
+    // ON CONFLICT опирается на уникальный индекс idx_coordinates_x_y_unique (schema.sql),
+    // поэтому параллельные вставки одной точки не создают дубликатов
+    public Long upsert(float x, Double y) {
+        long newId = nextId();
+        Long inserted = entityManager.unwrap(Session.class).doReturningWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "INSERT INTO coordinates (id, x, y) VALUES (?, ?, ?) " +
+                    "ON CONFLICT (x, y) DO NOTHING RETURNING id")) {
+                statement.setLong(1, newId);
+                statement.setFloat(2, x);
+                if (y != null) {
+                    statement.setDouble(3, y);
+                } else {
+                    statement.setNull(3, Types.DOUBLE);
+                }
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    return resultSet.next() ? resultSet.getLong(1) : null;
+                }
+            }
+        });
+        if (inserted != null) {
+            // Вставка в обход Hibernate: кэшированные списки и подсчеты координат устарели
+            QuerySpaces.invalidate(entityManager, "coordinates");
+            return inserted;
+        }
+        return findIdByValue(x, y)
+                .orElseThrow(() -> new IllegalStateException("Coordinates (" + x + ", " + y + ") not found after conflict"));
+    }
+
+    public Optional<Long> findIdByValue(float x, Double y) {
+        TypedQuery<Long> query = entityManager.createQuery(
+                y != null
+                        ? "SELECT c.id FROM Coordinates c WHERE c.x = :x AND c.y = :y"
+                        : "SELECT c.id FROM Coordinates c WHERE c.x = :x AND c.y IS NULL",
+                Long.class);
+        query.setParameter("x", x);
+        if (y != null) {
+            query.setParameter("y", y);
+        }
+        List<Long> ids = query.setMaxResults(1).getResultList();
+        return ids.isEmpty() ? Optional.empty() : Optional.of(ids.get(0));
+    }
+
+    // Слияние дубликатов функцией compact_coordinates(): {точек с дубликатами, удалено строк,
+    // перенаправлено десантников}. Удаленные строки могли остаться в кэшах, поэтому они сбрасываются
+    public long[] compactDuplicates() {
+        Object[] row = (Object[]) entityManager.createNativeQuery("SELECT * FROM compact_coordinates()")
+                .getSingleResult();
+        spaceMarineResponseCache.invalidateAll();
+        coordinatesInternCache.clear();
+        QuerySpaces.invalidate(entityManager, "coordinates", "space_marines");
+        transactionCallbacks.nowAndAfterCompletion(() -> entityManagerFactory.getCache().evict(Coordinates.class));
+        return new long[]{((Number) row[0]).longValue(), ((Number) row[1]).longValue(), ((Number) row[2]).longValue()};
+    }
+
+    // Блоки id из coordinates_id_seq в семантике pooled-оптимизатора (как SpaceMarineDAO.allocateIds):
+    // nextval = v резервирует (v - allocationSize, v], поэтому id не пересекаются с выданными Hibernate
+    private synchronized long nextId() {
+        if (nextPooledId > lastPooledId) {
+            long hi = ((Number) entityManager.createNativeQuery("SELECT nextval('coordinates_id_seq')")
+                    .getSingleResult()).longValue();
+            nextPooledId = Math.max(1, hi - Coordinates.ID_ALLOCATION_SIZE + 1);
+            lastPooledId = hi;
+        }
+        return nextPooledId++;
+    }
 }
@@ -0,0 +1,191 @@
+package se.ifmo.ru.lab1.dao;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Order;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.metamodel.Attribute;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.util.Base64;
+import java.util.List;
+
+// Непрозрачный курсор keyset-пагинации: значение ключа сортировки и id последней строки страницы.
+// Следующая страница выбирается условием (sortKey, id) > (lastKey, lastId) вместо OFFSET,
+// поэтому стоимость страницы не зависит от глубины.
+public class KeysetCursor {
+
+    private static final String SEPARATOR = "|";
+
+    private final String sortBy;
+    private final String sortValue;
+    private final long lastId;
+
+    private KeysetCursor(String sortBy, String sortValue, long lastId) {
+        this.sortBy = sortBy;
+        this.sortValue = sortValue;
+        this.lastId = lastId;
+    }
+
+    public static KeysetCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\" + SEPARATOR, 3);
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("Invalid cursor: " + token);
+            }
+            // Префикс "v" отличает пустую строку от null-значения ключа
+            String value = parts[2].isEmpty() ? null : parts[2].substring(1);
+            return new KeysetCursor(parts[0], value, Long.parseLong(parts[1]));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + token, e);
+        }
+    }
+
+    public String encode() {
+        String raw = sortBy + SEPARATOR + lastId + SEPARATOR + (sortValue == null ? "" : "v" + sortValue);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // id последней строки для выборок, упорядоченных только по id
+    public long getLastId() {
+        if (!sortBy.isEmpty()) {
+            throw new IllegalArgumentException("Cursor was issued for a different sort order");
+        }
+        return lastId;
+    }
+
+    // Курсор после последней строки полной страницы; null, если дальше строк нет
+    public static <T> String next(EntityManager entityManager, Class<T> entityClass,
+                                  List<T> page, int size, String sortBy) {
+        if (page.isEmpty() || page.size() < size) {
+            return null;
+        }
+        T last = page.get(page.size() - 1);
+        Object id = entityManager.getEntityManagerFactory().getPersistenceUnitUtil().getIdentifier(last);
+        Object value = null;
+        if (isSorted(sortBy)) {
+            Attribute<? super T, ?> attribute = findBasicAttribute(entityManager, entityClass, sortBy);
+            if (attribute == null) {
+                // По такому полю keyset-режим невозможен (нет поля или это связь)
+                return null;
+            }
+            value = readAttribute(attribute, last);
+        }
+        return of(sortBy, value, ((Number) id).longValue());
+    }
+
+    public static String of(String sortBy, Object sortValue, long lastId) {
+        String value = sortValue == null ? null
+                : sortValue instanceof Enum<?> e ? e.name() : sortValue.toString();
+        return new KeysetCursor(isSorted(sortBy) ? sortBy : "", value, lastId).encode();
+    }
+
+    // Ключ сортировки и id в одном направлении, чтобы порядок был однозначным
+    public static Order[] orderBy(CriteriaBuilder cb, Root<?> root, String sortBy, String sortOrder) {
+        boolean desc = "desc".equalsIgnoreCase(sortOrder);
+        Path<?> id = root.get("id");
+        if (!isSorted(sortBy)) {
+            return new Order[]{desc ? cb.desc(id) : cb.asc(id)};
+        }
+        Path<?> key = root.get(sortBy);
+        return desc
+                ? new Order[]{cb.desc(key), cb.desc(id)}
+                : new Order[]{cb.asc(key), cb.asc(id)};
+    }
+
+    // Условие "строго после курсора"; PostgreSQL ставит NULL последними при ASC и первыми при DESC
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public Predicate toPredicate(CriteriaBuilder cb, Root<?> root, String requestedSortBy, String sortOrder) {
+        String expectedSortBy = isSorted(requestedSortBy) ? requestedSortBy : "";
+        if (!sortBy.equals(expectedSortBy)) {
+            throw new IllegalArgumentException("Cursor was issued for a different sort order");
+        }
+        boolean desc = "desc".equalsIgnoreCase(sortOrder);
+
+        Path<Comparable> idPath = root.get("id");
+        Comparable id = parse(idPath.getJavaType(), Long.toString(lastId));
+        Predicate idAfter = desc ? cb.lessThan(idPath, id) : cb.greaterThan(idPath, id);
+        if (sortBy.isEmpty()) {
+            return idAfter;
+        }
+
+        Path<Comparable> keyPath = root.get(sortBy);
+        if (sortValue == null) {
+            Predicate sameNullKey = cb.and(cb.isNull(keyPath), idAfter);
+            return desc ? cb.or(cb.isNotNull(keyPath), sameNullKey) : sameNullKey;
+        }
+
+        Comparable key = parse(keyPath.getJavaType(), sortValue);
+        Expression<Comparable> keyExpr = keyPath;
+        Predicate keyAfter = desc ? cb.lessThan(keyExpr, key) : cb.greaterThan(keyExpr, key);
+        Predicate sameKey = cb.and(cb.equal(keyExpr, key), idAfter);
+        return desc ? cb.or(keyAfter, sameKey) : cb.or(keyAfter, sameKey, cb.isNull(keyPath));
+    }
+
+    private static boolean isSorted(String sortBy) {
+        return sortBy != null && !sortBy.trim().isEmpty();
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Comparable parse(Class<?> type, String raw) {
+        if (type == String.class) {
+            return raw;
+        }
+        if (type == Integer.class || type == int.class) {
+            return Integer.valueOf(raw);
+        }
+        if (type == Long.class || type == long.class) {
+            return Long.valueOf(raw);
+        }
+        if (type == Float.class || type == float.class) {
+            return Float.valueOf(raw);
+        }
+        if (type == Double.class || type == double.class) {
+            return Double.valueOf(raw);
+        }
+        if (type == ZonedDateTime.class) {
+            return ZonedDateTime.parse(raw);
+        }
+        if (type.isEnum()) {
+            return Enum.valueOf((Class<Enum>) type, raw);
+        }
+        throw new IllegalArgumentException("Unsupported sort field type: " + type.getSimpleName());
+    }
+
+    private static <T> Attribute<? super T, ?> findBasicAttribute(EntityManager entityManager,
+                                                                 Class<T> entityClass, String name) {
+        try {
+            Attribute<? super T, ?> attribute = entityManager.getMetamodel().entity(entityClass).getAttribute(name);
+            return attribute.getPersistentAttributeType() == Attribute.PersistentAttributeType.BASIC
+                    ? attribute
+                    : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static Object readAttribute(Attribute<?, ?> attribute, Object entity) {
+        Member member = attribute.getJavaMember();
+        try {
+            if (member instanceof Field field) {
+                field.setAccessible(true);
+                return field.get(entity);
+            }
+            if (member instanceof Method method) {
+                method.setAccessible(true);
+                return method.invoke(entity);
+            }
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot read sort field " + attribute.getName(), e);
+        }
+        throw new IllegalArgumentException("Unsupported sort field: " + attribute.getName());
+    }
+}
@@ -0,0 +1,42 @@
+package se.ifmo.ru.lab1.dao;
+
+import se.ifmo.ru.lab1.dto.CountMode;
+
+import java.util.List;
+
+public class PageResult<T> {
+
+    private final List<T> content;
+    private final Long totalElements;
+    private final CountMode countMode;
+    private final String nextCursor;
+
+    public PageResult(List<T> content, Long totalElements, CountMode countMode) {
+        this(content, totalElements, countMode, null);
+    }
+
+    public PageResult(List<T> content, Long totalElements, CountMode countMode, String nextCursor) {
+        this.content = content;
+        this.totalElements = totalElements;
+        this.countMode = countMode;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<T> getContent() {
+        return content;
+    }
+
+    // null, если подсчет не выполнялся (CountMode.NONE)
+    public Long getTotalElements() {
+        return totalElements;
+    }
+
+    public CountMode getCountMode() {
+        return countMode;
+    }
+
+    // Заполняется DTO-проекцией; для страниц сущностей курсор строится отдельно
+    public String getNextCursor() {
+        return nextCursor;
+    }
+}
@@ -0,0 +1,22 @@
+package se.ifmo.ru.lab1.dao;
+
+import jakarta.persistence.EntityManager;
+import org.hibernate.cache.spi.TimestampsCache;
+import org.hibernate.engine.spi.SessionImplementor;
+
+// Кэш запросов после записи в обход Hibernate (JDBC, функции БД). Устаревшими помечаются только
+// запросы по перечисленным таблицам, так же как Hibernate делает это для своих массовых операций:
+// сразу (preInvalidate) и окончательно после завершения транзакции. Регионы кэша не сбрасываются.
+final class QuerySpaces {
+
+    private QuerySpaces() {
+    }
+
+    static void invalidate(EntityManager entityManager, String... tables) {
+        SessionImplementor session = entityManager.unwrap(SessionImplementor.class);
+        TimestampsCache timestamps = session.getFactory().getCache().getTimestampsCache();
+        timestamps.preInvalidate(tables, session);
+        session.getActionQueue().registerProcess(
+                (success, completed) -> timestamps.invalidate(tables, completed));
+    }
+}
@@ -1,30 +1,241 @@
 package se.ifmo.ru.lab1.dao;
 
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Tuple;
 import jakarta.persistence.TypedQuery;
 import jakarta.persistence.criteria.CriteriaBuilder;
 import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.criteria.JoinType;
 import jakarta.persistence.criteria.Predicate;
 import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Selection;
+import jakarta.persistence.criteria.Subquery;
+import se.ifmo.ru.lab1.cache.SpaceMarineFacetCache;
+import se.ifmo.ru.lab1.cache.SpaceMarineResponseCache;
+import se.ifmo.ru.lab1.dto.ChapterDTO;
+import se.ifmo.ru.lab1.dto.CoordinatesDTO;
+import se.ifmo.ru.lab1.dto.CountMode;
+import se.ifmo.ru.lab1.dto.FacetsResponse;
+import se.ifmo.ru.lab1.dto.SpaceMarineDTO;
+import org.hibernate.Session;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+import se.ifmo.ru.lab1.entity.AstartesCategory;
+import se.ifmo.ru.lab1.entity.Chapter;
+import se.ifmo.ru.lab1.entity.Coordinates;
 import se.ifmo.ru.lab1.entity.SpaceMarine;
+import se.ifmo.ru.lab1.entity.Weapon;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.time.ZonedDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 @ApplicationScoped
 public class SpaceMarineDAO {
 
+    private static final String FETCH_GRAPH = "jakarta.persistence.fetchgraph";
+    private static final int BATCH_SIZE = 50;
+    private static final int IN_CHUNK_SIZE = 1000;
+    private static final String COPY_SQL =
+            "COPY space_marines (id, name, coordinates_id, creation_date, chapter_id, health, heart_count, category, weapon_type) " +
+            "FROM STDIN WITH (FORMAT csv)";
+    // Строк за один round-trip при экспорте; драйвер держит в памяти не больше одной такой порции
+    private static final int EXPORT_FETCH_SIZE = 1000;
+    private static final String EXPORT_SQL =
+            "SELECT sm.id, sm.name, sm.creation_date, sm.health, sm.heart_count, sm.category, sm.weapon_type, " +
+            "c.id AS coordinates_id, c.x, c.y, ch.id AS chapter_id, ch.name AS chapter_name, ch.marines_count " +
+            "FROM space_marines sm " +
+            "JOIN coordinates c ON c.id = sm.coordinates_id " +
+            "LEFT JOIN chapters ch ON ch.id = sm.chapter_id";
+    // Только эти поля можно подставить в ORDER BY экспорта
+    private static final Map<String, String> EXPORT_SORT_COLUMNS = Map.of(
+            "id", "sm.id",
+            "name", "sm.name",
+            "creationDate", "sm.creation_date",
+            "health", "sm.health",
+            "heartCount", "sm.heart_count",
+            "category", "sm.category",
+            "weaponType", "sm.weapon_type");
+    // Интервал health вычисляется в LATERAL, чтобы параметр встречался в запросе один раз
+    private static final String FACETS_SQL_HEAD =
+            "SELECT sm.category, sm.weapon_type, sm.chapter_id, c.name AS chapter_name, " +
+            "b.health_bucket, COUNT(*) AS marines, " +
+            "GROUPING(sm.category) AS by_category, GROUPING(sm.weapon_type) AS by_weapon, " +
+            "GROUPING(sm.chapter_id) AS by_chapter, GROUPING(b.health_bucket) AS by_health " +
+            "FROM space_marines sm " +
+            "LEFT JOIN chapters c ON c.id = sm.chapter_id " +
+            "CROSS JOIN LATERAL (SELECT sm.health / ? AS health_bucket) b";
+    private static final String FACETS_SQL_TAIL =
+            " GROUP BY GROUPING SETS ((sm.category), (sm.weapon_type), (sm.chapter_id, c.name), " +
+            "(b.health_bucket), ()) " +
+            "ORDER BY by_category, by_weapon, by_chapter, by_health, b.health_bucket, marines DESC";
+    // Собственные поля SpaceMarine, которые выбирает DTO-проекция (и по которым возможен курсор)
+    private static final List<String> DTO_FIELDS = List.of(
+            "id", "name", "creationDate", "health", "heartCount", "category", "weaponType");
+    private static final String TOTAL = "total";
+
     @PersistenceContext(unitName = "PostgresDS")
     private EntityManager entityManager;
 
+    @Inject
+    private SpaceMarineResponseCache spaceMarineResponseCache;
+
+    @Inject
+    private SpaceMarineFacetCache spaceMarineFacetCache;
+
     public SpaceMarine save(SpaceMarine spaceMarine) {
+        spaceMarineFacetCache.invalidateAll();
         entityManager.persist(spaceMarine);
         return spaceMarine;
     }
 
+    // Вставка пачками по BATCH_SIZE (совпадает с hibernate.jdbc.batch_size); после каждой пачки
+    // контекст очищается, чтобы память не росла с размером входных данных
+    public List<Integer> saveAll(List<SpaceMarine> spaceMarines) {
+        spaceMarineFacetCache.invalidateAll();
+        List<Integer> ids = new ArrayList<>(spaceMarines.size());
+        for (int i = 0; i < spaceMarines.size(); i++) {
+            SpaceMarine spaceMarine = spaceMarines.get(i);
+            entityManager.persist(spaceMarine);
+            ids.add(spaceMarine.getId());
+            if ((i + 1) % BATCH_SIZE == 0) {
+                entityManager.flush();
+                entityManager.clear();
+            }
+        }
+        entityManager.flush();
+        entityManager.clear();
+        return ids;
+    }
+
+    // Блоки id в семантике pooled-оптимизатора Hibernate: nextval = v резервирует (v - allocationSize, v],
+    // поэтому id, выданные здесь, не пересекаются с id, которые выдает сам Hibernate
+    public List<Integer> allocateIds(int count) {
+        List<Integer> ids = new ArrayList<>(count);
+        while (ids.size() < count) {
+            int blocks = (count - ids.size() + SpaceMarine.ID_ALLOCATION_SIZE - 1) / SpaceMarine.ID_ALLOCATION_SIZE;
+            List<?> hiValues = entityManager.createNativeQuery(
+                    "SELECT nextval('space_marine_id_seq') FROM generate_series(1, ?)")
+                    .setParameter(1, blocks)
+                    .getResultList();
+            for (Object hi : hiValues) {
+                long hiValue = ((Number) hi).longValue();
+                for (long id = Math.max(1, hiValue - SpaceMarine.ID_ALLOCATION_SIZE + 1); id <= hiValue && ids.size() < count; id++) {
+                    ids.add((int) id);
+                }
+            }
+        }
+        return ids;
+    }
+
+    // Вставка через COPY FROM STDIN; id должны быть уже назначены (см. allocateIds)
+    public long copyInsert(List<SpaceMarine> spaceMarines) {
+        spaceMarineFacetCache.invalidateAll();
+        StringBuilder csv = new StringBuilder(spaceMarines.size() * 96);
+        for (SpaceMarine marine : spaceMarines) {
+            csv.append(marine.getId()).append(',')
+                    .append(csvQuote(marine.getName())).append(',')
+                    .append(marine.getCoordinates().getId()).append(',')
+                    .append(marine.getCreationDate().toOffsetDateTime()).append(',')
+                    .append(marine.getChapter() != null ? marine.getChapter().getId() : "").append(',')
+                    .append(marine.getHealth()).append(',')
+                    .append(marine.getHeartCount()).append(',')
+                    .append(marine.getCategory() != null ? marine.getCategory().name() : "").append(',')
+                    .append(marine.getWeaponType() != null ? marine.getWeaponType().name() : "")
+                    .append('\n');
+        }
+        return entityManager.unwrap(Session.class).doReturningWork(connection -> {
+            CopyManager copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
+            try {
+                return copyManager.copyIn(COPY_SQL, new StringReader(csv.toString()));
+            } catch (IOException e) {
+                throw new SQLException("COPY into space_marines failed", e);
+            }
+        });
+    }
+
+    // Экспорт через forward-only курсор: PostgreSQL отдает строки порциями по EXPORT_FETCH_SIZE
+    // (нужна открытая транзакция, иначе драйвер читает весь результат сразу), сущности не создаются,
+    // поэтому память не зависит от числа строк
+    public void exportAll(String nameFilter, String sortBy, String sortOrder, Consumer<SpaceMarineDTO> consumer) {
+        boolean filtered = nameFilter != null && !nameFilter.trim().isEmpty();
+        String direction = "desc".equalsIgnoreCase(sortOrder) ? "DESC" : "ASC";
+        String sortColumn = sortBy != null ? EXPORT_SORT_COLUMNS.get(sortBy) : null;
+
+        StringBuilder sql = new StringBuilder(EXPORT_SQL);
+        if (filtered) {
+            sql.append(" WHERE lower(sm.name) = ?");
+        }
+        sql.append(" ORDER BY ");
+        if (sortColumn != null && !"sm.id".equals(sortColumn)) {
+            sql.append(sortColumn).append(' ').append(direction).append(", ");
+        }
+        sql.append("sm.id ").append(direction);
+
+        entityManager.unwrap(Session.class).doWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(
+                    sql.toString(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                statement.setFetchSize(EXPORT_FETCH_SIZE);
+                if (filtered) {
+                    statement.setString(1, nameFilter.toLowerCase().trim());
+                }
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        consumer.accept(toExportRow(resultSet));
+                    }
+                }
+            }
+        });
+    }
+
+    private static SpaceMarineDTO toExportRow(ResultSet resultSet) throws SQLException {
+        SpaceMarineDTO dto = new SpaceMarineDTO();
+        dto.setId(resultSet.getInt("id"));
+        dto.setName(resultSet.getString("name"));
+        dto.setCreationDate(resultSet.getObject("creation_date", OffsetDateTime.class).toZonedDateTime());
+        dto.setHealth(resultSet.getInt("health"));
+        dto.setHeartCount(resultSet.getInt("heart_count"));
+        dto.setCategory(resultSet.getString("category"));
+        dto.setWeaponType(resultSet.getString("weapon_type"));
+
+        CoordinatesDTO coordinates = new CoordinatesDTO();
+        coordinates.setId(resultSet.getLong("coordinates_id"));
+        coordinates.setX(resultSet.getFloat("x"));
+        double y = resultSet.getDouble("y");
+        coordinates.setY(resultSet.wasNull() ? null : y);
+        dto.setCoordinates(coordinates);
+        dto.setCoordinatesId(coordinates.getId());
+
+        long chapterId = resultSet.getLong("chapter_id");
+        if (!resultSet.wasNull()) {
+            ChapterDTO chapter = new ChapterDTO();
+            chapter.setId(chapterId);
+            chapter.setName(resultSet.getString("chapter_name"));
+            chapter.setMarinesCount(resultSet.getInt("marines_count"));
+            dto.setChapter(chapter);
+            dto.setChapterId(chapterId);
+        }
+        return dto;
+    }
+
+    private static String csvQuote(String value) {
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
     public Optional<SpaceMarine> findById(Integer id) {
         return Optional.ofNullable(entityManager.find(SpaceMarine.class, id));
     }
@@ -45,48 +256,60 @@ public class SpaceMarineDAO {
         return query.getResultList();
     }
 
-    public List<SpaceMarine> findAll(int page, int size, String sortBy, String sortOrder) {
-        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
-        CriteriaQuery<SpaceMarine> cq = cb.createQuery(SpaceMarine.class);
-        Root<SpaceMarine> root = cq.from(SpaceMarine.class);
-        
-        cq.select(root);
-        
-        if (sortBy != null && !sortBy.trim().isEmpty()) {
-            try {
-                if ("desc".equalsIgnoreCase(sortOrder)) {
-                    cq.orderBy(cb.desc(root.get(sortBy)));
-                } else {
-                    cq.orderBy(cb.asc(root.get(sortBy)));
-                }
-            } catch (Exception e) {
-                // Если поле не найдено, игнорируем сортировку
-            }
-        }
-        
-        TypedQuery<SpaceMarine> query = entityManager.createQuery(cq);
-        query.setFirstResult(page * size);
-        query.setMaxResults(size);
-        
-        return query.getResultList();
+    // Строки: снимок БД (pg_current_snapshot, одинаковый для всех строк, т.к. запрос один), health,
+    // количество и сумма heartCount по каждому значению health. Для пустой таблицы — одна строка
+    // со снимком и null в остальных столбцах
+    @SuppressWarnings("unchecked")
+    public List<Object[]> getHealthHistogram() {
+        return entityManager.createNativeQuery(
+                "SELECT pg_current_snapshot()::text, h.health, h.marines, h.heart_count_sum " +
+                "FROM (SELECT 1) one LEFT JOIN (" +
+                "SELECT health, COUNT(*) AS marines, SUM(heart_count) AS heart_count_sum " +
+                "FROM space_marines GROUP BY health) h ON true")
+                .getResultList();
     }
 
-    public List<SpaceMarine> findByNameContaining(String name) {
-        TypedQuery<SpaceMarine> query = entityManager.createQuery(
-                "SELECT sm FROM SpaceMarine sm LEFT JOIN FETCH sm.coordinates LEFT JOIN FETCH sm.chapter " +
-                "WHERE sm.name LIKE :name", 
-                SpaceMarine.class);
-        query.setParameter("name", "%" + name + "%");
-        return query.getResultList();
+    // xid текущей транзакции (назначается, если его еще нет)
+    public long currentTransactionId() {
+        return ((Number) entityManager.createNativeQuery("SELECT pg_current_xact_id()::text::bigint")
+                .getSingleResult()).longValue();
     }
 
-    public List<SpaceMarine> findByHealthLessThan(Integer health) {
-        TypedQuery<SpaceMarine> query = entityManager.createQuery(
-                "SELECT sm FROM SpaceMarine sm LEFT JOIN FETCH sm.coordinates LEFT JOIN FETCH sm.chapter " +
-                "WHERE sm.health < :health", 
-                SpaceMarine.class);
-        query.setParameter("health", health);
-        return query.getResultList();
+    // Все фасеты одним проходом по таблице: каждая строка результата относится ровно к одному
+    // набору GROUPING SETS, какому именно — видно по GROUPING(); () дает общее количество
+    public FacetsResponse getFacets(String nameFilter, int healthBucketSize) {
+        boolean filtered = nameFilter != null && !nameFilter.trim().isEmpty();
+        FacetsResponse facets = new FacetsResponse(healthBucketSize);
+        entityManager.unwrap(Session.class).doWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(
+                    FACETS_SQL_HEAD + (filtered ? " WHERE lower(sm.name) = ?" : "") + FACETS_SQL_TAIL)) {
+                statement.setInt(1, healthBucketSize);
+                if (filtered) {
+                    statement.setString(2, nameFilter.toLowerCase().trim());
+                }
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        long count = resultSet.getLong("marines");
+                        if (resultSet.getInt("by_category") == 0) {
+                            facets.getCategories().add(new FacetsResponse.ValueCount(resultSet.getString("category"), count));
+                        } else if (resultSet.getInt("by_weapon") == 0) {
+                            facets.getWeaponTypes().add(new FacetsResponse.ValueCount(resultSet.getString("weapon_type"), count));
+                        } else if (resultSet.getInt("by_chapter") == 0) {
+                            long chapterId = resultSet.getLong("chapter_id");
+                            facets.getChapters().add(new FacetsResponse.ChapterCount(
+                                    resultSet.wasNull() ? null : chapterId, resultSet.getString("chapter_name"), count));
+                        } else if (resultSet.getInt("by_health") == 0) {
+                            int from = resultSet.getInt("health_bucket") * healthBucketSize;
+                            facets.getHealthBuckets().add(new FacetsResponse.HealthBucketCount(
+                                    from, from + healthBucketSize, count));
+                        } else {
+                            facets.setTotal(count);
+                        }
+                    }
+                }
+            }
+        });
+        return facets;
     }
 
     public long countByHealthLessThan(Integer health) {
@@ -104,44 +327,183 @@ public class SpaceMarineDAO {
         return query.getSingleResult();
     }
 
-    public List<SpaceMarine> findWithFilters(String nameFilter, String sortBy, String sortOrder, int page, int size) {
+    // Страница и (при withTotal) общее число строк одним SQL-запросом: COUNT считается некоррелированным
+    // скалярным подзапросом, который PostgreSQL выполняет один раз. Строки выбираются сразу в SpaceMarineDTO:
+    // без управляемых сущностей, снимков для dirty checking и копирования в маппере. Курсор следующей
+    // страницы считается здесь же.
+    public PageResult<SpaceMarineDTO> findDTOPage(SpaceMarineFilter filter, String sortBy, String sortOrder,
+                                                  int page, String after, int size, boolean withTotal) {
         CriteriaBuilder cb = entityManager.getCriteriaBuilder();
-        CriteriaQuery<SpaceMarine> cq = cb.createQuery(SpaceMarine.class);
+        CriteriaQuery<Tuple> cq = cb.createTupleQuery();
         Root<SpaceMarine> root = cq.from(SpaceMarine.class);
         
-        List<Predicate> predicates = new ArrayList<>();
+        boolean keyset = applyPageCriteria(cb, cq, root, filter, sortBy, sortOrder, after);
+        
+        List<Selection<?>> selections = dtoSelections(root);
+        if (withTotal) {
+            selections.add(totalSubquery(cb, cq, filter).alias(TOTAL));
+        }
+        cq.select(cb.tuple(selections));
+        
+        List<Tuple> rows = pageQuery(cq, keyset, page, size).getResultList();
+        
+        List<SpaceMarineDTO> content = new ArrayList<>(rows.size());
+        for (Tuple row : rows) {
+            content.add(toDTO(row));
+        }
+        String nextCursor = dtoNextCursor(rows, size, sortBy);
+        
+        if (!withTotal) {
+            return new PageResult<>(content, null, CountMode.NONE, nextCursor);
+        }
+        return new PageResult<>(content, totalOf(rows, keyset, page, filter), CountMode.EXACT, nextCursor);
+    }
+
+    public List<SpaceMarineDTO> findDTOsByNameContaining(String name) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> cq = cb.createTupleQuery();
+        Root<SpaceMarine> root = cq.from(SpaceMarine.class);
+        cq.select(cb.tuple(dtoSelections(root)));
+        cq.where(cb.like(root.get("name"), containsPattern(name), '!'));
+        return toDTOs(entityManager.createQuery(cq).getResultList());
+    }
+
+    public List<SpaceMarineDTO> findDTOsByHealthLessThan(Integer health) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> cq = cb.createTupleQuery();
+        Root<SpaceMarine> root = cq.from(SpaceMarine.class);
+        cq.select(cb.tuple(dtoSelections(root)));
+        cq.where(cb.lessThan(root.get("health"), health));
+        return toDTOs(entityManager.createQuery(cq).getResultList());
+    }
+
+    // Шаблон '%x%' для триграммного индекса idx_space_marines_name_trgm (db/schema.sql);
+    // % и _ из ввода экранируются символом '!', чтобы искались как обычные символы
+    private static String containsPattern(String substring) {
+        String value = substring == null ? "" : substring;
+        return "%" + value.replace("!", "!!").replace("%", "!%").replace("_", "!_") + "%";
+    }
+
+    // Фильтр, условие курсора и порядок страницы; true, если включен keyset-режим
+    private boolean applyPageCriteria(CriteriaBuilder cb, CriteriaQuery<Tuple> cq, Root<SpaceMarine> root,
+                                      SpaceMarineFilter filter, String sortBy, String sortOrder, String after) {
+        List<Predicate> predicates = filter.toPredicates(cb, root);
         
-        if (nameFilter != null && !nameFilter.trim().isEmpty()) {
-            predicates.add(cb.equal(cb.lower(root.get("name")), nameFilter.toLowerCase().trim()));
+        boolean keyset = after != null && !after.trim().isEmpty();
+        if (keyset) {
+            predicates.add(KeysetCursor.decode(after).toPredicate(cb, root, sortBy, sortOrder));
         }
         
         cq.where(predicates.toArray(new Predicate[0]));
         
-        if (sortBy != null && !sortBy.trim().isEmpty()) {
-            if ("desc".equalsIgnoreCase(sortOrder)) {
-                cq.orderBy(cb.desc(root.get(sortBy)));
-            } else {
-                cq.orderBy(cb.asc(root.get(sortBy)));
+        if (keyset) {
+            cq.orderBy(KeysetCursor.orderBy(cb, root, sortBy, sortOrder));
+        } else {
+            try {
+                cq.orderBy(KeysetCursor.orderBy(cb, root, sortBy, sortOrder));
+            } catch (Exception e) {
+                // Если поле не найдено, игнорируем сортировку
             }
         }
-        
-        TypedQuery<SpaceMarine> query = entityManager.createQuery(cq);
-        query.setFirstResult(page * size);
+        return keyset;
+    }
+
+    private Subquery<Long> totalSubquery(CriteriaBuilder cb, CriteriaQuery<Tuple> cq, SpaceMarineFilter filter) {
+        Subquery<Long> total = cq.subquery(Long.class);
+        Root<SpaceMarine> countRoot = total.from(SpaceMarine.class);
+        total.select(cb.count(countRoot));
+        total.where(filter.toPredicates(cb, countRoot).toArray(new Predicate[0]));
+        return total;
+    }
+
+    private TypedQuery<Tuple> pageQuery(CriteriaQuery<Tuple> cq, boolean keyset, int page, int size) {
+        TypedQuery<Tuple> query = entityManager.createQuery(cq);
+        if (!keyset) {
+            query.setFirstResult(page * size);
+        }
         query.setMaxResults(size);
-        
-        return query.getResultList();
+        return query;
+    }
+
+    private long totalOf(List<Tuple> rows, boolean keyset, int page, SpaceMarineFilter filter) {
+        if (!rows.isEmpty()) {
+            return rows.get(0).get(TOTAL, Long.class);
+        }
+        if (!keyset && page == 0) {
+            return 0;
+        }
+        // Страница за пределами данных: общее число из строк не получить
+        return countWithFilters(filter);
+    }
+
+    // Алиасы колонок проекции совпадают с именами полей SpaceMarine, поэтому по sortBy
+    // из строки можно взять значение ключа сортировки для курсора
+    private static List<Selection<?>> dtoSelections(Root<SpaceMarine> root) {
+        Join<SpaceMarine, Coordinates> coordinates = root.join("coordinates");
+        Join<SpaceMarine, Chapter> chapter = root.join("chapter", JoinType.LEFT);
+        List<Selection<?>> selections = new ArrayList<>();
+        for (String field : DTO_FIELDS) {
+            selections.add(root.get(field).alias(field));
+        }
+        selections.add(coordinates.get("id").alias("coordinatesId"));
+        selections.add(coordinates.get("x").alias("x"));
+        selections.add(coordinates.get("y").alias("y"));
+        selections.add(chapter.get("id").alias("chapterId"));
+        selections.add(chapter.get("name").alias("chapterName"));
+        selections.add(chapter.get("marinesCount").alias("chapterMarinesCount"));
+        return selections;
     }
 
-    public long countWithFilters(String nameFilter) {
+    private static List<SpaceMarineDTO> toDTOs(List<Tuple> rows) {
+        List<SpaceMarineDTO> dtos = new ArrayList<>(rows.size());
+        for (Tuple row : rows) {
+            dtos.add(toDTO(row));
+        }
+        return dtos;
+    }
+
+    private static SpaceMarineDTO toDTO(Tuple row) {
+        Long chapterId = row.get("chapterId", Long.class);
+        AstartesCategory category = row.get("category", AstartesCategory.class);
+        Weapon weaponType = row.get("weaponType", Weapon.class);
+        return new SpaceMarineDTO(
+                row.get("id", Integer.class),
+                row.get("name", String.class),
+                new CoordinatesDTO(row.get("coordinatesId", Long.class),
+                        row.get("x", Float.class),
+                        row.get("y", Double.class)),
+                row.get("creationDate", ZonedDateTime.class),
+                chapterId == null ? null : new ChapterDTO(chapterId,
+                        row.get("chapterName", String.class),
+                        row.get("chapterMarinesCount", Integer.class)),
+                row.get("health", Integer.class),
+                row.get("heartCount", Integer.class),
+                category != null ? category.name() : null,
+                weaponType != null ? weaponType.name() : null);
+    }
+
+    // Как KeysetCursor.next, только значение ключа берется из строки проекции
+    private static String dtoNextCursor(List<Tuple> rows, int size, String sortBy) {
+        if (rows.isEmpty() || rows.size() < size) {
+            return null;
+        }
+        Tuple last = rows.get(rows.size() - 1);
+        long id = last.get("id", Integer.class);
+        if (sortBy == null || sortBy.trim().isEmpty()) {
+            return KeysetCursor.of(sortBy, null, id);
+        }
+        if (!DTO_FIELDS.contains(sortBy)) {
+            return null;
+        }
+        return KeysetCursor.of(sortBy, last.get(sortBy), id);
+    }
+
+    public long countWithFilters(SpaceMarineFilter filter) {
         CriteriaBuilder cb = entityManager.getCriteriaBuilder();
         CriteriaQuery<Long> cq = cb.createQuery(Long.class);
         Root<SpaceMarine> root = cq.from(SpaceMarine.class);
         
-        List<Predicate> predicates = new ArrayList<>();
-        
-        if (nameFilter != null && !nameFilter.trim().isEmpty()) {
-            predicates.add(cb.equal(cb.lower(root.get("name")), nameFilter.toLowerCase().trim()));
-        }
+        List<Predicate> predicates = filter.toPredicates(cb, root);
         
         cq.select(cb.count(root));
         cq.where(predicates.toArray(new Predicate[0]));
@@ -149,11 +511,22 @@ public class SpaceMarineDAO {
         return entityManager.createQuery(cq).getSingleResult();
     }
 
+    private <T> TypedQuery<T> withRelations(TypedQuery<T> query) {
+        query.setHint(FETCH_GRAPH, entityManager.getEntityGraph(SpaceMarine.WITH_RELATIONS));
+        return query;
+    }
+
     public SpaceMarine update(SpaceMarine spaceMarine) {
+        spaceMarineFacetCache.invalidateAll();
+        if (spaceMarine.getId() != null) {
+            spaceMarineResponseCache.invalidate(spaceMarine.getId());
+        }
         return entityManager.merge(spaceMarine);
     }
 
     public void delete(Integer id) {
+        spaceMarineResponseCache.invalidate(id);
+        spaceMarineFacetCache.invalidateAll();
         SpaceMarine spaceMarine = entityManager.find(SpaceMarine.class, id);
         if (spaceMarine != null) {
             entityManager.remove(spaceMarine);
@@ -167,12 +540,31 @@ public class SpaceMarineDAO {
         return query.getSingleResult();
     }
 
+    // Оценка числа строк по статистике планировщика; -1, если таблица еще не анализировалась
+    public long estimateCount() {
+        return TableStatistics.estimateRowCount(entityManager, "space_marines");
+    }
+
     public List<SpaceMarine> findByCoordinatesId(Long coordinatesId) {
         TypedQuery<SpaceMarine> query = entityManager.createQuery(
                 "SELECT sm FROM SpaceMarine sm WHERE sm.coordinates.id = :coordinatesId", 
                 SpaceMarine.class);
         query.setParameter("coordinatesId", coordinatesId);
-        return query.getResultList();
+        return withRelations(query).getResultList();
+    }
+
+    // Десантники сразу для нескольких координат, IN-список частями
+    public List<SpaceMarine> findByCoordinatesIds(Collection<Long> coordinatesIds) {
+        List<SpaceMarine> result = new ArrayList<>();
+        List<Long> idList = new ArrayList<>(coordinatesIds);
+        for (int from = 0; from < idList.size(); from += IN_CHUNK_SIZE) {
+            TypedQuery<SpaceMarine> query = entityManager.createQuery(
+                    "SELECT sm FROM SpaceMarine sm WHERE sm.coordinates.id IN :coordinatesIds ORDER BY sm.id", 
+                    SpaceMarine.class);
+            query.setParameter("coordinatesIds", idList.subList(from, Math.min(from + IN_CHUNK_SIZE, idList.size())));
+            result.addAll(withRelations(query).getResultList());
+        }
+        return result;
     }
 
     public List<SpaceMarine> findByChapterId(Long chapterId) {
@@ -180,7 +572,7 @@ public class SpaceMarineDAO {
                 "SELECT sm FROM SpaceMarine sm WHERE sm.chapter.id = :chapterId", 
                 SpaceMarine.class);
         query.setParameter("chapterId", chapterId);
-        return query.getResultList();
+        return withRelations(query).getResultList();
     }
 
     public long countByCoordinatesId(Long coordinatesId) {
@@ -199,27 +591,54 @@ public class SpaceMarineDAO {
         return query.getSingleResult();
     }
 
-    public void deleteByChapterId(Long chapterId) {
-        TypedQuery<SpaceMarine> query = entityManager.createQuery(
-                "SELECT sm FROM SpaceMarine sm WHERE sm.chapter.id = :chapterId", 
-                SpaceMarine.class);
-        query.setParameter("chapterId", chapterId);
-        List<SpaceMarine> marines = query.getResultList();
-        
-        for (SpaceMarine marine : marines) {
-            entityManager.remove(marine);
-        }
+    // Один DELETE вместо загрузки и remove() каждой строки; возвращает число удаленных
+    public int deleteByChapterId(Long chapterId) {
+        spaceMarineResponseCache.invalidateChapter(chapterId);
+        spaceMarineFacetCache.invalidateAll();
+        return entityManager.createQuery(
+                "DELETE FROM SpaceMarine sm WHERE sm.chapter.id = :chapterId")
+                .setParameter("chapterId", chapterId)
+                .executeUpdate();
     }
 
-    public void deleteByCoordinatesId(Long coordinatesId) {
-        TypedQuery<SpaceMarine> query = entityManager.createQuery(
-                "SELECT sm FROM SpaceMarine sm WHERE sm.coordinates.id = :coordinatesId", 
-                SpaceMarine.class);
-        query.setParameter("coordinatesId", coordinatesId);
-        List<SpaceMarine> marines = query.getResultList();
-        
-        for (SpaceMarine marine : marines) {
-            entityManager.remove(marine);
-        }
+    public int deleteByCoordinatesId(Long coordinatesId) {
+        spaceMarineResponseCache.invalidateCoordinates(coordinatesId);
+        spaceMarineFacetCache.invalidateAll();
+        return entityManager.createQuery(
+                "DELETE FROM SpaceMarine sm WHERE sm.coordinates.id = :coordinatesId")
+                .setParameter("coordinatesId", coordinatesId)
+                .executeUpdate();
+    }
+
+    // Порция фоновой очистки: не больше limit строк за транзакцию. Строки возвращаются как
+    // {health, heartCount}, чтобы агрегаты можно было поправить без полного пересчета
+    public List<int[]> deleteChunkByChapterId(Long chapterId, int limit) {
+        spaceMarineResponseCache.invalidateChapter(chapterId);
+        return deleteChunk("chapter_id", chapterId, limit);
+    }
+
+    public List<int[]> deleteChunkByCoordinatesId(Long coordinatesId, int limit) {
+        spaceMarineResponseCache.invalidateCoordinates(coordinatesId);
+        return deleteChunk("coordinates_id", coordinatesId, limit);
+    }
+
+    private List<int[]> deleteChunk(String column, Long id, int limit) {
+        spaceMarineFacetCache.invalidateAll();
+        List<int[]> deleted = new ArrayList<>(limit);
+        entityManager.unwrap(Session.class).doWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "DELETE FROM space_marines WHERE id IN (" +
+                    "SELECT id FROM space_marines WHERE " + column + " = ? LIMIT ?) " +
+                    "RETURNING health, heart_count")) {
+                statement.setLong(1, id);
+                statement.setInt(2, limit);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        deleted.add(new int[]{resultSet.getInt(1), resultSet.getInt(2)});
+                    }
+                }
+            }
+        });
+        return deleted;
     }
 }
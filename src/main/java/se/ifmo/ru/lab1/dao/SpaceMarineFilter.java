@@ -0,0 +1,309 @@
+package se.ifmo.ru.lab1.dao;
+
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import se.ifmo.ru.lab1.entity.AstartesCategory;
+import se.ifmo.ru.lab1.entity.SpaceMarine;
+import se.ifmo.ru.lab1.entity.Weapon;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+// Фильтр списка десантников. Синтаксис параметров:
+//   health=10..50, health=10.., health=..50, health=42   (то же для heartCount; границы включены)
+//   category=ASSAULT,TERMINATOR   weaponType=FLAMER,MULTI_MELTA   chapterId=5
+//   creationDate=2024-01-01..2024-02-01   (полуинтервал [from, to); дата или ISO-8601 с зоной)
+// Условия объединяются через AND. Набор заданных условий (форма фильтра) компилируется в список
+// построителей предикатов один раз и кэшируется; для каждого запроса остается только подставить значения.
+public class SpaceMarineFilter {
+
+    public static final SpaceMarineFilter NONE = new SpaceMarineFilter();
+
+    private static final String RANGE = "..";
+    // Форм не больше 2^Clause.values().length, поэтому кэш не ограничивается
+    private static final Map<Integer, List<Clause>> COMPILED_SHAPES = new ConcurrentHashMap<>();
+
+    private String name;
+    private Integer minHealth;
+    private Integer maxHealth;
+    private Integer minHeartCount;
+    private Integer maxHeartCount;
+    private Set<AstartesCategory> categories;
+    private Set<Weapon> weaponTypes;
+    private Long chapterId;
+    private ZonedDateTime createdFrom;
+    private ZonedDateTime createdBefore;
+
+    private SpaceMarineFilter() {
+    }
+
+    // Только точное совпадение имени без учета регистра (прежний nameFilter)
+    public static SpaceMarineFilter byName(String nameFilter) {
+        return parse(nameFilter, null, null, null, null, null, null);
+    }
+
+    // IllegalArgumentException для некорректного значения любого параметра
+    public static SpaceMarineFilter parse(String nameFilter, String health, String heartCount,
+                                          String category, String weaponType, String chapterId,
+                                          String creationDate) {
+        SpaceMarineFilter filter = new SpaceMarineFilter();
+        if (!isBlank(nameFilter)) {
+            filter.name = nameFilter.toLowerCase().trim();
+        }
+        if (!isBlank(health)) {
+            Integer[] range = parseRange(health, "health", SpaceMarineFilter::parseInteger);
+            filter.minHealth = range[0];
+            filter.maxHealth = range[1];
+        }
+        if (!isBlank(heartCount)) {
+            Integer[] range = parseRange(heartCount, "heartCount", SpaceMarineFilter::parseInteger);
+            filter.minHeartCount = range[0];
+            filter.maxHeartCount = range[1];
+        }
+        if (!isBlank(category)) {
+            filter.categories = parseSet(category, "category", AstartesCategory.class);
+        }
+        if (!isBlank(weaponType)) {
+            filter.weaponTypes = parseSet(weaponType, "weaponType", Weapon.class);
+        }
+        if (!isBlank(chapterId)) {
+            try {
+                filter.chapterId = Long.valueOf(chapterId.trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid chapterId: " + chapterId);
+            }
+        }
+        if (!isBlank(creationDate)) {
+            String[] bounds = splitRange(creationDate, "creationDate");
+            if (bounds.length == 1) {
+                throw new IllegalArgumentException("creationDate must be a range from..to, got: " + creationDate);
+            }
+            filter.createdFrom = bounds[0].isEmpty() ? null : parseDateTime(bounds[0]);
+            filter.createdBefore = bounds[1].isEmpty() ? null : parseDateTime(bounds[1]);
+            if (filter.createdFrom != null && filter.createdBefore != null
+                    && !filter.createdFrom.isBefore(filter.createdBefore)) {
+                throw new IllegalArgumentException("Empty creationDate range: " + creationDate);
+            }
+        }
+        return filter;
+    }
+
+    public boolean isEmpty() {
+        return shape() == 0;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<Predicate> toPredicates(CriteriaBuilder cb, Root<SpaceMarine> root) {
+        List<Clause> clauses = COMPILED_SHAPES.computeIfAbsent(shape(), SpaceMarineFilter::compile);
+        List<Predicate> predicates = new ArrayList<>(clauses.size() + 1);
+        for (Clause clause : clauses) {
+            predicates.add(clause.toPredicate(cb, root, this));
+        }
+        return predicates;
+    }
+
+    private int shape() {
+        int shape = 0;
+        for (Clause clause : Clause.values()) {
+            if (clause.isPresent(this)) {
+                shape |= 1 << clause.ordinal();
+            }
+        }
+        return shape;
+    }
+
+    // Порядок Clause — сначала равенства, затем диапазоны — совпадает с порядком колонок
+    // составных индексов (chapter_id|category|weapon_type, health|creation_date, id)
+    private static List<Clause> compile(int shape) {
+        List<Clause> clauses = new ArrayList<>();
+        for (Clause clause : Clause.values()) {
+            if ((shape & (1 << clause.ordinal())) != 0) {
+                clauses.add(clause);
+            }
+        }
+        return List.copyOf(clauses);
+    }
+
+    private enum Clause {
+        CHAPTER {
+            boolean isPresent(SpaceMarineFilter f) {
+                return f.chapterId != null;
+            }
+
+            Predicate toPredicate(CriteriaBuilder cb, Root<SpaceMarine> root, SpaceMarineFilter f) {
+                return cb.equal(root.get("chapter").get("id"), f.chapterId);
+            }
+        },
+        CATEGORY {
+            boolean isPresent(SpaceMarineFilter f) {
+                return f.categories != null;
+            }
+
+            Predicate toPredicate(CriteriaBuilder cb, Root<SpaceMarine> root, SpaceMarineFilter f) {
+                return root.get("category").in(f.categories);
+            }
+        },
+        WEAPON_TYPE {
+            boolean isPresent(SpaceMarineFilter f) {
+                return f.weaponTypes != null;
+            }
+
+            Predicate toPredicate(CriteriaBuilder cb, Root<SpaceMarine> root, SpaceMarineFilter f) {
+                return root.get("weaponType").in(f.weaponTypes);
+            }
+        },
+        NAME {
+            boolean isPresent(SpaceMarineFilter f) {
+                return f.name != null;
+            }
+
+            // lower(name) покрыт функциональным индексом idx_space_marines_lower_name
+            Predicate toPredicate(CriteriaBuilder cb, Root<SpaceMarine> root, SpaceMarineFilter f) {
+                return cb.equal(cb.lower(root.get("name")), f.name);
+            }
+        },
+        MIN_HEALTH {
+            boolean isPresent(SpaceMarineFilter f) {
+                return f.minHealth != null;
+            }
+
+            Predicate toPredicate(CriteriaBuilder cb, Root<SpaceMarine> root, SpaceMarineFilter f) {
+                return cb.greaterThanOrEqualTo(root.get("health"), f.minHealth);
+            }
+        },
+        MAX_HEALTH {
+            boolean isPresent(SpaceMarineFilter f) {
+                return f.maxHealth != null;
+            }
+
+            Predicate toPredicate(CriteriaBuilder cb, Root<SpaceMarine> root, SpaceMarineFilter f) {
+                return cb.lessThanOrEqualTo(root.get("health"), f.maxHealth);
+            }
+        },
+        MIN_HEART_COUNT {
+            boolean isPresent(SpaceMarineFilter f) {
+                return f.minHeartCount != null;
+            }
+
+            Predicate toPredicate(CriteriaBuilder cb, Root<SpaceMarine> root, SpaceMarineFilter f) {
+                return cb.greaterThanOrEqualTo(root.get("heartCount"), f.minHeartCount);
+            }
+        },
+        MAX_HEART_COUNT {
+            boolean isPresent(SpaceMarineFilter f) {
+                return f.maxHeartCount != null;
+            }
+
+            Predicate toPredicate(CriteriaBuilder cb, Root<SpaceMarine> root, SpaceMarineFilter f) {
+                return cb.lessThanOrEqualTo(root.get("heartCount"), f.maxHeartCount);
+            }
+        },
+        CREATED_FROM {
+            boolean isPresent(SpaceMarineFilter f) {
+                return f.createdFrom != null;
+            }
+
+            Predicate toPredicate(CriteriaBuilder cb, Root<SpaceMarine> root, SpaceMarineFilter f) {
+                return cb.greaterThanOrEqualTo(root.get("creationDate"), f.createdFrom);
+            }
+        },
+        CREATED_BEFORE {
+            boolean isPresent(SpaceMarineFilter f) {
+                return f.createdBefore != null;
+            }
+
+            Predicate toPredicate(CriteriaBuilder cb, Root<SpaceMarine> root, SpaceMarineFilter f) {
+                return cb.lessThan(root.get("creationDate"), f.createdBefore);
+            }
+        };
+
+        abstract boolean isPresent(SpaceMarineFilter f);
+
+        abstract Predicate toPredicate(CriteriaBuilder cb, Root<SpaceMarine> root, SpaceMarineFilter f);
+    }
+
+    private static Integer[] parseRange(String value, String field, Function<String, Integer> parser) {
+        String[] bounds = splitRange(value, field);
+        if (bounds.length == 1) {
+            Integer exact = parser.apply(bounds[0]);
+            return new Integer[]{exact, exact};
+        }
+        Integer min = bounds[0].isEmpty() ? null : parser.apply(bounds[0]);
+        Integer max = bounds[1].isEmpty() ? null : parser.apply(bounds[1]);
+        if (min != null && max != null && min > max) {
+            throw new IllegalArgumentException("Empty " + field + " range: " + value);
+        }
+        return new Integer[]{min, max};
+    }
+
+    // ["a"] для точного значения, ["a", "b"] для диапазона (пустая строка — открытая граница)
+    private static String[] splitRange(String value, String field) {
+        String trimmed = value.trim();
+        int separator = trimmed.indexOf(RANGE);
+        if (separator < 0) {
+            return new String[]{trimmed};
+        }
+        String from = trimmed.substring(0, separator).trim();
+        String to = trimmed.substring(separator + RANGE.length()).trim();
+        if (from.isEmpty() && to.isEmpty()) {
+            throw new IllegalArgumentException("Invalid " + field + " range: " + value);
+        }
+        return new String[]{from, to};
+    }
+
+    private static Integer parseInteger(String value) {
+        try {
+            return Integer.valueOf(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid integer in filter: " + value);
+        }
+    }
+
+    // Дата без времени — начало суток в зоне сервера (в ней же creationDate заполняется при создании)
+    private static ZonedDateTime parseDateTime(String value) {
+        try {
+            if (value.length() == 10) {
+                return LocalDate.parse(value).atStartOfDay(ZoneId.systemDefault());
+            }
+            return ZonedDateTime.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid creationDate bound: " + value
+                    + " (expected yyyy-MM-dd or ISO-8601 date-time with offset)");
+        }
+    }
+
+    private static <E extends Enum<E>> Set<E> parseSet(String value, String field, Class<E> type) {
+        Set<E> values = EnumSet.noneOf(type);
+        for (String part : value.split(",")) {
+            if (part.trim().isEmpty()) {
+                continue;
+            }
+            try {
+                values.add(Enum.valueOf(type, part.trim().toUpperCase()));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown " + field + ": " + part.trim());
+            }
+        }
+        if (values.isEmpty()) {
+            throw new IllegalArgumentException("Empty " + field + " set");
+        }
+        return values;
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+}
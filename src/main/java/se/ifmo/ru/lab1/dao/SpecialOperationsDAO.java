@@ -1,19 +1,45 @@
 package se.ifmo.ru.lab1.dao;
 
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
 import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
 import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.PersistenceUnit;
 import jakarta.persistence.Query;
+import org.hibernate.Session;
+import se.ifmo.ru.lab1.cache.SpaceMarineResponseCache;
+import se.ifmo.ru.lab1.dto.MarineSearchResult;
+import se.ifmo.ru.lab1.entity.Chapter;
+import se.ifmo.ru.lab1.transaction.TransactionCallbacks;
 
 import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 @ApplicationScoped
 public class SpecialOperationsDAO {
 
+    private static final int SEARCH_FETCH_SIZE = 1000;
+
     @PersistenceContext(unitName = "PostgresDS")
     private EntityManager entityManager;
 
+    @PersistenceUnit(unitName = "PostgresDS")
+    private EntityManagerFactory entityManagerFactory;
+
+    @Inject
+    private TransactionCallbacks transactionCallbacks;
+
+    @Inject
+    private SpaceMarineResponseCache spaceMarineResponseCache;
+
     public BigDecimal getAverageHeartCount() {
         Query query = entityManager.createNativeQuery("SELECT get_average_heart_count()");
         return (BigDecimal) query.getSingleResult();
@@ -25,22 +51,82 @@ public class SpecialOperationsDAO {
         return ((Number) query.getSingleResult()).intValue();
     }
 
-    public List<Object[]> findMarinesByNameContaining(String nameSubstring) {
-        Query query = entityManager.createNativeQuery("SELECT * FROM find_marines_by_name(?)");
-        query.setParameter(1, nameSubstring);
-        return query.getResultList();
+    // Страница результатов, упорядоченных по id; afterId == null — с начала
+    public List<MarineSearchResult> findMarinesByNameContaining(String nameSubstring, Long afterId, int limit) {
+        List<MarineSearchResult> results = new ArrayList<>(limit);
+        queryMarinesByName(nameSubstring, afterId, limit, results::add);
+        return results;
+    }
+
+    // Все совпадения через курсор: в памяти одновременно не больше SEARCH_FETCH_SIZE строк.
+    // Нужна активная транзакция, иначе драйвер PostgreSQL прочитает весь результат сразу
+    public void forEachMarineByNameContaining(String nameSubstring, Consumer<MarineSearchResult> consumer) {
+        queryMarinesByName(nameSubstring, null, null, consumer);
+    }
+
+    private void queryMarinesByName(String nameSubstring, Long afterId, Integer limit,
+                                    Consumer<MarineSearchResult> consumer) {
+        entityManager.unwrap(Session.class).doWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "SELECT * FROM find_marines_by_name(?, ?, ?)",
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                statement.setFetchSize(limit != null ? Math.min(limit, SEARCH_FETCH_SIZE) : SEARCH_FETCH_SIZE);
+                statement.setString(1, nameSubstring);
+                if (afterId != null) {
+                    statement.setInt(2, Math.toIntExact(afterId));
+                } else {
+                    statement.setNull(2, Types.INTEGER);
+                }
+                if (limit != null) {
+                    statement.setInt(3, limit);
+                } else {
+                    statement.setNull(3, Types.INTEGER);
+                }
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        consumer.accept(toSearchResult(resultSet));
+                    }
+                }
+            }
+        });
+    }
+
+    private static MarineSearchResult toSearchResult(ResultSet resultSet) throws SQLException {
+        MarineSearchResult result = new MarineSearchResult();
+        result.setId(resultSet.getInt("id"));
+        result.setName(resultSet.getString("name"));
+        result.setHealth(resultSet.getInt("health"));
+        result.setHeartCount(resultSet.getInt("heart_count"));
+        result.setCategory(resultSet.getString("category"));
+        result.setWeaponType(resultSet.getString("weapon_type"));
+        result.setChapterName(resultSet.getString("chapter_name"));
+        result.setCreationDate(resultSet.getObject("creation_date", OffsetDateTime.class).toZonedDateTime());
+        return result;
     }
 
     public Long createNewChapter(String chapterName, Integer marinesCount) {
         Query query = entityManager.createNativeQuery("SELECT create_new_chapter(?, ?)");
         query.setParameter(1, chapterName);
         query.setParameter(2, marinesCount);
-        return ((Number) query.getSingleResult()).longValue();
+        Long chapterId = ((Number) query.getSingleResult()).longValue();
+        // Новая строка: закэшированных сущностей у нее нет, устарели только запросы по chapters
+        QuerySpaces.invalidate(entityManager, "chapters");
+        return chapterId;
     }
 
     public boolean removeMarineFromChapter(Long chapterId) {
         Query query = entityManager.createNativeQuery("SELECT remove_marine_from_chapter(?)");
         query.setParameter(1, chapterId);
-        return (Boolean) query.getSingleResult();
+        Boolean removed = (Boolean) query.getSingleResult();
+        evictChapter(chapterId);
+        spaceMarineResponseCache.invalidateChapter(chapterId);
+        return removed;
+    }
+
+    // Функции меняют chapters в обход Hibernate, поэтому кэш главы сбрасывается вручную:
+    // только эта глава и запросы по chapters, а не весь регион и весь кэш запросов
+    private void evictChapter(Long chapterId) {
+        QuerySpaces.invalidate(entityManager, "chapters");
+        transactionCallbacks.nowAndAfterCompletion(() -> entityManagerFactory.getCache().evict(Chapter.class, chapterId));
     }
 }
@@ -0,0 +1,24 @@
+package se.ifmo.ru.lab1.dao;
+
+import jakarta.persistence.EntityManager;
+
+import java.util.List;
+
+// Оценки размера таблиц из статистики планировщика PostgreSQL
+final class TableStatistics {
+
+    private TableStatistics() {}
+
+    // reltuples обновляется ANALYZE/autovacuum; -1 (или 0 в старых версиях) — статистики еще нет
+    static long estimateRowCount(EntityManager entityManager, String tableName) {
+        List<?> result = entityManager.createNativeQuery(
+                        "SELECT CAST(reltuples AS BIGINT) FROM pg_class WHERE oid = to_regclass(?)")
+                .setParameter(1, tableName)
+                .getResultList();
+        if (result.isEmpty() || result.get(0) == null) {
+            return -1;
+        }
+        long estimate = ((Number) result.get(0)).longValue();
+        return estimate > 0 ? estimate : -1;
+    }
+}
@@ -0,0 +1,30 @@
+package se.ifmo.ru.lab1.dto;
+
+import java.util.List;
+
+public class BatchCreateResponse {
+    
+    private int created;
+    private List<Integer> ids;
+    
+    public BatchCreateResponse(List<Integer> ids) {
+        this.created = ids.size();
+        this.ids = ids;
+    }
+    
+    public int getCreated() {
+        return created;
+    }
+    
+    public void setCreated(int created) {
+        this.created = created;
+    }
+    
+    public List<Integer> getIds() {
+        return ids;
+    }
+    
+    public void setIds(List<Integer> ids) {
+        this.ids = ids;
+    }
+}
@@ -0,0 +1,99 @@
+package se.ifmo.ru.lab1.dto;
+
+import java.util.List;
+
+public class CacheStatisticsResponse {
+    
+    private long secondLevelHits;
+    private long secondLevelMisses;
+    private long secondLevelPuts;
+    private long queryHits;
+    private long queryMisses;
+    private long queryPuts;
+    private List<RegionStatistics> regions;
+    
+    public CacheStatisticsResponse(long secondLevelHits, long secondLevelMisses, long secondLevelPuts,
+                                   long queryHits, long queryMisses, long queryPuts,
+                                   List<RegionStatistics> regions) {
+        this.secondLevelHits = secondLevelHits;
+        this.secondLevelMisses = secondLevelMisses;
+        this.secondLevelPuts = secondLevelPuts;
+        this.queryHits = queryHits;
+        this.queryMisses = queryMisses;
+        this.queryPuts = queryPuts;
+        this.regions = regions;
+    }
+    
+    public long getSecondLevelHits() {
+        return secondLevelHits;
+    }
+    
+    public long getSecondLevelMisses() {
+        return secondLevelMisses;
+    }
+    
+    public long getSecondLevelPuts() {
+        return secondLevelPuts;
+    }
+    
+    public long getQueryHits() {
+        return queryHits;
+    }
+    
+    public long getQueryMisses() {
+        return queryMisses;
+    }
+    
+    public long getQueryPuts() {
+        return queryPuts;
+    }
+    
+    public List<RegionStatistics> getRegions() {
+        return regions;
+    }
+    
+    public static class RegionStatistics {
+        private String region;
+        private long hits;
+        private long misses;
+        private long puts;
+        private long elementsInMemory;
+        private long evictions;
+        
+        public RegionStatistics(String region, long hits, long misses, long puts,
+                                long elementsInMemory, long evictions) {
+            this.region = region;
+            this.hits = hits;
+            this.misses = misses;
+            this.puts = puts;
+            this.elementsInMemory = elementsInMemory;
+            this.evictions = evictions;
+        }
+        
+        public String getRegion() {
+            return region;
+        }
+        
+        public long getHits() {
+            return hits;
+        }
+        
+        public long getMisses() {
+            return misses;
+        }
+        
+        public long getPuts() {
+            return puts;
+        }
+        
+        // -1, если провайдер кэша не сообщает число элементов
+        public long getElementsInMemory() {
+            return elementsInMemory;
+        }
+        
+        // -1, если статистика Infinispan недоступна через JMX
+        public long getEvictions() {
+            return evictions;
+        }
+    }
+}
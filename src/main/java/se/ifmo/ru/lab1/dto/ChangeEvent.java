@@ -0,0 +1,94 @@
+package se.ifmo.ru.lab1.dto;
+
+import java.util.List;
+
+// Событие об изменении для клиентов /ws/marines. data — новое состояние объекта (SpaceMarineDTO,
+// ChapterDTO или CoordinatesDTO), по нему клиент обновляет строку без запроса к REST API.
+// changed — изменено несколько объектов без подробностей, клиент перечитывает список.
+// previousChapterId — орден десантника до удаления или перевода в другой орден: событие нужно
+// и подписчикам этого ордена, а из data его уже не узнать.
+// Номер seq добавляет WebSocketDispatcher отдельно для каждой сессии: пропуск номера значит,
+// что часть событий этой сессии потеряна.
+public class ChangeEvent {
+
+    public static final String SPACE_MARINE = "spaceMarine";
+    public static final String CHAPTER = "chapter";
+    public static final String COORDINATES = "coordinates";
+
+    private String entity;
+    private String action;
+    private Object id;
+    private List<?> ids;
+    private Object data;
+    private Long previousChapterId;
+
+    public ChangeEvent() {
+    }
+
+    private ChangeEvent(String entity, String action, Object id, Object data) {
+        this.entity = entity;
+        this.action = action;
+        this.id = id;
+        this.data = data;
+    }
+
+    public static ChangeEvent created(String entity, Object id, Object data) {
+        return new ChangeEvent(entity, "created", id, data);
+    }
+
+    // Созданы сразу несколько объектов; известны только их id
+    public static ChangeEvent created(String entity, List<?> ids) {
+        ChangeEvent event = new ChangeEvent(entity, "created", null, null);
+        event.ids = ids;
+        return event;
+    }
+
+    public static ChangeEvent updated(String entity, Object id, Object data) {
+        return new ChangeEvent(entity, "updated", id, data);
+    }
+
+    // previousChapterId — null, если орден не менялся
+    public static ChangeEvent updated(String entity, Object id, Object data, Long previousChapterId) {
+        ChangeEvent event = updated(entity, id, data);
+        event.previousChapterId = previousChapterId;
+        return event;
+    }
+
+    public static ChangeEvent deleted(String entity, Object id) {
+        return new ChangeEvent(entity, "deleted", id, null);
+    }
+
+    public static ChangeEvent deleted(String entity, Object id, Long previousChapterId) {
+        ChangeEvent event = deleted(entity, id);
+        event.previousChapterId = previousChapterId;
+        return event;
+    }
+
+    public static ChangeEvent changed(String entity) {
+        return new ChangeEvent(entity, "changed", null, null);
+    }
+
+    public String getEntity() {
+        return entity;
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    public Object getId() {
+        return id;
+    }
+
+    public List<?> getIds() {
+        return ids;
+    }
+
+    public Object getData() {
+        return data;
+    }
+
+    public Long getPreviousChapterId() {
+        return previousChapterId;
+    }
+}
@@ -0,0 +1,28 @@
+package se.ifmo.ru.lab1.dto;
+
+// Итог слияния дубликатов координат: сколько точек имели дубликаты, сколько строк удалено
+// и сколько десантников перенаправлено на оставшиеся строки
+public class CoordinatesCompactionResponse {
+    
+    private long mergedPoints;
+    private long removedRows;
+    private long repointedMarines;
+    
+    public CoordinatesCompactionResponse(long mergedPoints, long removedRows, long repointedMarines) {
+        this.mergedPoints = mergedPoints;
+        this.removedRows = removedRows;
+        this.repointedMarines = repointedMarines;
+    }
+    
+    public long getMergedPoints() {
+        return mergedPoints;
+    }
+    
+    public long getRemovedRows() {
+        return removedRows;
+    }
+    
+    public long getRepointedMarines() {
+        return repointedMarines;
+    }
+}
@@ -0,0 +1,23 @@
+package se.ifmo.ru.lab1.dto;
+
+public enum CountMode {
+    EXACT,
+    // Оценка по статистике планировщика (pg_class.reltuples), без сканирования таблицы
+    APPROXIMATE,
+    NONE;
+
+    public static CountMode fromParam(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return EXACT;
+        }
+        try {
+            return CountMode.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown countMode: " + value + " (expected exact, approximate or none)");
+        }
+    }
+
+    public String toParam() {
+        return name().toLowerCase();
+    }
+}
@@ -0,0 +1,114 @@
+package se.ifmo.ru.lab1.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Количество десантников по категории, оружию, главе и интервалу health; value == null — поле не задано
+public class FacetsResponse {
+    
+    private long total;
+    private int healthBucketSize;
+    private final List<ValueCount> categories = new ArrayList<>();
+    private final List<ValueCount> weaponTypes = new ArrayList<>();
+    private final List<ChapterCount> chapters = new ArrayList<>();
+    private final List<HealthBucketCount> healthBuckets = new ArrayList<>();
+    
+    public FacetsResponse(int healthBucketSize) {
+        this.healthBucketSize = healthBucketSize;
+    }
+    
+    public long getTotal() {
+        return total;
+    }
+    
+    public void setTotal(long total) {
+        this.total = total;
+    }
+    
+    public int getHealthBucketSize() {
+        return healthBucketSize;
+    }
+    
+    public List<ValueCount> getCategories() {
+        return categories;
+    }
+    
+    public List<ValueCount> getWeaponTypes() {
+        return weaponTypes;
+    }
+    
+    public List<ChapterCount> getChapters() {
+        return chapters;
+    }
+    
+    public List<HealthBucketCount> getHealthBuckets() {
+        return healthBuckets;
+    }
+    
+    public static class ValueCount {
+        private String value;
+        private long count;
+        
+        public ValueCount(String value, long count) {
+            this.value = value;
+            this.count = count;
+        }
+        
+        public String getValue() {
+            return value;
+        }
+        
+        public long getCount() {
+            return count;
+        }
+    }
+    
+    public static class ChapterCount {
+        private Long chapterId;
+        private String chapterName;
+        private long count;
+        
+        public ChapterCount(Long chapterId, String chapterName, long count) {
+            this.chapterId = chapterId;
+            this.chapterName = chapterName;
+            this.count = count;
+        }
+        
+        public Long getChapterId() {
+            return chapterId;
+        }
+        
+        public String getChapterName() {
+            return chapterName;
+        }
+        
+        public long getCount() {
+            return count;
+        }
+    }
+    
+    // Интервал [from, to)
+    public static class HealthBucketCount {
+        private int from;
+        private int to;
+        private long count;
+        
+        public HealthBucketCount(int from, int to, long count) {
+            this.from = from;
+            this.to = to;
+            this.count = count;
+        }
+        
+        public int getFrom() {
+            return from;
+        }
+        
+        public int getTo() {
+            return to;
+        }
+        
+        public long getCount() {
+            return count;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package se.ifmo.ru.lab1.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Распределение health: квантили по ближайшему рангу и гистограмма; при пустой таблице значения null
+public class HealthStatisticsResponse {
+    
+    private long count;
+    private Integer min;
+    private Integer max;
+    private Integer p50;
+    private Integer p90;
+    private Integer p99;
+    private long maxRankError; // допустимое отклонение ранга квантиля от точного
+    private final List<Bucket> histogram = new ArrayList<>();
+    
+    public long getCount() {
+        return count;
+    }
+    
+    public void setCount(long count) {
+        this.count = count;
+    }
+    
+    public Integer getMin() {
+        return min;
+    }
+    
+    public void setMin(Integer min) {
+        this.min = min;
+    }
+    
+    public Integer getMax() {
+        return max;
+    }
+    
+    public void setMax(Integer max) {
+        this.max = max;
+    }
+    
+    public Integer getP50() {
+        return p50;
+    }
+    
+    public void setP50(Integer p50) {
+        this.p50 = p50;
+    }
+    
+    public Integer getP90() {
+        return p90;
+    }
+    
+    public void setP90(Integer p90) {
+        this.p90 = p90;
+    }
+    
+    public Integer getP99() {
+        return p99;
+    }
+    
+    public void setP99(Integer p99) {
+        this.p99 = p99;
+    }
+    
+    public long getMaxRankError() {
+        return maxRankError;
+    }
+    
+    public void setMaxRankError(long maxRankError) {
+        this.maxRankError = maxRankError;
+    }
+    
+    public List<Bucket> getHistogram() {
+        return histogram;
+    }
+    
+    // Интервал [from, to)
+    public static class Bucket {
+        private long from;
+        private long to;
+        private long count;
+        
+        public Bucket(long from, long to, long count) {
+            this.from = from;
+            this.to = to;
+            this.count = count;
+        }
+        
+        public long getFrom() {
+            return from;
+        }
+        
+        public long getTo() {
+            return to;
+        }
+        
+        public long getCount() {
+            return count;
+        }
+    }
+}
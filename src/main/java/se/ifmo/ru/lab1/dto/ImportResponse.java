@@ -0,0 +1,40 @@
+package se.ifmo.ru.lab1.dto;
+
+import java.util.List;
+
+public class ImportResponse {
+    
+    private long imported;
+    private long rejected;
+    private long durationMs;
+    private double rowsPerSecond;
+    private List<String> errors; // первые ошибки по номерам строк
+    
+    public ImportResponse(long imported, long rejected, long durationMs, List<String> errors) {
+        this.imported = imported;
+        this.rejected = rejected;
+        this.durationMs = durationMs;
+        this.rowsPerSecond = durationMs > 0 ? imported * 1000.0 / durationMs : imported;
+        this.errors = errors;
+    }
+    
+    public long getImported() {
+        return imported;
+    }
+    
+    public long getRejected() {
+        return rejected;
+    }
+    
+    public long getDurationMs() {
+        return durationMs;
+    }
+    
+    public double getRowsPerSecond() {
+        return rowsPerSecond;
+    }
+    
+    public List<String> getErrors() {
+        return errors;
+    }
+}
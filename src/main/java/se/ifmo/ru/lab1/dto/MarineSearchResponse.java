@@ -0,0 +1,30 @@
+package se.ifmo.ru.lab1.dto;
+
+import java.util.List;
+
+public class MarineSearchResponse {
+    
+    private List<MarineSearchResult> marines;
+    private String nextCursor;
+    
+    public MarineSearchResponse(List<MarineSearchResult> marines, String nextCursor) {
+        this.marines = marines;
+        this.nextCursor = nextCursor;
+    }
+    
+    public List<MarineSearchResult> getMarines() {
+        return marines;
+    }
+    
+    public void setMarines(List<MarineSearchResult> marines) {
+        this.marines = marines;
+    }
+    
+    public String getNextCursor() {
+        return nextCursor;
+    }
+    
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+}
@@ -0,0 +1,80 @@
+package se.ifmo.ru.lab1.dto;
+
+import java.time.ZonedDateTime;
+
+// Строка результата find_marines_by_name
+public class MarineSearchResult {
+    
+    private Integer id;
+    private String name;
+    private Integer health;
+    private Integer heartCount;
+    private String category;
+    private String weaponType;
+    private String chapterName;
+    private ZonedDateTime creationDate;
+    
+    public Integer getId() {
+        return id;
+    }
+    
+    public void setId(Integer id) {
+        this.id = id;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public void setName(String name) {
+        this.name = name;
+    }
+    
+    public Integer getHealth() {
+        return health;
+    }
+    
+    public void setHealth(Integer health) {
+        this.health = health;
+    }
+    
+    public Integer getHeartCount() {
+        return heartCount;
+    }
+    
+    public void setHeartCount(Integer heartCount) {
+        this.heartCount = heartCount;
+    }
+    
+    public String getCategory() {
+        return category;
+    }
+    
+    public void setCategory(String category) {
+        this.category = category;
+    }
+    
+    public String getWeaponType() {
+        return weaponType;
+    }
+    
+    public void setWeaponType(String weaponType) {
+        this.weaponType = weaponType;
+    }
+    
+    public String getChapterName() {
+        return chapterName;
+    }
+    
+    public void setChapterName(String chapterName) {
+        this.chapterName = chapterName;
+    }
+    
+    public ZonedDateTime getCreationDate() {
+        return creationDate;
+    }
+    
+    public void setCreationDate(ZonedDateTime creationDate) {
+        this.creationDate = creationDate;
+    }
+}
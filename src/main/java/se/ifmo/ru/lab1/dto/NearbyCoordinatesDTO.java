@@ -0,0 +1,42 @@
+package se.ifmo.ru.lab1.dto;
+
+import java.util.List;
+
+// Результат пространственного запроса: координаты, расстояние до точки запроса
+// (null для прямоугольника) и десантники, расположенные в этой точке
+public class NearbyCoordinatesDTO {
+    
+    private CoordinatesDTO coordinates;
+    private Double distance;
+    private List<SpaceMarineDTO> marines;
+    
+    public NearbyCoordinatesDTO(CoordinatesDTO coordinates, Double distance, List<SpaceMarineDTO> marines) {
+        this.coordinates = coordinates;
+        this.distance = distance;
+        this.marines = marines;
+    }
+    
+    public CoordinatesDTO getCoordinates() {
+        return coordinates;
+    }
+    
+    public void setCoordinates(CoordinatesDTO coordinates) {
+        this.coordinates = coordinates;
+    }
+    
+    public Double getDistance() {
+        return distance;
+    }
+    
+    public void setDistance(Double distance) {
+        this.distance = distance;
+    }
+    
+    public List<SpaceMarineDTO> getMarines() {
+        return marines;
+    }
+    
+    public void setMarines(List<SpaceMarineDTO> marines) {
+        this.marines = marines;
+    }
+}
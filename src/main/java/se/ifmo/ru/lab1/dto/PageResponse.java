@@ -6,12 +6,23 @@ public class PageResponse<T> {
     
     private List<T> content;
     private PageMetadata page;
+    private String nextCursor;
     
     public PageResponse(List<T> content, long totalElements, int pageNumber, int pageSize) {
         this.content = content;
         this.page = new PageMetadata(totalElements, pageNumber, pageSize);
     }
     
+    public PageResponse(List<T> content, Long totalElements, int pageNumber, int pageSize, CountMode countMode) {
+        this.content = content;
+        if (countMode == CountMode.EXACT && totalElements != null) {
+            this.page = new PageMetadata(totalElements, pageNumber, pageSize);
+        } else {
+            // Без точного количества о следующей странице судим по тому, заполнена ли текущая
+            this.page = new PageMetadata(totalElements, pageNumber, pageSize, countMode, content.size() >= pageSize);
+        }
+    }
+    
     public List<T> getContent() {
         return content;
     }
@@ -28,6 +39,14 @@ public class PageResponse<T> {
         this.page = page;
     }
     
+    public String getNextCursor() {
+        return nextCursor;
+    }
+    
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+    
     public static class PageMetadata {
         private long totalElements;
         private int totalPages;
@@ -37,6 +56,7 @@ public class PageResponse<T> {
         private boolean last;
         private boolean hasNext;
         private boolean hasPrevious;
+        private String countMode;
         
         public PageMetadata(long totalElements, int pageNumber, int pageSize) {
             this.totalElements = totalElements;
@@ -47,6 +67,19 @@ public class PageResponse<T> {
             this.last = pageNumber >= totalPages - 1;
             this.hasNext = !last;
             this.hasPrevious = !first;
+            this.countMode = CountMode.EXACT.toParam();
+        }
+        
+        public PageMetadata(Long totalElements, int pageNumber, int pageSize, CountMode countMode, boolean fullPage) {
+            this.totalElements = totalElements != null ? totalElements : -1;
+            this.pageNumber = pageNumber;
+            this.pageSize = pageSize;
+            this.totalPages = totalElements != null ? (int) Math.ceil((double) totalElements / pageSize) : -1;
+            this.first = pageNumber == 0;
+            this.last = !fullPage;
+            this.hasNext = fullPage;
+            this.hasPrevious = !first;
+            this.countMode = countMode.toParam();
         }
         
         // Getters
@@ -81,5 +114,9 @@ public class PageResponse<T> {
         public boolean isHasPrevious() {
             return hasPrevious;
         }
+        
+        public String getCountMode() {
+            return countMode;
+        }
     }
 }
@@ -0,0 +1,66 @@
+package se.ifmo.ru.lab1.dto;
+
+import java.time.Instant;
+
+// Состояние фонового удаления главы или координат вместе с их десантниками
+public class PurgeStatus {
+    
+    private String id;
+    private String target; // chapter или coordinates
+    private Long targetId;
+    private String state; // RUNNING, COMPLETED, FAILED
+    private long total; // десантников на момент запуска
+    private long deleted;
+    private String error;
+    private Instant startedAt;
+    private Instant finishedAt;
+    
+    public PurgeStatus(String id, String target, Long targetId, String state, long total, long deleted,
+                       String error, Instant startedAt, Instant finishedAt) {
+        this.id = id;
+        this.target = target;
+        this.targetId = targetId;
+        this.state = state;
+        this.total = total;
+        this.deleted = deleted;
+        this.error = error;
+        this.startedAt = startedAt;
+        this.finishedAt = finishedAt;
+    }
+    
+    public String getId() {
+        return id;
+    }
+    
+    public String getTarget() {
+        return target;
+    }
+    
+    public Long getTargetId() {
+        return targetId;
+    }
+    
+    public String getState() {
+        return state;
+    }
+    
+    public long getTotal() {
+        return total;
+    }
+    
+    public long getDeleted() {
+        return deleted;
+    }
+    
+    public String getError() {
+        return error;
+    }
+    
+    public Instant getStartedAt() {
+        return startedAt;
+    }
+    
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+}
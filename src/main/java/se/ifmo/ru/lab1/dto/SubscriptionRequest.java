@@ -0,0 +1,60 @@
+package se.ifmo.ru.lab1.dto;
+
+import java.util.List;
+
+// Сообщение клиента /ws/marines:
+//   {"type":"subscribe", "entities":[...], "chapterIds":[...], "marineIds":[...], "pageIds":[...]}
+//     — заменяет подписку сессии целиком;
+//   {"type":"page", "pageIds":[...]} — заменяет только id десантников текущей страницы;
+//   {"type":"unsubscribe"} — снова получать все события.
+public class SubscriptionRequest {
+    
+    private String type;
+    private List<String> entities;
+    private List<Long> chapterIds;
+    private List<Integer> marineIds;
+    private List<Integer> pageIds;
+    
+    public SubscriptionRequest() {
+    }
+    
+    public String getType() {
+        return type;
+    }
+    
+    public void setType(String type) {
+        this.type = type;
+    }
+    
+    public List<String> getEntities() {
+        return entities;
+    }
+    
+    public void setEntities(List<String> entities) {
+        this.entities = entities;
+    }
+    
+    public List<Long> getChapterIds() {
+        return chapterIds;
+    }
+    
+    public void setChapterIds(List<Long> chapterIds) {
+        this.chapterIds = chapterIds;
+    }
+    
+    public List<Integer> getMarineIds() {
+        return marineIds;
+    }
+    
+    public void setMarineIds(List<Integer> marineIds) {
+        this.marineIds = marineIds;
+    }
+    
+    public List<Integer> getPageIds() {
+        return pageIds;
+    }
+    
+    public void setPageIds(List<Integer> pageIds) {
+        this.pageIds = pageIds;
+    }
+}
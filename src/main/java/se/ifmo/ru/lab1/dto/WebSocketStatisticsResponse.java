@@ -0,0 +1,57 @@
+package se.ifmo.ru.lab1.dto;
+
+// Счетчики рассылки /ws/marines с запуска приложения. eventsQueued — событий, адресованных
+// сессиям (одно событие для N сессий считается N раз), framesSent — отправленных кадров с событиями,
+// framesSaved — кадров, сэкономленных объединением событий разных объектов в один batch,
+// duplicatesMerged — повторных событий об объекте, схлопнутых в окне, eventsDropped — событий,
+// замененных resync из-за переполнения окна
+public class WebSocketStatisticsResponse {
+    
+    private int sessions;
+    private long coalesceWindowMs;
+    private long eventsQueued;
+    private long framesSent;
+    private long framesSaved;
+    private long duplicatesMerged;
+    private long eventsDropped;
+    
+    public WebSocketStatisticsResponse(int sessions, long coalesceWindowMs, long eventsQueued,
+                                       long framesSent, long framesSaved, long duplicatesMerged,
+                                       long eventsDropped) {
+        this.sessions = sessions;
+        this.coalesceWindowMs = coalesceWindowMs;
+        this.eventsQueued = eventsQueued;
+        this.framesSent = framesSent;
+        this.framesSaved = framesSaved;
+        this.duplicatesMerged = duplicatesMerged;
+        this.eventsDropped = eventsDropped;
+    }
+    
+    public int getSessions() {
+        return sessions;
+    }
+    
+    public long getCoalesceWindowMs() {
+        return coalesceWindowMs;
+    }
+    
+    public long getEventsQueued() {
+        return eventsQueued;
+    }
+    
+    public long getFramesSent() {
+        return framesSent;
+    }
+    
+    public long getFramesSaved() {
+        return framesSaved;
+    }
+    
+    public long getDuplicatesMerged() {
+        return duplicatesMerged;
+    }
+    
+    public long getEventsDropped() {
+        return eventsDropped;
+    }
+}
@@ -5,13 +5,20 @@ import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 @Entity
-@Table(name = "chapters")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@Table(name = "chapters", indexes = {
+        @Index(name = "idx_chapters_name_id", columnList = "name, id"),
+        @Index(name = "idx_chapters_marines_count_id", columnList = "marines_count, id")
+})
 public class Chapter {
     @Id
     @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "chapter_seq")
-    @SequenceGenerator(name = "chapter_seq", sequenceName = "chapter_id_seq", allocationSize = 1)
+    @SequenceGenerator(name = "chapter_seq", sequenceName = "chapter_id_seq", allocationSize = 50)
     private Long id;
 
     @NotBlank(message = "Chapter name cannot be null or empty")
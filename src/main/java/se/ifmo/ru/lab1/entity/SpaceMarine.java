@@ -5,11 +5,33 @@ import jakarta.validation.constraints.*;
 import java.time.ZonedDateTime;
 
 @Entity
-@Table(name = "space_marines")
+// Граф для списков: coordinates и chapter подтягиваются JOIN'ом в том же запросе, без N+1
+@NamedEntityGraph(name = SpaceMarine.WITH_RELATIONS, attributeNodes = {
+        @NamedAttributeNode("coordinates"),
+        @NamedAttributeNode("chapter")
+})
+@Table(name = "space_marines", indexes = {
+        // Составные индексы (ключ сортировки, id) для keyset-пагинации
+        @Index(name = "idx_space_marines_name_id", columnList = "name, id"),
+        @Index(name = "idx_space_marines_health_id", columnList = "health, id"),
+        @Index(name = "idx_space_marines_heart_count_id", columnList = "heart_count, id"),
+        @Index(name = "idx_space_marines_creation_date_id", columnList = "creation_date, id"),
+        // Фильтры списка (SpaceMarineFilter): равенство по главе/категории/оружию и диапазон health
+        // или creation_date. Префикс chapter_id заодно служит индексом внешнего ключа
+        @Index(name = "idx_space_marines_chapter_health_id", columnList = "chapter_id, health, id"),
+        @Index(name = "idx_space_marines_chapter_creation_date_id", columnList = "chapter_id, creation_date, id"),
+        @Index(name = "idx_space_marines_category_health_id", columnList = "category, health, id"),
+        @Index(name = "idx_space_marines_weapon_type_health_id", columnList = "weapon_type, health, id"),
+        // Внешний ключ координат: каскадное удаление и проверка FK при удалении координат
+        @Index(name = "idx_space_marines_coordinates_id", columnList = "coordinates_id")
+})
 public class SpaceMarine {
+    public static final String WITH_RELATIONS = "SpaceMarine.withRelations";
+    public static final int ID_ALLOCATION_SIZE = 50;
+
     @Id
     @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "space_marine_seq")
-    @SequenceGenerator(name = "space_marine_seq", sequenceName = "space_marine_id_seq", allocationSize = 1)
+    @SequenceGenerator(name = "space_marine_seq", sequenceName = "space_marine_id_seq", allocationSize = ID_ALLOCATION_SIZE)
     @Column(name = "id")
     private Integer id;
 
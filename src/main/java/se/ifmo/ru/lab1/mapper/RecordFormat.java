@@ -0,0 +1,41 @@
+package se.ifmo.ru.lab1.mapper;
+
+// Построчные форматы импорта/экспорта SpaceMarine
+public enum RecordFormat {
+    NDJSON("application/x-ndjson", "ndjson"),
+    CSV("text/csv", "csv");
+
+    private final String mediaType;
+    private final String extension;
+
+    RecordFormat(String mediaType, String extension) {
+        this.mediaType = mediaType;
+        this.extension = extension;
+    }
+
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    public static RecordFormat fromContentType(String contentType) {
+        if (contentType != null && contentType.toLowerCase().startsWith(CSV.mediaType)) {
+            return CSV;
+        }
+        return NDJSON;
+    }
+
+    public static RecordFormat fromParam(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return NDJSON;
+        }
+        try {
+            return RecordFormat.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown format: " + value + " (expected ndjson or csv)");
+        }
+    }
+}
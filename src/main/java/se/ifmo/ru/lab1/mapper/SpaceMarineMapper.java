@@ -50,6 +50,34 @@ public class SpaceMarineMapper {
         return entity;
     }
 
+    // Новый десантник из DTO создания; связи уже разрешены вызывающим кодом
+    public SpaceMarine toNewEntity(SpaceMarineDTO dto, Coordinates coordinates, Chapter chapter) {
+        SpaceMarine entity = new SpaceMarine();
+        entity.setName(dto.getName());
+        entity.setHealth(dto.getHealth());
+        entity.setHeartCount(dto.getHeartCount());
+        
+        if (dto.getCategory() != null && !dto.getCategory().trim().isEmpty()) {
+            try {
+                entity.setCategory(AstartesCategory.valueOf(dto.getCategory()));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Неверная категория: " + dto.getCategory());
+            }
+        }
+        
+        if (dto.getWeaponType() != null && !dto.getWeaponType().trim().isEmpty()) {
+            try {
+                entity.setWeaponType(Weapon.valueOf(dto.getWeaponType()));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Неверный тип оружия: " + dto.getWeaponType());
+            }
+        }
+        
+        entity.setCoordinates(coordinates);
+        entity.setChapter(chapter);
+        return entity;
+    }
+
     public CoordinatesDTO toCoordinatesDTO(Coordinates entity) {
         if (entity == null) {
             return null;
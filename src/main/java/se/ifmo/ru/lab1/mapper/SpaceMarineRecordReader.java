@@ -0,0 +1,188 @@
+package se.ifmo.ru.lab1.mapper;
+
+import jakarta.json.Json;
+import jakarta.json.JsonException;
+import jakarta.json.JsonNumber;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonReader;
+import jakarta.json.JsonValue;
+import se.ifmo.ru.lab1.dto.SpaceMarineDTO;
+import se.ifmo.ru.lab1.exception.ValidationException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Построчное чтение записей SpaceMarine из NDJSON или CSV (с заголовком).
+// В памяти держится только текущая строка, поэтому размер файла не важен.
+public class SpaceMarineRecordReader {
+
+    private final BufferedReader reader;
+    private final RecordFormat format;
+    private Map<String, Integer> csvColumns;
+    private long lineNumber;
+
+    public SpaceMarineRecordReader(BufferedReader reader, RecordFormat format) {
+        this.reader = reader;
+        this.format = format;
+    }
+
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    // Следующая запись или null в конце потока; IllegalArgumentException для некорректной строки
+    public SpaceMarineDTO next() {
+        String line = readNonEmptyLine();
+        if (line == null) {
+            return null;
+        }
+        if (format == RecordFormat.CSV && csvColumns == null) {
+            csvColumns = parseHeader(line);
+            line = readNonEmptyLine();
+            if (line == null) {
+                return null;
+            }
+        }
+        return format == RecordFormat.CSV ? parseCsv(line) : parseJson(line);
+    }
+
+    private String readNonEmptyLine() {
+        try {
+            String line;
+            do {
+                line = reader.readLine();
+                lineNumber++;
+            } while (line != null && line.trim().isEmpty());
+            return line;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private SpaceMarineDTO parseJson(String line) {
+        JsonObject json;
+        try (JsonReader jsonReader = Json.createReader(new StringReader(line))) {
+            json = jsonReader.readObject();
+        } catch (JsonException | IllegalStateException e) {
+            throw new IllegalArgumentException("Некорректный JSON: " + e.getMessage());
+        }
+        SpaceMarineDTO dto = new SpaceMarineDTO();
+        dto.setName(jsonString(json, "name"));
+        dto.setHealth(toInteger(jsonString(json, "health"), "health"));
+        dto.setHeartCount(toInteger(jsonString(json, "heartCount"), "heartCount"));
+        dto.setCategory(jsonString(json, "category"));
+        dto.setWeaponType(jsonString(json, "weaponType"));
+        dto.setCoordinatesId(toLong(jsonString(json, "coordinatesId"), "coordinatesId"));
+        dto.setChapterId(toLong(jsonString(json, "chapterId"), "chapterId"));
+        return dto;
+    }
+
+    private static String jsonString(JsonObject json, String field) {
+        JsonValue value = json.get(field);
+        if (value == null || value.getValueType() == JsonValue.ValueType.NULL) {
+            return null;
+        }
+        switch (value.getValueType()) {
+            case STRING:
+                return json.getString(field);
+            case NUMBER:
+                return ((JsonNumber) value).toString();
+            default:
+                throw new IllegalArgumentException("Некорректное значение поля " + field);
+        }
+    }
+
+    private Map<String, Integer> parseHeader(String line) {
+        List<String> names = splitCsv(line);
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < names.size(); i++) {
+            columns.put(names.get(i).trim(), i);
+        }
+        if (!columns.containsKey("name") || !columns.containsKey("coordinatesId")) {
+            throw new ValidationException("CSV заголовок должен содержать как минимум name и coordinatesId");
+        }
+        return columns;
+    }
+
+    private SpaceMarineDTO parseCsv(String line) {
+        List<String> values = splitCsv(line);
+        SpaceMarineDTO dto = new SpaceMarineDTO();
+        dto.setName(csvValue(values, "name"));
+        dto.setHealth(toInteger(csvValue(values, "health"), "health"));
+        dto.setHeartCount(toInteger(csvValue(values, "heartCount"), "heartCount"));
+        dto.setCategory(csvValue(values, "category"));
+        dto.setWeaponType(csvValue(values, "weaponType"));
+        dto.setCoordinatesId(toLong(csvValue(values, "coordinatesId"), "coordinatesId"));
+        dto.setChapterId(toLong(csvValue(values, "chapterId"), "chapterId"));
+        return dto;
+    }
+
+    private String csvValue(List<String> values, String column) {
+        Integer index = csvColumns.get(column);
+        if (index == null || index >= values.size()) {
+            return null;
+        }
+        String value = values.get(index);
+        return value.isEmpty() ? null : value;
+    }
+
+    // RFC 4180 без переносов строк внутри полей
+    private static List<String> splitCsv(String line) {
+        List<String> values = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    current.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    current.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(current.toString());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Незакрытая кавычка в CSV");
+        }
+        values.add(current.toString());
+        return values;
+    }
+
+    private static Integer toInteger(String value, String field) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Integer.valueOf(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Поле " + field + " должно быть целым числом: " + value);
+        }
+    }
+
+    private static Long toLong(String value, String field) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Long.valueOf(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Поле " + field + " должно быть целым числом: " + value);
+        }
+    }
+}
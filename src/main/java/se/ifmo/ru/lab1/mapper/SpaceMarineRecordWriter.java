@@ -0,0 +1,129 @@
+package se.ifmo.ru.lab1.mapper;
+
+import jakarta.json.Json;
+import jakarta.json.JsonObjectBuilder;
+import se.ifmo.ru.lab1.dto.ChapterDTO;
+import se.ifmo.ru.lab1.dto.CoordinatesDTO;
+import se.ifmo.ru.lab1.dto.SpaceMarineDTO;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+// Построчная запись SpaceMarine в NDJSON или CSV. Набор колонок CSV совместим с импортом,
+// поэтому выгруженный файл можно загрузить обратно через POST /spacemarines/import.
+public class SpaceMarineRecordWriter {
+
+    private static final String CSV_HEADER =
+            "id,name,coordinatesId,x,y,creationDate,chapterId,chapterName,chapterMarinesCount,health,heartCount,category,weaponType";
+
+    private final Writer writer;
+    private final RecordFormat format;
+    private boolean headerWritten;
+
+    public SpaceMarineRecordWriter(Writer writer, RecordFormat format) {
+        this.writer = writer;
+        this.format = format;
+    }
+
+    public void write(SpaceMarineDTO dto) {
+        try {
+            writeHeaderIfNeeded();
+            writer.write(format == RecordFormat.CSV ? toCsv(dto) : toJson(dto));
+            writer.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // CSV-заголовок пишется и для пустой выгрузки
+    public void finish() {
+        try {
+            writeHeaderIfNeeded();
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeHeaderIfNeeded() throws IOException {
+        if (format == RecordFormat.CSV && !headerWritten) {
+            writer.write(CSV_HEADER);
+            writer.write('\n');
+            headerWritten = true;
+        }
+    }
+
+    private static String toJson(SpaceMarineDTO dto) {
+        JsonObjectBuilder json = Json.createObjectBuilder();
+        json.add("id", dto.getId());
+        json.add("name", dto.getName());
+        CoordinatesDTO coordinates = dto.getCoordinates();
+        JsonObjectBuilder coordinatesJson = Json.createObjectBuilder()
+                .add("id", coordinates.getId())
+                .add("x", coordinates.getX());
+        if (coordinates.getY() != null) {
+            coordinatesJson.add("y", coordinates.getY());
+        } else {
+            coordinatesJson.addNull("y");
+        }
+        json.add("coordinates", coordinatesJson);
+        json.add("creationDate", dto.getCreationDate().toString());
+        ChapterDTO chapter = dto.getChapter();
+        if (chapter != null) {
+            json.add("chapter", Json.createObjectBuilder()
+                    .add("id", chapter.getId())
+                    .add("name", chapter.getName())
+                    .add("marinesCount", chapter.getMarinesCount()));
+        } else {
+            json.addNull("chapter");
+        }
+        json.add("health", dto.getHealth());
+        json.add("heartCount", dto.getHeartCount());
+        addNullable(json, "category", dto.getCategory());
+        addNullable(json, "weaponType", dto.getWeaponType());
+        json.add("coordinatesId", coordinates.getId());
+        if (chapter != null) {
+            json.add("chapterId", chapter.getId());
+        } else {
+            json.addNull("chapterId");
+        }
+        return json.build().toString();
+    }
+
+    private static void addNullable(JsonObjectBuilder json, String field, String value) {
+        if (value != null) {
+            json.add(field, value);
+        } else {
+            json.addNull(field);
+        }
+    }
+
+    private static String toCsv(SpaceMarineDTO dto) {
+        CoordinatesDTO coordinates = dto.getCoordinates();
+        ChapterDTO chapter = dto.getChapter();
+        StringBuilder line = new StringBuilder(128);
+        line.append(dto.getId()).append(',')
+                .append(csvQuote(dto.getName())).append(',')
+                .append(coordinates.getId()).append(',')
+                .append(coordinates.getX()).append(',')
+                .append(coordinates.getY() != null ? coordinates.getY() : "").append(',')
+                .append(dto.getCreationDate()).append(',');
+        if (chapter != null) {
+            line.append(chapter.getId()).append(',')
+                    .append(csvQuote(chapter.getName())).append(',')
+                    .append(chapter.getMarinesCount()).append(',');
+        } else {
+            line.append(",,,");
+        }
+        line.append(dto.getHealth()).append(',')
+                .append(dto.getHeartCount()).append(',')
+                .append(dto.getCategory() != null ? dto.getCategory() : "").append(',')
+                .append(dto.getWeaponType() != null ? dto.getWeaponType() : "");
+        return line.toString();
+    }
+
+    private static String csvQuote(String value) {
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
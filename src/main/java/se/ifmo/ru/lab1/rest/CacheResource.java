@@ -0,0 +1,23 @@
+package se.ifmo.ru.lab1.rest;
+
+import jakarta.inject.Inject;
+import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import se.ifmo.ru.lab1.dto.CacheStatisticsResponse;
+import se.ifmo.ru.lab1.service.CacheStatisticsService;
+
+@Path("/cache")
+@Produces(MediaType.APPLICATION_JSON)
+public class CacheResource {
+
+    @Inject
+    private CacheStatisticsService cacheStatisticsService;
+
+    @GET
+    @Path("/stats")
+    public Response getCacheStatistics() {
+        CacheStatisticsResponse statistics = cacheStatisticsService.getCacheStatistics();
+        return Response.ok(statistics).build();
+    }
+}
@@ -3,16 +3,21 @@ package se.ifmo.ru.lab1.rest;
 import jakarta.inject.Inject;
 import jakarta.validation.Valid;
 import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.UriInfo;
+import se.ifmo.ru.lab1.dao.PageResult;
 import se.ifmo.ru.lab1.dto.ChapterDTO;
+import se.ifmo.ru.lab1.dto.CountMode;
 import se.ifmo.ru.lab1.dto.PageResponse;
+import se.ifmo.ru.lab1.dto.PurgeStatus;
 import se.ifmo.ru.lab1.dto.RelatedObjectsResponse;
 import se.ifmo.ru.lab1.entity.Chapter;
 import se.ifmo.ru.lab1.exception.EntityNotFoundException;
 import se.ifmo.ru.lab1.mapper.SpaceMarineMapper;
 import se.ifmo.ru.lab1.service.ChapterService;
-import se.ifmo.ru.lab1.ws.SpaceMarineWebSocket;
+import se.ifmo.ru.lab1.service.PurgeService;
 
 import java.util.List;
 import java.util.Optional;
@@ -25,6 +30,9 @@ public class ChapterResource {
     @Inject
     private ChapterService chapterService;
     
+    @Inject
+    private PurgeService purgeService;
+    
     @Inject
     private SpaceMarineMapper spaceMarineMapper;
 
@@ -33,19 +41,23 @@ public class ChapterResource {
             @QueryParam("page") @DefaultValue("0") int page,
             @QueryParam("size") @DefaultValue("10") int size,
             @QueryParam("sortBy") String sortBy,
-            @QueryParam("sortOrder") @DefaultValue("asc") String sortOrder) {
-        List<Chapter> chapters;
-        long totalCount;
-        
-        chapters = chapterService.getChapters(page, size, sortBy, sortOrder);
-        totalCount = chapterService.getChaptersCount();
+            @QueryParam("sortOrder") @DefaultValue("asc") String sortOrder,
+            @QueryParam("after") String after,
+            @QueryParam("countMode") String countMode) {
+        PageResult<Chapter> result = chapterService.getChaptersPage(
+                sortBy, sortOrder, page, after, size, CountMode.fromParam(countMode));
+        List<Chapter> chapters = result.getContent();
         
         List<ChapterDTO> chapterDTOs = chapters.stream()
                 .map(spaceMarineMapper::toChapterDTO)
                 .collect(java.util.stream.Collectors.toList());
         
+        PageResponse<ChapterDTO> response = new PageResponse<>(
+                chapterDTOs, result.getTotalElements(), page, size, result.getCountMode());
+        response.setNextCursor(chapterService.getNextCursor(chapters, size, sortBy));
+        
         return Response.ok()
-                .entity(new PageResponse<>(chapterDTOs, totalCount, page, size))
+                .entity(response)
                 .build();
     }
 
@@ -66,10 +78,6 @@ public class ChapterResource {
         Chapter chapter = spaceMarineMapper.toChapterEntity(chapterDTO);
         Chapter createdChapter = chapterService.createChapter(chapter);
         ChapterDTO createdDTO = spaceMarineMapper.toChapterDTO(createdChapter);
-        
-        // Уведомляем всех клиентов о создании главы
-        SpaceMarineWebSocket.broadcast("chapter_created:" + createdDTO.getId());
-        
         return Response.status(Response.Status.CREATED).entity(createdDTO).build();
     }
 
@@ -80,12 +88,6 @@ public class ChapterResource {
         Chapter updatedChapter = chapterService.updateChapter(id, chapter);
         if (updatedChapter != null) {
             ChapterDTO updatedDTO = spaceMarineMapper.toChapterDTO(updatedChapter);
-            
-            // Уведомляем всех клиентов об обновлении главы
-            SpaceMarineWebSocket.broadcast("chapter_updated:" + id);
-            // Также уведомляем об обновлении SpaceMarine, которые используют эту главу
-            SpaceMarineWebSocket.broadcast("updated");
-            
             return Response.ok(updatedDTO).build();
         } else {
             throw new EntityNotFoundException("Chapter", id);
@@ -94,14 +96,19 @@ public class ChapterResource {
 
     @DELETE
     @Path("/{id}")
-    public Response deleteChapter(@PathParam("id") Long id) {
+    public Response deleteChapter(@PathParam("id") Long id,
+                                  @QueryParam("async") @DefaultValue("false") boolean async,
+                                  @Context UriInfo uriInfo) {
+        if (async) {
+            // Удаление порциями в фоне; ход выполнения — по ссылке из Location
+            PurgeStatus status = purgeService.startChapterPurge(id);
+            return Response.accepted(status)
+                    .location(uriInfo.getBaseUriBuilder().path(PurgeResource.class).path(status.getId()).build())
+                    .build();
+        }
         try {
             boolean deleted = chapterService.deleteChapter(id);
             if (deleted) {
-                // Уведомляем всех клиентов об удалении главы
-                SpaceMarineWebSocket.broadcast("chapter_deleted:" + id);
-                // Также уведомляем об обновлении SpaceMarine, которые использовали эту главу
-                SpaceMarineWebSocket.broadcast("updated");
                 return Response.noContent().build();
             } else {
                 throw new EntityNotFoundException("Chapter", id);
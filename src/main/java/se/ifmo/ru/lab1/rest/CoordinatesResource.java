@@ -3,16 +3,23 @@ package se.ifmo.ru.lab1.rest;
 import jakarta.inject.Inject;
 import jakarta.validation.Valid;
 import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.UriInfo;
+import se.ifmo.ru.lab1.dao.PageResult;
+import se.ifmo.ru.lab1.dto.CoordinatesCompactionResponse;
 import se.ifmo.ru.lab1.dto.CoordinatesDTO;
+import se.ifmo.ru.lab1.dto.CountMode;
+import se.ifmo.ru.lab1.dto.NearbyCoordinatesDTO;
 import se.ifmo.ru.lab1.dto.PageResponse;
+import se.ifmo.ru.lab1.dto.PurgeStatus;
 import se.ifmo.ru.lab1.dto.RelatedObjectsResponse;
 import se.ifmo.ru.lab1.entity.Coordinates;
 import se.ifmo.ru.lab1.exception.EntityNotFoundException;
 import se.ifmo.ru.lab1.mapper.SpaceMarineMapper;
 import se.ifmo.ru.lab1.service.CoordinatesService;
-import se.ifmo.ru.lab1.ws.SpaceMarineWebSocket;
+import se.ifmo.ru.lab1.service.PurgeService;
 
 import java.util.List;
 import java.util.Optional;
@@ -22,9 +29,14 @@ import java.util.Optional;
 @Consumes(MediaType.APPLICATION_JSON)
 public class CoordinatesResource {
 
+    private static final int MAX_SPATIAL_RESULTS = 1000;
+
     @Inject
     private CoordinatesService coordinatesService;
     
+    @Inject
+    private PurgeService purgeService;
+    
     @Inject
     private SpaceMarineMapper spaceMarineMapper;
 
@@ -33,22 +45,63 @@ public class CoordinatesResource {
             @QueryParam("page") @DefaultValue("0") int page,
             @QueryParam("size") @DefaultValue("10") int size,
             @QueryParam("sortBy") String sortBy,
-            @QueryParam("sortOrder") @DefaultValue("asc") String sortOrder) {
-        List<Coordinates> coordinates;
-        long totalCount;
-        
-        coordinates = coordinatesService.getCoordinates(page, size, sortBy, sortOrder);
-        totalCount = coordinatesService.getCoordinatesCount();
+            @QueryParam("sortOrder") @DefaultValue("asc") String sortOrder,
+            @QueryParam("after") String after,
+            @QueryParam("countMode") String countMode) {
+        PageResult<Coordinates> result = coordinatesService.getCoordinatesPage(
+                sortBy, sortOrder, page, after, size, CountMode.fromParam(countMode));
+        List<Coordinates> coordinates = result.getContent();
         
         List<CoordinatesDTO> coordinatesDTOs = coordinates.stream()
                 .map(spaceMarineMapper::toCoordinatesDTO)
                 .collect(java.util.stream.Collectors.toList());
         
+        PageResponse<CoordinatesDTO> response = new PageResponse<>(
+                coordinatesDTOs, result.getTotalElements(), page, size, result.getCountMode());
+        response.setNextCursor(coordinatesService.getNextCursor(coordinates, size, sortBy));
+        
         return Response.ok()
-                .entity(new PageResponse<>(coordinatesDTOs, totalCount, page, size))
+                .entity(response)
                 .build();
     }
 
+    @GET
+    @Path("/near")
+    public Response findNearest(
+            @QueryParam("x") Double x,
+            @QueryParam("y") Double y,
+            @QueryParam("k") @DefaultValue("10") int k) {
+        if (x == null || y == null) {
+            throw new IllegalArgumentException("x and y parameters are required");
+        }
+        if (k < 1 || k > MAX_SPATIAL_RESULTS) {
+            throw new IllegalArgumentException("k must be between 1 and " + MAX_SPATIAL_RESULTS);
+        }
+        List<NearbyCoordinatesDTO> nearest = coordinatesService.findNearest(x, y, k);
+        return Response.ok(nearest).build();
+    }
+
+    @GET
+    @Path("/within")
+    public Response findWithin(
+            @QueryParam("minX") Double minX,
+            @QueryParam("minY") Double minY,
+            @QueryParam("maxX") Double maxX,
+            @QueryParam("maxY") Double maxY,
+            @QueryParam("limit") @DefaultValue("100") int limit) {
+        if (minX == null || minY == null || maxX == null || maxY == null) {
+            throw new IllegalArgumentException("minX, minY, maxX and maxY parameters are required");
+        }
+        if (minX > maxX || minY > maxY) {
+            throw new IllegalArgumentException("min bounds must not exceed max bounds");
+        }
+        if (limit < 1 || limit > MAX_SPATIAL_RESULTS) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_SPATIAL_RESULTS);
+        }
+        List<NearbyCoordinatesDTO> within = coordinatesService.findWithin(minX, minY, maxX, maxY, limit);
+        return Response.ok(within).build();
+    }
+
     @GET
     @Path("/{id}")
     public Response getCoordinatesById(@PathParam("id") Long id) {
@@ -66,13 +119,17 @@ public class CoordinatesResource {
         Coordinates coordinates = spaceMarineMapper.toCoordinatesEntity(coordinatesDTO);
         Coordinates createdCoordinates = coordinatesService.createCoordinates(coordinates);
         CoordinatesDTO createdDTO = spaceMarineMapper.toCoordinatesDTO(createdCoordinates);
-        
-        // Уведомляем всех клиентов о создании координат
-        SpaceMarineWebSocket.broadcast("coordinates_created:" + createdDTO.getId());
-        
         return Response.status(Response.Status.CREATED).entity(createdDTO).build();
     }
 
+    // Разовое слияние дубликатов (x, y), оставшихся с времен до уникального индекса
+    @POST
+    @Path("/compact")
+    public Response compactCoordinates() {
+        CoordinatesCompactionResponse result = coordinatesService.compactCoordinates();
+        return Response.ok(result).build();
+    }
+
     @PUT
     @Path("/{id}")
     public Response updateCoordinates(@PathParam("id") Long id, @Valid CoordinatesDTO coordinatesDTO) {
@@ -80,12 +137,6 @@ public class CoordinatesResource {
         Coordinates updatedCoordinates = coordinatesService.updateCoordinates(id, coordinates);
         if (updatedCoordinates != null) {
             CoordinatesDTO updatedDTO = spaceMarineMapper.toCoordinatesDTO(updatedCoordinates);
-            
-            // Уведомляем всех клиентов об обновлении координат
-            SpaceMarineWebSocket.broadcast("coordinates_updated:" + id);
-            // Также уведомляем об обновлении SpaceMarine, которые используют эти координаты
-            SpaceMarineWebSocket.broadcast("updated");
-            
             return Response.ok(updatedDTO).build();
         } else {
             throw new EntityNotFoundException("Coordinates", id);
@@ -94,14 +145,19 @@ public class CoordinatesResource {
 
     @DELETE
     @Path("/{id}")
-    public Response deleteCoordinates(@PathParam("id") Long id) {
+    public Response deleteCoordinates(@PathParam("id") Long id,
+                                      @QueryParam("async") @DefaultValue("false") boolean async,
+                                      @Context UriInfo uriInfo) {
+        if (async) {
+            // Удаление порциями в фоне; ход выполнения — по ссылке из Location
+            PurgeStatus status = purgeService.startCoordinatesPurge(id);
+            return Response.accepted(status)
+                    .location(uriInfo.getBaseUriBuilder().path(PurgeResource.class).path(status.getId()).build())
+                    .build();
+        }
         try {
             boolean deleted = coordinatesService.deleteCoordinates(id);
             if (deleted) {
-                // Уведомляем всех клиентов об удалении координат
-                SpaceMarineWebSocket.broadcast("coordinates_deleted:" + id);
-                // Также уведомляем об обновлении SpaceMarine, которые использовали эти координаты
-                SpaceMarineWebSocket.broadcast("updated");
                 return Response.noContent().build();
             } else {
                 throw new EntityNotFoundException("Coordinates", id);
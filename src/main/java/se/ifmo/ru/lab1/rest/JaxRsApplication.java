@@ -13,7 +13,10 @@ public class JaxRsApplication extends Application {
             SpaceMarineResource.class,
             ChapterResource.class,
             CoordinatesResource.class,
-            SpecialOperationsResource.class
+            SpecialOperationsResource.class,
+            CacheResource.class,
+            WebSocketStatsResource.class,
+            PurgeResource.class
         );
     }
 }
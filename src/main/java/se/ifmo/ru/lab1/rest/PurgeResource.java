@@ -0,0 +1,25 @@
+package se.ifmo.ru.lab1.rest;
+
+import jakarta.inject.Inject;
+import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import se.ifmo.ru.lab1.dto.PurgeStatus;
+import se.ifmo.ru.lab1.exception.EntityNotFoundException;
+import se.ifmo.ru.lab1.service.PurgeService;
+
+@Path("/purges")
+@Produces(MediaType.APPLICATION_JSON)
+public class PurgeResource {
+
+    @Inject
+    private PurgeService purgeService;
+
+    @GET
+    @Path("/{id}")
+    public Response getPurgeStatus(@PathParam("id") String id) {
+        PurgeStatus status = purgeService.getStatus(id)
+                .orElseThrow(() -> new EntityNotFoundException("Purge", id));
+        return Response.ok(status).build();
+    }
+}
@@ -3,23 +3,37 @@ package se.ifmo.ru.lab1.rest;
 import jakarta.inject.Inject;
 import jakarta.validation.Valid;
 import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.EntityTag;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Request;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
+import se.ifmo.ru.lab1.cache.SpaceMarineResponseCache;
+import se.ifmo.ru.lab1.dao.PageResult;
+import se.ifmo.ru.lab1.dao.SpaceMarineFilter;
 import se.ifmo.ru.lab1.dto.SpaceMarineDTO;
 import se.ifmo.ru.lab1.dto.PageResponse;
 import se.ifmo.ru.lab1.dto.CountResponse;
+import se.ifmo.ru.lab1.dto.FacetsResponse;
+import se.ifmo.ru.lab1.dto.HealthStatisticsResponse;
 import se.ifmo.ru.lab1.dto.AverageResponse;
 import se.ifmo.ru.lab1.dto.RelatedObjectsResponse;
 import se.ifmo.ru.lab1.dto.DeleteResponse;
+import se.ifmo.ru.lab1.dto.CountMode;
+import se.ifmo.ru.lab1.dto.BatchCreateResponse;
+import se.ifmo.ru.lab1.dto.ImportResponse;
 import se.ifmo.ru.lab1.entity.SpaceMarine;
 import se.ifmo.ru.lab1.exception.EntityNotFoundException;
 import se.ifmo.ru.lab1.mapper.SpaceMarineMapper;
+import se.ifmo.ru.lab1.mapper.RecordFormat;
+import se.ifmo.ru.lab1.service.SpaceMarineExportService;
+import se.ifmo.ru.lab1.service.SpaceMarineImportService;
 import se.ifmo.ru.lab1.service.SpaceMarineService;
-import se.ifmo.ru.lab1.ws.SpaceMarineWebSocket;
 
+import java.io.InputStream;
 import java.util.List;
-import java.util.Optional;
-import java.util.stream.Collectors;
 
 @Path("/spacemarines")
 @Produces(MediaType.APPLICATION_JSON)
@@ -31,68 +45,114 @@ public class SpaceMarineResource {
     
     @Inject
     private SpaceMarineMapper spaceMarineMapper;
+    
+    @Inject
+    private SpaceMarineImportService spaceMarineImportService;
+    
+    @Inject
+    private SpaceMarineExportService spaceMarineExportService;
+    
+    @Inject
+    private SpaceMarineResponseCache spaceMarineResponseCache;
 
     @GET
     public Response getAllSpaceMarines(
             @QueryParam("page") @DefaultValue("0") int page,
             @QueryParam("size") @DefaultValue("10") int size,
             @QueryParam("nameFilter") String nameFilter,
+            @QueryParam("health") String health,
+            @QueryParam("heartCount") String heartCount,
+            @QueryParam("category") String category,
+            @QueryParam("weaponType") String weaponType,
+            @QueryParam("chapterId") String chapterId,
+            @QueryParam("creationDate") String creationDate,
             @QueryParam("sortBy") String sortBy,
-            @QueryParam("sortOrder") @DefaultValue("asc") String sortOrder) {
-        
-        List<SpaceMarine> spaceMarines;
-        long totalCount;
+            @QueryParam("sortOrder") @DefaultValue("asc") String sortOrder,
+            @QueryParam("after") String after,
+            @QueryParam("countMode") String countMode) {
         
-        if (nameFilter != null && !nameFilter.trim().isEmpty()) {
-            spaceMarines = spaceMarineService.getSpaceMarinesWithFilters(nameFilter, sortBy, sortOrder, page, size);
-            totalCount = spaceMarineService.getSpaceMarinesCountWithFilters(nameFilter);
-        } else {
-            spaceMarines = spaceMarineService.getSpaceMarines(page, size, sortBy, sortOrder);
-            totalCount = spaceMarineService.getSpaceMarinesCount();
-        }
+        SpaceMarineFilter filter = SpaceMarineFilter.parse(
+                nameFilter, health, heartCount, category, weaponType, chapterId, creationDate);
+        // Страница и общее количество одним запросом; after включает keyset-режим
+        PageResult<SpaceMarineDTO> result = spaceMarineService.getSpaceMarinesPage(
+                filter, sortBy, sortOrder, page, after, size, CountMode.fromParam(countMode));
         
-        List<SpaceMarineDTO> spaceMarineDTOs = spaceMarines.stream()
-                .map(spaceMarineMapper::toDTO)
-                .collect(Collectors.toList());
+        PageResponse<SpaceMarineDTO> response = new PageResponse<>(
+                result.getContent(), result.getTotalElements(), page, size, result.getCountMode());
+        response.setNextCursor(result.getNextCursor());
         
         return Response.ok()
-                .entity(new PageResponse<>(spaceMarineDTOs, totalCount, page, size))
+                .entity(response)
+                .build();
+    }
+
+    @GET
+    @Path("/export")
+    @Produces({"application/x-ndjson", "text/csv"})
+    public Response exportSpaceMarines(
+            @QueryParam("format") @DefaultValue("ndjson") String format,
+            @QueryParam("nameFilter") String nameFilter,
+            @QueryParam("sortBy") String sortBy,
+            @QueryParam("sortOrder") @DefaultValue("asc") String sortOrder) {
+        
+        RecordFormat recordFormat = RecordFormat.fromParam(format);
+        // Тело пишется после выхода из метода, построчно из курсора БД
+        StreamingOutput body = output -> spaceMarineExportService.exportSpaceMarines(
+                output, recordFormat, nameFilter, sortBy, sortOrder);
+        
+        return Response.ok(body, recordFormat.getMediaType() + "; charset=UTF-8")
+                .header("Content-Disposition",
+                        "attachment; filename=\"spacemarines." + recordFormat.getExtension() + "\"")
                 .build();
     }
 
     @GET
     @Path("/{id}")
-    public Response getSpaceMarineById(@PathParam("id") Integer id) {
-        Optional<SpaceMarine> spaceMarine = spaceMarineService.getSpaceMarineById(id);
-        if (spaceMarine.isPresent()) {
-            SpaceMarineDTO dto = spaceMarineMapper.toDTO(spaceMarine.get());
-            return Response.ok(dto).build();
-        } else {
+    public Response getSpaceMarineById(@PathParam("id") Integer id, @Context Request request) {
+        // Готовый JSON берется из кэша; при совпадении If-None-Match отвечаем 304 без обращения к БД
+        SpaceMarineResponseCache.Entry cached = spaceMarineResponseCache.get(id,
+                key -> spaceMarineService.getSpaceMarineById(key).map(spaceMarineMapper::toDTO));
+        if (cached == null) {
             throw new EntityNotFoundException("SpaceMarine", id);
         }
+        
+        EntityTag etag = new EntityTag(cached.getETag());
+        Response.ResponseBuilder notModified = request.evaluatePreconditions(etag);
+        if (notModified != null) {
+            return notModified.build();
+        }
+        return Response.ok(cached.getBody()).tag(etag).build();
     }
 
     @POST
     public Response createSpaceMarine(SpaceMarineDTO spaceMarineDTO) {
         SpaceMarine createdSpaceMarine = spaceMarineService.createSpaceMarineFromDTO(spaceMarineDTO);
         SpaceMarineDTO createdDTO = spaceMarineMapper.toDTO(createdSpaceMarine);
-        
-        // Уведомляем всех клиентов о создании
-        SpaceMarineWebSocket.broadcast("created:" + createdDTO.getId());
-        
         return Response.status(Response.Status.CREATED).entity(createdDTO).build();
     }
 
+    @POST
+    @Path("/batch")
+    public Response createSpaceMarinesBatch(List<SpaceMarineDTO> spaceMarineDTOs) {
+        List<Integer> ids = spaceMarineService.createSpaceMarinesBatch(spaceMarineDTOs);
+        return Response.status(Response.Status.CREATED).entity(new BatchCreateResponse(ids)).build();
+    }
+
+    @POST
+    @Path("/import")
+    @Consumes({"application/x-ndjson", "text/csv"})
+    public Response importSpaceMarines(@HeaderParam(HttpHeaders.CONTENT_TYPE) String contentType, InputStream body) {
+        ImportResponse result = spaceMarineImportService.importSpaceMarines(
+                body, RecordFormat.fromContentType(contentType));
+        return Response.ok(result).build();
+    }
+
     @PUT
     @Path("/{id}")
     public Response updateSpaceMarine(@PathParam("id") Integer id, SpaceMarineDTO spaceMarineDTO) {
         SpaceMarine updatedSpaceMarine = spaceMarineService.updateSpaceMarineFromDTO(id, spaceMarineDTO);
         if (updatedSpaceMarine != null) {
             SpaceMarineDTO updatedDTO = spaceMarineMapper.toDTO(updatedSpaceMarine);
-            
-            // Уведомляем всех клиентов об обновлении
-            SpaceMarineWebSocket.broadcast("updated:" + id);
-            
             return Response.ok(updatedDTO).build();
         } else {
             throw new EntityNotFoundException("SpaceMarine", id);
@@ -106,8 +166,6 @@ public class SpaceMarineResource {
                                       @QueryParam("deleteChapter") @DefaultValue("false") boolean deleteChapter) {
         DeleteResponse deleteResult = spaceMarineService.deleteSpaceMarineWithDetails(id, deleteCoordinates, deleteChapter);
         if (deleteResult.getMessage().contains("Десантник удален")) {
-            // Уведомляем всех клиентов об удалении
-            SpaceMarineWebSocket.broadcast("deleted:" + id);
             return Response.ok(deleteResult).build();
         } else if (deleteResult.getMessage().contains("не найден")) {
             throw new EntityNotFoundException("SpaceMarine", id);
@@ -121,20 +179,14 @@ public class SpaceMarineResource {
     @GET
     @Path("/search/name")
     public Response findByNameContaining(@QueryParam("name") String name) {
-        List<SpaceMarine> spaceMarines = spaceMarineService.findSpaceMarinesByNameContaining(name);
-        List<SpaceMarineDTO> spaceMarineDTOs = spaceMarines.stream()
-                .map(spaceMarineMapper::toDTO)
-                .collect(Collectors.toList());
+        List<SpaceMarineDTO> spaceMarineDTOs = spaceMarineService.findSpaceMarinesByNameContaining(name);
         return Response.ok(spaceMarineDTOs).build();
     }
 
     @GET
     @Path("/search/health")
     public Response findByHealthLessThan(@QueryParam("health") Integer health) {
-        List<SpaceMarine> spaceMarines = spaceMarineService.findSpaceMarinesByHealthLessThan(health);
-        List<SpaceMarineDTO> spaceMarineDTOs = spaceMarines.stream()
-                .map(spaceMarineMapper::toDTO)
-                .collect(Collectors.toList());
+        List<SpaceMarineDTO> spaceMarineDTOs = spaceMarineService.findSpaceMarinesByHealthLessThan(health);
         return Response.ok(spaceMarineDTOs).build();
     }
 
@@ -152,6 +204,28 @@ public class SpaceMarineResource {
         return Response.ok(new AverageResponse(average)).build();
     }
 
+    @GET
+    @Path("/stats/health")
+    public Response getHealthStatistics(@QueryParam("buckets") @DefaultValue("20") int buckets) {
+        if (buckets < 1 || buckets > 1000) {
+            throw new IllegalArgumentException("buckets must be between 1 and 1000");
+        }
+        HealthStatisticsResponse statistics = spaceMarineService.getHealthStatistics(buckets);
+        return Response.ok(statistics).build();
+    }
+
+    @GET
+    @Path("/facets")
+    public Response getFacets(
+            @QueryParam("nameFilter") String nameFilter,
+            @QueryParam("healthBucketSize") @DefaultValue("10") int healthBucketSize) {
+        if (healthBucketSize < 1) {
+            throw new IllegalArgumentException("healthBucketSize must be positive");
+        }
+        FacetsResponse facets = spaceMarineService.getFacets(nameFilter, healthBucketSize);
+        return Response.ok(facets).build();
+    }
+
     @GET
     @Path("/{id}/related")
     public Response getRelatedObjects(@PathParam("id") Integer id) {
@@ -171,10 +245,6 @@ public class SpaceMarineResource {
             if (spaceMarine == null) {
                 throw new EntityNotFoundException("SpaceMarine", id);
             }
-            
-            // Уведомляем клиентов об обновлении
-            SpaceMarineWebSocket.broadcast("updated");
-            
             return Response.ok().build();
         } catch (Exception e) {
             return Response.status(Response.Status.BAD_REQUEST)
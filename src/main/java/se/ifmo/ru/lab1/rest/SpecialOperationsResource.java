@@ -4,10 +4,11 @@ import jakarta.inject.Inject;
 import jakarta.ws.rs.*;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
+import se.ifmo.ru.lab1.dto.MarineSearchResponse;
 import se.ifmo.ru.lab1.entity.Chapter;
 import se.ifmo.ru.lab1.service.SpecialOperationsService;
 
-import java.util.List;
 import java.util.Map;
 
 @Path("/special-operations")
@@ -15,6 +16,8 @@ import java.util.Map;
 @Consumes(MediaType.APPLICATION_JSON)
 public class SpecialOperationsResource {
 
+    private static final int MAX_SEARCH_PAGE_SIZE = 1000;
+
     @Inject
     private SpecialOperationsService specialOperationsService;
 
@@ -38,13 +41,32 @@ public class SpecialOperationsResource {
 
     @GET
     @Path("/search-by-name")
-    public Response findMarinesByNameContaining(@QueryParam("name") String name) {
+    public Response findMarinesByNameContaining(
+            @QueryParam("name") String name,
+            @QueryParam("size") @DefaultValue("100") int size,
+            @QueryParam("after") String after) {
+        if (name == null || name.trim().isEmpty()) {
+            throw new IllegalArgumentException("Name parameter is required");
+        }
+        if (size < 1 || size > MAX_SEARCH_PAGE_SIZE) {
+            throw new IllegalArgumentException("Size must be between 1 and " + MAX_SEARCH_PAGE_SIZE);
+        }
+        
+        MarineSearchResponse response = specialOperationsService.findMarinesByNameContaining(name, after, size);
+        return Response.ok(response).build();
+    }
+
+    @GET
+    @Path("/search-by-name/stream")
+    @Produces("application/x-ndjson")
+    public Response streamMarinesByNameContaining(@QueryParam("name") String name) {
         if (name == null || name.trim().isEmpty()) {
             throw new IllegalArgumentException("Name parameter is required");
         }
         
-        List<Object[]> results = specialOperationsService.findMarinesByNameContaining(name);
-        return Response.ok(Map.of("marines", results)).build();
+        // Все совпадения без ограничения, построчно из курсора БД
+        StreamingOutput body = output -> specialOperationsService.streamMarinesByNameContaining(name, output);
+        return Response.ok(body, "application/x-ndjson; charset=UTF-8").build();
     }
 
     @POST
@@ -0,0 +1,21 @@
+package se.ifmo.ru.lab1.rest;
+
+import jakarta.inject.Inject;
+import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import se.ifmo.ru.lab1.ws.WebSocketDispatcher;
+
+@Path("/ws")
+@Produces(MediaType.APPLICATION_JSON)
+public class WebSocketStatsResource {
+
+    @Inject
+    private WebSocketDispatcher dispatcher;
+
+    @GET
+    @Path("/stats")
+    public Response getStatistics() {
+        return Response.ok(dispatcher.getStatistics()).build();
+    }
+}
@@ -0,0 +1,8 @@
+package se.ifmo.ru.lab1.service;
+
+import se.ifmo.ru.lab1.dto.CacheStatisticsResponse;
+
+public interface CacheStatisticsService {
+    
+    CacheStatisticsResponse getCacheStatistics();
+}
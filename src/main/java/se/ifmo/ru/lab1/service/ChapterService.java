@@ -1,5 +1,7 @@
 package se.ifmo.ru.lab1.service;
 
+import se.ifmo.ru.lab1.dao.PageResult;
+import se.ifmo.ru.lab1.dto.CountMode;
 import se.ifmo.ru.lab1.entity.Chapter;
 import se.ifmo.ru.lab1.dto.RelatedObjectsResponse;
 
@@ -18,6 +20,11 @@ public interface ChapterService {
     
     List<Chapter> getChapters(int page, int size, String sortBy, String sortOrder);
     
+    String getNextCursor(List<Chapter> page, int size, String sortBy);
+    
+    PageResult<Chapter> getChaptersPage(String sortBy, String sortOrder, int page, String after,
+                                      int size, CountMode countMode);
+    
     long getChaptersCount();
     
     Optional<Chapter> getChapterByName(String name);
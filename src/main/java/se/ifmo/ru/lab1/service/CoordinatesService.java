@@ -1,6 +1,10 @@
 package se.ifmo.ru.lab1.service;
 
+import se.ifmo.ru.lab1.dao.PageResult;
+import se.ifmo.ru.lab1.dto.CoordinatesCompactionResponse;
+import se.ifmo.ru.lab1.dto.CountMode;
 import se.ifmo.ru.lab1.entity.Coordinates;
+import se.ifmo.ru.lab1.dto.NearbyCoordinatesDTO;
 import se.ifmo.ru.lab1.dto.RelatedObjectsResponse;
 
 import java.util.List;
@@ -18,6 +22,11 @@ public interface CoordinatesService {
     
     List<Coordinates> getCoordinates(int page, int size, String sortBy, String sortOrder);
     
+    String getNextCursor(List<Coordinates> page, int size, String sortBy);
+    
+    PageResult<Coordinates> getCoordinatesPage(String sortBy, String sortOrder, int page, String after,
+                                      int size, CountMode countMode);
+    
     long getCoordinatesCount();
     
     Coordinates updateCoordinates(Long id, Coordinates updatedCoordinates);
@@ -25,4 +34,10 @@ public interface CoordinatesService {
     boolean deleteCoordinates(Long id);
     
     RelatedObjectsResponse getRelatedObjects(Long id);
+    
+    List<NearbyCoordinatesDTO> findNearest(double x, double y, int k);
+    
+    List<NearbyCoordinatesDTO> findWithin(double minX, double minY, double maxX, double maxY, int limit);
+    
+    CoordinatesCompactionResponse compactCoordinates();
 }
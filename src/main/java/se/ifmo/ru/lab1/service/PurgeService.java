@@ -0,0 +1,14 @@
+package se.ifmo.ru.lab1.service;
+
+import se.ifmo.ru.lab1.dto.PurgeStatus;
+
+import java.util.Optional;
+
+public interface PurgeService {
+    
+    PurgeStatus startChapterPurge(Long chapterId);
+    
+    PurgeStatus startCoordinatesPurge(Long coordinatesId);
+    
+    Optional<PurgeStatus> getStatus(String purgeId);
+}
@@ -0,0 +1,11 @@
+package se.ifmo.ru.lab1.service;
+
+import se.ifmo.ru.lab1.mapper.RecordFormat;
+
+import java.io.OutputStream;
+
+public interface SpaceMarineExportService {
+    
+    void exportSpaceMarines(OutputStream output, RecordFormat format,
+                            String nameFilter, String sortBy, String sortOrder);
+}
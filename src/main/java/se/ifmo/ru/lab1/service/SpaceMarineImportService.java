@@ -0,0 +1,11 @@
+package se.ifmo.ru.lab1.service;
+
+import se.ifmo.ru.lab1.dto.ImportResponse;
+import se.ifmo.ru.lab1.mapper.RecordFormat;
+
+import java.io.InputStream;
+
+public interface SpaceMarineImportService {
+    
+    ImportResponse importSpaceMarines(InputStream input, RecordFormat format);
+}
@@ -1,9 +1,14 @@
 package se.ifmo.ru.lab1.service;
 
+import se.ifmo.ru.lab1.dao.PageResult;
+import se.ifmo.ru.lab1.dao.SpaceMarineFilter;
+import se.ifmo.ru.lab1.dto.CountMode;
 import se.ifmo.ru.lab1.entity.SpaceMarine;
 import se.ifmo.ru.lab1.dto.SpaceMarineDTO;
 import se.ifmo.ru.lab1.dto.RelatedObjectsResponse;
 import se.ifmo.ru.lab1.dto.DeleteResponse;
+import se.ifmo.ru.lab1.dto.FacetsResponse;
+import se.ifmo.ru.lab1.dto.HealthStatisticsResponse;
 
 import java.util.List;
 import java.util.Optional;
@@ -14,20 +19,19 @@ public interface SpaceMarineService {
     
     SpaceMarine createSpaceMarineFromDTO(SpaceMarineDTO dto);
     
+    List<Integer> createSpaceMarinesBatch(List<SpaceMarineDTO> dtos);
+    
     Optional<SpaceMarine> getSpaceMarineById(Integer id);
     
     List<SpaceMarine> getAllSpaceMarines();
     
     List<SpaceMarine> getSpaceMarines(int page, int size);
     
-    List<SpaceMarine> getSpaceMarines(int page, int size, String sortBy, String sortOrder);
-    
-    List<SpaceMarine> getSpaceMarinesWithFilters(String nameFilter, String sortBy, String sortOrder, int page, int size);
+    PageResult<SpaceMarineDTO> getSpaceMarinesPage(SpaceMarineFilter filter, String sortBy, String sortOrder,
+                                                   int page, String after, int size, CountMode countMode);
     
     long getSpaceMarinesCount();
     
-    long getSpaceMarinesCountWithFilters(String nameFilter);
-    
     SpaceMarine updateSpaceMarine(Integer id, SpaceMarine updatedSpaceMarine);
     
     SpaceMarine updateSpaceMarineFromDTO(Integer id, SpaceMarineDTO dto);
@@ -38,14 +42,18 @@ public interface SpaceMarineService {
     
     DeleteResponse deleteSpaceMarineWithDetails(Integer id, boolean deleteCoordinates, boolean deleteChapter);
     
-    List<SpaceMarine> findSpaceMarinesByNameContaining(String name);
+    List<SpaceMarineDTO> findSpaceMarinesByNameContaining(String name);
     
-    List<SpaceMarine> findSpaceMarinesByHealthLessThan(Integer health);
+    List<SpaceMarineDTO> findSpaceMarinesByHealthLessThan(Integer health);
     
     long countSpaceMarinesByHealthLessThan(Integer health);
     
     Double getAverageHeartCount();
     
+    FacetsResponse getFacets(String nameFilter, int healthBucketSize);
+    
+    HealthStatisticsResponse getHealthStatistics(int buckets);
+    
     RelatedObjectsResponse getRelatedObjects(Integer id);
     
     SpaceMarine removeMarineFromChapter(Integer id);
@@ -1,8 +1,9 @@
 package se.ifmo.ru.lab1.service;
 
+import se.ifmo.ru.lab1.dto.MarineSearchResponse;
 import se.ifmo.ru.lab1.entity.Chapter;
 
-import java.util.List;
+import java.io.OutputStream;
 
 public interface SpecialOperationsService {
     
@@ -10,7 +11,9 @@ public interface SpecialOperationsService {
     
     Integer countMarinesByHealth(Integer healthThreshold);
     
-    List<Object[]> findMarinesByNameContaining(String nameSubstring);
+    MarineSearchResponse findMarinesByNameContaining(String nameSubstring, String after, int size);
+    
+    void streamMarinesByNameContaining(String nameSubstring, OutputStream output);
     
     Chapter createNewChapter(String chapterName, Integer marinesCount);
     
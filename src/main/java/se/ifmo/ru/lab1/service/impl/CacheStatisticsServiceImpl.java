@@ -0,0 +1,76 @@
+package se.ifmo.ru.lab1.service.impl;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.PersistenceUnit;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import se.ifmo.ru.lab1.dto.CacheStatisticsResponse;
+import se.ifmo.ru.lab1.service.CacheStatisticsService;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+@ApplicationScoped
+public class CacheStatisticsServiceImpl implements CacheStatisticsService {
+
+    // Счетчики кэшей Infinispan, которые он публикует в JMX при включенной статистике
+    private static final String INFINISPAN_STATISTICS = "*:type=Cache,component=Statistics,*";
+
+    @PersistenceUnit(unitName = "PostgresDS")
+    private EntityManagerFactory entityManagerFactory;
+
+    public CacheStatisticsResponse getCacheStatistics() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        
+        List<CacheStatisticsResponse.RegionStatistics> regions = new ArrayList<>();
+        for (String regionName : statistics.getSecondLevelCacheRegionNames()) {
+            CacheRegionStatistics region = statistics.getCacheRegionStatistics(regionName);
+            if (region == null) {
+                continue;
+            }
+            regions.add(new CacheStatisticsResponse.RegionStatistics(
+                    regionName,
+                    region.getHitCount(),
+                    region.getMissCount(),
+                    region.getPutCount(),
+                    region.getElementCountInMemory(),
+                    countEvictions(regionName)));
+        }
+        
+        return new CacheStatisticsResponse(
+                statistics.getSecondLevelCacheHitCount(),
+                statistics.getSecondLevelCacheMissCount(),
+                statistics.getSecondLevelCachePutCount(),
+                statistics.getQueryCacheHitCount(),
+                statistics.getQueryCacheMissCount(),
+                statistics.getQueryCachePutCount(),
+                regions);
+    }
+
+    // Hibernate не считает вытеснения, поэтому они берутся из статистики Infinispan по имени региона
+    private long countEvictions(String regionName) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            Set<ObjectName> names = server.queryNames(new ObjectName(INFINISPAN_STATISTICS), null);
+            long evictions = 0;
+            boolean found = false;
+            for (ObjectName name : names) {
+                String cacheName = name.getKeyProperty("name");
+                if (cacheName == null || !cacheName.contains(regionName)) {
+                    continue;
+                }
+                evictions += ((Number) server.getAttribute(name, "evictions")).longValue();
+                found = true;
+            }
+            return found ? evictions : -1;
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+}
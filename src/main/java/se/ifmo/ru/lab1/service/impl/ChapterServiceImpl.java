@@ -1,16 +1,21 @@
 package se.ifmo.ru.lab1.service.impl;
 
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Event;
 import jakarta.inject.Inject;
 import jakarta.transaction.Transactional;
 import se.ifmo.ru.lab1.dao.ChapterDAO;
 import se.ifmo.ru.lab1.dao.SpaceMarineDAO;
+import se.ifmo.ru.lab1.dao.PageResult;
 import se.ifmo.ru.lab1.entity.Chapter;
 import se.ifmo.ru.lab1.entity.SpaceMarine;
+import se.ifmo.ru.lab1.dto.ChangeEvent;
 import se.ifmo.ru.lab1.dto.RelatedObjectsResponse;
 import se.ifmo.ru.lab1.dto.SpaceMarineDTO;
+import se.ifmo.ru.lab1.dto.CountMode;
 import se.ifmo.ru.lab1.service.ChapterService;
 import se.ifmo.ru.lab1.mapper.SpaceMarineMapper;
+import se.ifmo.ru.lab1.stats.SpaceMarineAggregates;
 
 import java.util.List;
 import java.util.Optional;
@@ -27,10 +32,20 @@ public class ChapterServiceImpl implements ChapterService {
     
     @Inject
     private SpaceMarineMapper spaceMarineMapper;
+    
+    @Inject
+    private SpaceMarineAggregates spaceMarineAggregates;
+    
+    // Клиенты WebSocket получают события только после коммита (WebSocketDispatcher.onCommitted)
+    @Inject
+    private Event<ChangeEvent> changeEvents;
 
     @Transactional
     public Chapter createChapter(Chapter chapter) {
-        return chapterDAO.save(chapter);
+        Chapter saved = chapterDAO.save(chapter);
+        changeEvents.fire(ChangeEvent.created(ChangeEvent.CHAPTER, saved.getId(),
+                spaceMarineMapper.toChapterDTO(saved)));
+        return saved;
     }
 
     public Optional<Chapter> getChapterById(Long id) {
@@ -49,6 +64,25 @@ public class ChapterServiceImpl implements ChapterService {
         return chapterDAO.findAll(page, size, sortBy, sortOrder);
     }
 
+    public String getNextCursor(List<Chapter> page, int size, String sortBy) {
+        return chapterDAO.nextCursor(page, size, sortBy);
+    }
+
+    public PageResult<Chapter> getChaptersPage(String sortBy, String sortOrder, int page, String after,
+                                             int size, CountMode countMode) {
+        if (countMode == CountMode.NONE) {
+            return chapterDAO.findPage(sortBy, sortOrder, page, after, size, false);
+        }
+        if (countMode == CountMode.APPROXIMATE) {
+            long estimate = chapterDAO.estimateCount();
+            if (estimate >= 0) {
+                PageResult<Chapter> result = chapterDAO.findPage(sortBy, sortOrder, page, after, size, false);
+                return new PageResult<>(result.getContent(), estimate, CountMode.APPROXIMATE);
+            }
+        }
+        return chapterDAO.findPage(sortBy, sortOrder, page, after, size, true);
+    }
+
     public long getChaptersCount() {
         return chapterDAO.count();
     }
@@ -64,7 +98,10 @@ public class ChapterServiceImpl implements ChapterService {
             Chapter chapter = existingChapter.get();
             chapter.setName(updatedChapter.getName());
             chapter.setMarinesCount(updatedChapter.getMarinesCount());
-            return chapterDAO.update(chapter);
+            Chapter merged = chapterDAO.update(chapter);
+            // Десантников этого ордена клиент обновит сам
+            changeEvents.fire(ChangeEvent.updated(ChangeEvent.CHAPTER, id, spaceMarineMapper.toChapterDTO(merged)));
+            return merged;
         }
         return null;
     }
@@ -74,12 +111,13 @@ public class ChapterServiceImpl implements ChapterService {
         Optional<Chapter> chapter = chapterDAO.findById(id);
         if (chapter.isPresent()) {
             // Автоматически удаляем всех маринов, связанных с этой главой
-            long usageCount = spaceMarineDAO.countByChapterId(id);
-            if (usageCount > 0) {
-                spaceMarineDAO.deleteByChapterId(id);
+            if (spaceMarineDAO.deleteByChapterId(id) > 0) {
+                spaceMarineAggregates.resyncAfterCommit();
             }
             
             chapterDAO.delete(id);
+            // Удаление ордена означает для клиента и удаление его десантников
+            changeEvents.fire(ChangeEvent.deleted(ChangeEvent.CHAPTER, id));
             return true;
         }
         return false;
@@ -89,8 +127,7 @@ public class ChapterServiceImpl implements ChapterService {
     public boolean removeMarineFromChapter(Long chapterId) {
         Optional<Chapter> chapter = chapterDAO.findById(chapterId);
         if (chapter.isPresent() && chapter.get().getMarinesCount() > 0) {
-            chapterDAO.removeMarineFromChapter(chapterId);
-            return true;
+            return chapterDAO.removeMarineFromChapter(chapterId);
         }
         return false;
     }
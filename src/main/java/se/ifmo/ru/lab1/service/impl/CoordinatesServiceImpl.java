@@ -1,18 +1,30 @@
 package se.ifmo.ru.lab1.service.impl;
 
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Event;
 import jakarta.inject.Inject;
 import jakarta.transaction.Transactional;
+import se.ifmo.ru.lab1.cache.CoordinatesInternCache;
 import se.ifmo.ru.lab1.dao.CoordinatesDAO;
 import se.ifmo.ru.lab1.dao.SpaceMarineDAO;
+import se.ifmo.ru.lab1.dao.PageResult;
 import se.ifmo.ru.lab1.entity.Coordinates;
 import se.ifmo.ru.lab1.entity.SpaceMarine;
+import se.ifmo.ru.lab1.dto.ChangeEvent;
+import se.ifmo.ru.lab1.dto.CoordinatesCompactionResponse;
+import se.ifmo.ru.lab1.dto.NearbyCoordinatesDTO;
 import se.ifmo.ru.lab1.dto.RelatedObjectsResponse;
 import se.ifmo.ru.lab1.dto.SpaceMarineDTO;
+import se.ifmo.ru.lab1.dto.CountMode;
 import se.ifmo.ru.lab1.service.CoordinatesService;
 import se.ifmo.ru.lab1.mapper.SpaceMarineMapper;
+import se.ifmo.ru.lab1.stats.SpaceMarineAggregates;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
@@ -27,10 +39,38 @@ public class CoordinatesServiceImpl implements CoordinatesService {
     
     @Inject
     private SpaceMarineMapper spaceMarineMapper;
+    
+    @Inject
+    private SpaceMarineAggregates spaceMarineAggregates;
+    
+    @Inject
+    private CoordinatesInternCache coordinatesInternCache;
+    
+    // Клиенты WebSocket получают события только после коммита (WebSocketDispatcher.onCommitted)
+    @Inject
+    private Event<ChangeEvent> changeEvents;
 
+    // Координаты — значение: для уже существующей точки возвращается ее строка, а не новая копия
     @Transactional
     public Coordinates createCoordinates(Coordinates coordinates) {
-        return coordinatesDAO.save(coordinates);
+        float x = coordinates.getX();
+        Double y = coordinates.getY();
+        Long cachedId = coordinatesInternCache.get(x, y);
+        if (cachedId != null) {
+            Optional<Coordinates> cached = coordinatesDAO.findById(cachedId);
+            if (cached.isPresent() && sameValue(cached.get(), x, y)) {
+                return cached.get();
+            }
+            coordinatesInternCache.invalidate(cachedId);
+        }
+        long loadedAt = coordinatesInternCache.generation();
+        Long id = coordinatesDAO.upsert(x, y);
+        coordinatesInternCache.put(x, y, id, loadedAt);
+        Coordinates saved = coordinatesDAO.findById(id)
+                .orElseThrow(() -> new IllegalStateException("Coordinates " + id + " not found after upsert"));
+        // upsert мог вернуть уже существующую точку; для клиента created и тогда безвреден
+        changeEvents.fire(ChangeEvent.created(ChangeEvent.COORDINATES, id, spaceMarineMapper.toCoordinatesDTO(saved)));
+        return saved;
     }
 
     public Optional<Coordinates> getCoordinatesById(Long id) {
@@ -49,6 +89,25 @@ public class CoordinatesServiceImpl implements CoordinatesService {
         return coordinatesDAO.findAll(page, size, sortBy, sortOrder);
     }
 
+    public String getNextCursor(List<Coordinates> page, int size, String sortBy) {
+        return coordinatesDAO.nextCursor(page, size, sortBy);
+    }
+
+    public PageResult<Coordinates> getCoordinatesPage(String sortBy, String sortOrder, int page, String after,
+                                             int size, CountMode countMode) {
+        if (countMode == CountMode.NONE) {
+            return coordinatesDAO.findPage(sortBy, sortOrder, page, after, size, false);
+        }
+        if (countMode == CountMode.APPROXIMATE) {
+            long estimate = coordinatesDAO.estimateCount();
+            if (estimate >= 0) {
+                PageResult<Coordinates> result = coordinatesDAO.findPage(sortBy, sortOrder, page, after, size, false);
+                return new PageResult<>(result.getContent(), estimate, CountMode.APPROXIMATE);
+            }
+        }
+        return coordinatesDAO.findPage(sortBy, sortOrder, page, after, size, true);
+    }
+
     public long getCoordinatesCount() {
         return coordinatesDAO.count();
     }
@@ -58,9 +117,18 @@ public class CoordinatesServiceImpl implements CoordinatesService {
         Optional<Coordinates> existingCoordinates = coordinatesDAO.findById(id);
         if (existingCoordinates.isPresent()) {
             Coordinates coordinates = existingCoordinates.get();
+            Optional<Long> duplicateId = coordinatesDAO.findIdByValue(updatedCoordinates.getX(), updatedCoordinates.getY());
+            if (duplicateId.isPresent() && !duplicateId.get().equals(id)) {
+                throw new IllegalArgumentException("Координаты (" + updatedCoordinates.getX() + ", "
+                        + updatedCoordinates.getY() + ") уже существуют с ID " + duplicateId.get());
+            }
             coordinates.setX(updatedCoordinates.getX());
             coordinates.setY(updatedCoordinates.getY());
-            return coordinatesDAO.update(coordinates);
+            Coordinates merged = coordinatesDAO.update(coordinates);
+            // Десантников в этой точке клиент обновит сам
+            changeEvents.fire(ChangeEvent.updated(ChangeEvent.COORDINATES, id,
+                    spaceMarineMapper.toCoordinatesDTO(merged)));
+            return merged;
         }
         return null;
     }
@@ -70,12 +138,13 @@ public class CoordinatesServiceImpl implements CoordinatesService {
         Optional<Coordinates> coordinates = coordinatesDAO.findById(id);
         if (coordinates.isPresent()) {
             // Автоматически удаляем всех маринов, связанных с этими координатами
-            long usageCount = spaceMarineDAO.countByCoordinatesId(id);
-            if (usageCount > 0) {
-                spaceMarineDAO.deleteByCoordinatesId(id);
+            if (spaceMarineDAO.deleteByCoordinatesId(id) > 0) {
+                spaceMarineAggregates.resyncAfterCommit();
             }
             
             coordinatesDAO.delete(id);
+            // Удаление координат означает для клиента и удаление десантников в этой точке
+            changeEvents.fire(ChangeEvent.deleted(ChangeEvent.COORDINATES, id));
             return true;
         }
         return false;
@@ -90,4 +159,54 @@ public class CoordinatesServiceImpl implements CoordinatesService {
         
         return new RelatedObjectsResponse(relatedMarinesDTO);
     }
+
+    public List<NearbyCoordinatesDTO> findNearest(double x, double y, int k) {
+        Map<Long, Double> distances = coordinatesDAO.findNearestIds(x, y, k);
+        return withMarines(distances.keySet(), distances);
+    }
+
+    public List<NearbyCoordinatesDTO> findWithin(double minX, double minY, double maxX, double maxY, int limit) {
+        return withMarines(coordinatesDAO.findIdsWithin(minX, minY, maxX, maxY, limit), Map.of());
+    }
+
+    @Transactional
+    public CoordinatesCompactionResponse compactCoordinates() {
+        long[] result = coordinatesDAO.compactDuplicates();
+        if (result[1] > 0) {
+            changeEvents.fire(ChangeEvent.changed(ChangeEvent.COORDINATES));
+        }
+        return new CoordinatesCompactionResponse(result[0], result[1], result[2]);
+    }
+
+    private static boolean sameValue(Coordinates coordinates, float x, Double y) {
+        return Float.compare(coordinates.getX() + 0.0f, x + 0.0f) == 0
+                && (y == null ? coordinates.getY() == null
+                        : coordinates.getY() != null && coordinates.getY() + 0.0 == y + 0.0);
+    }
+
+    // Координаты и их десантники двумя запросами на весь результат, порядок ids сохраняется
+    private List<NearbyCoordinatesDTO> withMarines(Collection<Long> ids, Map<Long, Double> distances) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, Coordinates> coordinatesById = new HashMap<>();
+        for (Coordinates coordinates : coordinatesDAO.findByIds(ids)) {
+            coordinatesById.put(coordinates.getId(), coordinates);
+        }
+        Map<Long, List<SpaceMarineDTO>> marinesByCoordinates = new HashMap<>();
+        for (SpaceMarine marine : spaceMarineDAO.findByCoordinatesIds(ids)) {
+            marinesByCoordinates.computeIfAbsent(marine.getCoordinates().getId(), id -> new ArrayList<>())
+                    .add(spaceMarineMapper.toDTO(marine));
+        }
+        
+        List<NearbyCoordinatesDTO> result = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Coordinates coordinates = coordinatesById.get(id);
+            if (coordinates != null) {
+                result.add(new NearbyCoordinatesDTO(spaceMarineMapper.toCoordinatesDTO(coordinates),
+                        distances.get(id), marinesByCoordinates.getOrDefault(id, List.of())));
+            }
+        }
+        return result;
+    }
 }
@@ -0,0 +1,211 @@
+package se.ifmo.ru.lab1.service.impl;
+
+import jakarta.annotation.Resource;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Event;
+import jakarta.inject.Inject;
+import jakarta.transaction.Status;
+import jakarta.transaction.UserTransaction;
+import se.ifmo.ru.lab1.dao.ChapterDAO;
+import se.ifmo.ru.lab1.dao.CoordinatesDAO;
+import se.ifmo.ru.lab1.dao.SpaceMarineDAO;
+import se.ifmo.ru.lab1.dto.ChangeEvent;
+import se.ifmo.ru.lab1.dto.PurgeStatus;
+import se.ifmo.ru.lab1.exception.EntityNotFoundException;
+import se.ifmo.ru.lab1.service.PurgeService;
+import se.ifmo.ru.lab1.stats.SpaceMarineAggregates;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Фоновое удаление главы/координат с большим числом десантников: десантники удаляются порциями
+// по CHUNK_SIZE, каждая в своей короткой транзакции, затем одной транзакцией удаляются оставшиеся
+// (добавленные во время очистки) и сам объект. Запрос только запускает задачу и сразу отвечает.
+// События для клиентов публикуются внутри транзакции порции и уходят только после ее коммита.
+@ApplicationScoped
+public class PurgeServiceImpl implements PurgeService {
+
+    private static final Logger LOGGER = Logger.getLogger(PurgeServiceImpl.class.getName());
+    private static final int CHUNK_SIZE = 1000;
+    private static final int MAX_RETAINED_JOBS = 100;
+    private static final Duration FINISHED_JOB_TTL = Duration.ofHours(1);
+
+    @Inject
+    private SpaceMarineDAO spaceMarineDAO;
+
+    @Inject
+    private ChapterDAO chapterDAO;
+
+    @Inject
+    private CoordinatesDAO coordinatesDAO;
+
+    @Inject
+    private SpaceMarineAggregates spaceMarineAggregates;
+
+    @Inject
+    private Event<ChangeEvent> changeEvents;
+
+    @Resource
+    private UserTransaction userTransaction;
+
+    @Resource
+    private ManagedExecutorService executor;
+
+    // Выполняющиеся задачи и последние завершенные, чтобы клиент мог узнать итог
+    private final Map<String, PurgeJob> jobs = new LinkedHashMap<>();
+
+    public PurgeStatus startChapterPurge(Long chapterId) {
+        if (chapterDAO.findById(chapterId).isEmpty()) {
+            throw new EntityNotFoundException("Chapter", chapterId);
+        }
+        PurgeJob job = register(ChangeEvent.CHAPTER, chapterId, spaceMarineDAO.countByChapterId(chapterId));
+        executor.execute(() -> run(job,
+                limit -> spaceMarineDAO.deleteChunkByChapterId(chapterId, limit),
+                () -> {
+                    int remaining = spaceMarineDAO.deleteByChapterId(chapterId);
+                    chapterDAO.delete(chapterId);
+                    return remaining;
+                }));
+        return job.toStatus();
+    }
+
+    public PurgeStatus startCoordinatesPurge(Long coordinatesId) {
+        if (coordinatesDAO.findById(coordinatesId).isEmpty()) {
+            throw new EntityNotFoundException("Coordinates", coordinatesId);
+        }
+        PurgeJob job = register(ChangeEvent.COORDINATES, coordinatesId, spaceMarineDAO.countByCoordinatesId(coordinatesId));
+        executor.execute(() -> run(job,
+                limit -> spaceMarineDAO.deleteChunkByCoordinatesId(coordinatesId, limit),
+                () -> {
+                    int remaining = spaceMarineDAO.deleteByCoordinatesId(coordinatesId);
+                    coordinatesDAO.delete(coordinatesId);
+                    return remaining;
+                }));
+        return job.toStatus();
+    }
+
+    public Optional<PurgeStatus> getStatus(String purgeId) {
+        synchronized (jobs) {
+            PurgeJob job = jobs.get(purgeId);
+            return job != null ? Optional.of(job.toStatus()) : Optional.empty();
+        }
+    }
+
+    private PurgeJob register(String target, Long targetId, long total) {
+        PurgeJob job = new PurgeJob(UUID.randomUUID().toString(), target, targetId, total);
+        synchronized (jobs) {
+            pruneFinished();
+            jobs.put(job.id, job);
+        }
+        return job;
+    }
+
+    // Выполняющиеся задачи не удаляются никогда; завершенные хранятся не дольше FINISHED_JOB_TTL
+    // и не больше MAX_RETAINED_JOBS, первыми удаляются раньше запущенные
+    private void pruneFinished() {
+        Instant expiredBefore = Instant.now().minus(FINISHED_JOB_TTL);
+        int finished = 0;
+        for (PurgeJob job : jobs.values()) {
+            if (job.finishedAt != null) {
+                finished++;
+            }
+        }
+        Iterator<PurgeJob> iterator = jobs.values().iterator();
+        while (iterator.hasNext()) {
+            Instant finishedAt = iterator.next().finishedAt;
+            if (finishedAt != null && (finished > MAX_RETAINED_JOBS || finishedAt.isBefore(expiredBefore))) {
+                iterator.remove();
+                finished--;
+            }
+        }
+    }
+
+    private void run(PurgeJob job, IntFunction<List<int[]>> deleteChunk, Callable<Integer> finish) {
+        try {
+            int chunkSize;
+            do {
+                chunkSize = inTransaction(() -> {
+                    List<int[]> deleted = deleteChunk.apply(CHUNK_SIZE);
+                    for (int[] marine : deleted) {
+                        spaceMarineAggregates.recordDeleted(marine[0], marine[1]);
+                    }
+                    if (!deleted.isEmpty()) {
+                        changeEvents.fire(ChangeEvent.changed(ChangeEvent.SPACE_MARINE));
+                    }
+                    return deleted.size();
+                });
+                job.deleted.addAndGet(chunkSize);
+            } while (chunkSize == CHUNK_SIZE);
+
+            int remaining = inTransaction(() -> {
+                int deleted = finish.call();
+                if (deleted > 0) {
+                    spaceMarineAggregates.resyncAfterCommit();
+                }
+                changeEvents.fire(ChangeEvent.deleted(job.target, job.targetId));
+                return deleted;
+            });
+            job.deleted.addAndGet(remaining);
+            job.finish("COMPLETED", null);
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Purge " + job.id + " failed", e);
+            job.finish("FAILED", e.getMessage());
+        }
+    }
+
+    private <T> T inTransaction(Callable<T> work) throws Exception {
+        userTransaction.begin();
+        try {
+            T result = work.call();
+            userTransaction.commit();
+            return result;
+        } catch (Exception e) {
+            int status = userTransaction.getStatus();
+            if (status == Status.STATUS_ACTIVE || status == Status.STATUS_MARKED_ROLLBACK) {
+                userTransaction.rollback();
+            }
+            throw e;
+        }
+    }
+
+    private static class PurgeJob {
+        private final String id;
+        private final String target;
+        private final Long targetId;
+        private final long total;
+        private final Instant startedAt = Instant.now();
+        private final AtomicLong deleted = new AtomicLong();
+        private volatile String state = "RUNNING";
+        private volatile String error;
+        private volatile Instant finishedAt;
+
+        private PurgeJob(String id, String target, Long targetId, long total) {
+            this.id = id;
+            this.target = target;
+            this.targetId = targetId;
+            this.total = total;
+        }
+
+        private void finish(String finalState, String message) {
+            error = message;
+            finishedAt = Instant.now();
+            state = finalState;
+        }
+
+        private PurgeStatus toStatus() {
+            return new PurgeStatus(id, target, targetId, state, total, deleted.get(), error, startedAt, finishedAt);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package se.ifmo.ru.lab1.service.impl;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.transaction.Transactional;
+import se.ifmo.ru.lab1.dao.SpaceMarineDAO;
+import se.ifmo.ru.lab1.mapper.RecordFormat;
+import se.ifmo.ru.lab1.mapper.SpaceMarineRecordWriter;
+import se.ifmo.ru.lab1.service.SpaceMarineExportService;
+
+import java.io.BufferedWriter;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+
+@ApplicationScoped
+public class SpaceMarineExportServiceImpl implements SpaceMarineExportService {
+
+    @Inject
+    private SpaceMarineDAO spaceMarineDAO;
+
+    // Транзакция нужна, чтобы курсор PostgreSQL жил на протяжении всей выгрузки;
+    // строки пишутся в ответ по мере чтения, без накопления в памяти
+    @Transactional
+    public void exportSpaceMarines(OutputStream output, RecordFormat format,
+                                   String nameFilter, String sortBy, String sortOrder) {
+        SpaceMarineRecordWriter writer = new SpaceMarineRecordWriter(
+                new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8)), format);
+        spaceMarineDAO.exportAll(nameFilter, sortBy, sortOrder, writer::write);
+        writer.finish();
+    }
+}
@@ -0,0 +1,198 @@
+package se.ifmo.ru.lab1.service.impl;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Event;
+import jakarta.inject.Inject;
+import jakarta.transaction.Transactional;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import se.ifmo.ru.lab1.dao.ChapterDAO;
+import se.ifmo.ru.lab1.dao.CoordinatesDAO;
+import se.ifmo.ru.lab1.dao.SpaceMarineDAO;
+import se.ifmo.ru.lab1.dto.ChangeEvent;
+import se.ifmo.ru.lab1.dto.ImportResponse;
+import se.ifmo.ru.lab1.dto.SpaceMarineDTO;
+import se.ifmo.ru.lab1.entity.Chapter;
+import se.ifmo.ru.lab1.entity.Coordinates;
+import se.ifmo.ru.lab1.entity.SpaceMarine;
+import se.ifmo.ru.lab1.mapper.RecordFormat;
+import se.ifmo.ru.lab1.mapper.SpaceMarineMapper;
+import se.ifmo.ru.lab1.mapper.SpaceMarineRecordReader;
+import se.ifmo.ru.lab1.service.SpaceMarineImportService;
+import se.ifmo.ru.lab1.stats.SpaceMarineAggregates;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+@ApplicationScoped
+public class SpaceMarineImportServiceImpl implements SpaceMarineImportService {
+
+    // Записи обрабатываются чанками: память ограничена размером чанка, а не файла
+    private static final int CHUNK_SIZE = 1000;
+    private static final int MAX_REPORTED_ERRORS = 100;
+
+    @Inject
+    private SpaceMarineDAO spaceMarineDAO;
+
+    @Inject
+    private ChapterDAO chapterDAO;
+
+    @Inject
+    private CoordinatesDAO coordinatesDAO;
+
+    @Inject
+    private SpaceMarineMapper spaceMarineMapper;
+
+    @Inject
+    private Validator validator;
+
+    @Inject
+    private SpaceMarineAggregates spaceMarineAggregates;
+
+    // Клиенты WebSocket получают событие только после коммита импорта
+    @Inject
+    private Event<ChangeEvent> changeEvents;
+
+    @Transactional
+    public ImportResponse importSpaceMarines(InputStream input, RecordFormat format) {
+        long started = System.currentTimeMillis();
+        SpaceMarineRecordReader reader = new SpaceMarineRecordReader(
+                new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8)), format);
+        ImportRun run = new ImportRun();
+
+        List<SpaceMarineDTO> chunk = new ArrayList<>(CHUNK_SIZE);
+        List<Long> chunkLines = new ArrayList<>(CHUNK_SIZE);
+        while (true) {
+            SpaceMarineDTO dto;
+            try {
+                dto = reader.next();
+            } catch (IllegalArgumentException e) {
+                run.reject(reader.getLineNumber(), e.getMessage());
+                continue;
+            }
+            if (dto == null) {
+                break;
+            }
+            chunk.add(dto);
+            chunkLines.add(reader.getLineNumber());
+            if (chunk.size() == CHUNK_SIZE) {
+                processChunk(chunk, chunkLines, run);
+                chunk.clear();
+                chunkLines.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            processChunk(chunk, chunkLines, run);
+        }
+
+        // Счетчики глав исправляются один раз в конце, одним UPDATE на главу
+        for (Map.Entry<Long, Integer> delta : run.chapterDeltas.entrySet()) {
+            chapterDAO.addMarinesToChapter(delta.getKey(), delta.getValue());
+        }
+
+        if (run.imported > 0) {
+            changeEvents.fire(ChangeEvent.changed(ChangeEvent.SPACE_MARINE));
+        }
+        return new ImportResponse(run.imported, run.rejected, System.currentTimeMillis() - started, run.errors);
+    }
+
+    private void processChunk(List<SpaceMarineDTO> chunk, List<Long> lines, ImportRun run) {
+        // Ссылки проверяются одним запросом на чанк
+        Set<Long> coordinatesIds = new HashSet<>();
+        Set<Long> chapterIds = new HashSet<>();
+        for (SpaceMarineDTO dto : chunk) {
+            if (dto.getCoordinatesId() != null) {
+                coordinatesIds.add(dto.getCoordinatesId());
+            }
+            if (dto.getChapterId() != null) {
+                chapterIds.add(dto.getChapterId());
+            }
+        }
+        Set<Long> existingCoordinates = coordinatesDAO.findExistingIds(coordinatesIds);
+        Set<Long> existingChapters = chapterDAO.findExistingIds(chapterIds);
+
+        List<SpaceMarine> valid = new ArrayList<>(chunk.size());
+        for (int i = 0; i < chunk.size(); i++) {
+            SpaceMarineDTO dto = chunk.get(i);
+            try {
+                SpaceMarine spaceMarine = spaceMarineMapper.toNewEntity(dto,
+                        coordinatesReference(dto.getCoordinatesId(), existingCoordinates),
+                        chapterReference(dto.getChapterId(), existingChapters));
+                Set<ConstraintViolation<SpaceMarine>> violations = validator.validate(spaceMarine);
+                if (!violations.isEmpty()) {
+                    StringBuilder message = new StringBuilder();
+                    for (ConstraintViolation<SpaceMarine> violation : violations) {
+                        message.append(violation.getMessage()).append("; ");
+                    }
+                    run.reject(lines.get(i), message.toString());
+                    continue;
+                }
+                valid.add(spaceMarine);
+            } catch (IllegalArgumentException e) {
+                run.reject(lines.get(i), e.getMessage());
+            }
+        }
+        if (valid.isEmpty()) {
+            return;
+        }
+
+        List<Integer> ids = spaceMarineDAO.allocateIds(valid.size());
+        for (int i = 0; i < valid.size(); i++) {
+            valid.get(i).setId(ids.get(i));
+        }
+        run.imported += spaceMarineDAO.copyInsert(valid);
+
+        for (SpaceMarine spaceMarine : valid) {
+            spaceMarineAggregates.recordCreated(spaceMarine.getHealth(), spaceMarine.getHeartCount());
+            if (spaceMarine.getChapter() != null) {
+                run.chapterDeltas.merge(spaceMarine.getChapter().getId(), 1, Integer::sum);
+            }
+        }
+    }
+
+    private static Coordinates coordinatesReference(Long id, Set<Long> existing) {
+        if (id == null) {
+            throw new IllegalArgumentException("Координаты обязательны");
+        }
+        if (!existing.contains(id)) {
+            throw new IllegalArgumentException("Координаты с ID " + id + " не найдены");
+        }
+        Coordinates coordinates = new Coordinates();
+        coordinates.setId(id);
+        return coordinates;
+    }
+
+    private static Chapter chapterReference(Long id, Set<Long> existing) {
+        if (id == null) {
+            return null;
+        }
+        if (!existing.contains(id)) {
+            throw new IllegalArgumentException("Глава с ID " + id + " не найдена");
+        }
+        Chapter chapter = new Chapter();
+        chapter.setId(id);
+        return chapter;
+    }
+
+    private static class ImportRun {
+        private long imported;
+        private long rejected;
+        private final List<String> errors = new ArrayList<>();
+        private final Map<Long, Integer> chapterDeltas = new HashMap<>();
+
+        private void reject(long line, String message) {
+            rejected++;
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add("Строка " + line + ": " + message);
+            }
+        }
+    }
+}
@@ -1,9 +1,15 @@
 package se.ifmo.ru.lab1.service.impl;
 
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Event;
 import jakarta.inject.Inject;
 import jakarta.transaction.Transactional;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import se.ifmo.ru.lab1.cache.SpaceMarineFacetCache;
 import se.ifmo.ru.lab1.dao.SpaceMarineDAO;
+import se.ifmo.ru.lab1.dao.PageResult;
+import se.ifmo.ru.lab1.dao.SpaceMarineFilter;
 import se.ifmo.ru.lab1.dao.ChapterDAO;
 import se.ifmo.ru.lab1.dao.CoordinatesDAO;
 import se.ifmo.ru.lab1.entity.SpaceMarine;
@@ -11,22 +17,36 @@ import se.ifmo.ru.lab1.entity.Chapter;
 import se.ifmo.ru.lab1.entity.Coordinates;
 import se.ifmo.ru.lab1.entity.AstartesCategory;
 import se.ifmo.ru.lab1.entity.Weapon;
+import se.ifmo.ru.lab1.dto.ChangeEvent;
 import se.ifmo.ru.lab1.dto.SpaceMarineDTO;
 import se.ifmo.ru.lab1.dto.RelatedObjectsResponse;
 import se.ifmo.ru.lab1.dto.ChapterDTO;
 import se.ifmo.ru.lab1.dto.CoordinatesDTO;
 import se.ifmo.ru.lab1.dto.DeleteResponse;
+import se.ifmo.ru.lab1.dto.CountMode;
+import se.ifmo.ru.lab1.dto.FacetsResponse;
+import se.ifmo.ru.lab1.dto.HealthStatisticsResponse;
 import se.ifmo.ru.lab1.service.SpaceMarineService;
+import se.ifmo.ru.lab1.stats.SpaceMarineAggregates;
 import se.ifmo.ru.lab1.service.ChapterService;
 import se.ifmo.ru.lab1.service.CoordinatesService;
 import se.ifmo.ru.lab1.mapper.SpaceMarineMapper;
+import se.ifmo.ru.lab1.exception.ValidationException;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 
 @ApplicationScoped
 public class SpaceMarineServiceImpl implements SpaceMarineService {
 
+    private static final int MAX_REPORTED_ERRORS = 20;
+
     @Inject
     private SpaceMarineDAO spaceMarineDAO;
 
@@ -44,6 +64,19 @@ public class SpaceMarineServiceImpl implements SpaceMarineService {
     
     @Inject
     private SpaceMarineMapper spaceMarineMapper;
+    
+    @Inject
+    private Validator validator;
+    
+    @Inject
+    private SpaceMarineAggregates spaceMarineAggregates;
+    
+    @Inject
+    private SpaceMarineFacetCache spaceMarineFacetCache;
+
+    // Клиенты WebSocket получают события только после коммита (WebSocketDispatcher.onCommitted)
+    @Inject
+    private Event<ChangeEvent> changeEvents;
 
     @Transactional
     public SpaceMarine createSpaceMarine(SpaceMarine spaceMarine) {
@@ -54,7 +87,10 @@ public class SpaceMarineServiceImpl implements SpaceMarineService {
                 chapterDAO.addMarineToChapter(existingChapter.get().getId());
             }
         }
-        return spaceMarineDAO.save(spaceMarine);
+        SpaceMarine saved = spaceMarineDAO.save(spaceMarine);
+        spaceMarineAggregates.recordCreated(saved.getHealth(), saved.getHeartCount());
+        fireCreated(saved);
+        return saved;
     }
     
     @Transactional
@@ -104,15 +140,133 @@ public class SpaceMarineServiceImpl implements SpaceMarineService {
         
         // Сначала сохраняем SpaceMarine
         SpaceMarine savedSpaceMarine = spaceMarineDAO.save(spaceMarine);
+        spaceMarineAggregates.recordCreated(savedSpaceMarine.getHealth(), savedSpaceMarine.getHeartCount());
         
         // Затем обновляем счетчик в Chapter
         if (dto.getChapterId() != null) {
             chapterDAO.addMarineToChapter(dto.getChapterId());
         }
         
+        fireCreated(savedSpaceMarine);
         return savedSpaceMarine;
     }
 
+    @Transactional
+    public List<Integer> createSpaceMarinesBatch(List<SpaceMarineDTO> dtos) {
+        if (dtos == null || dtos.isEmpty()) {
+            throw new IllegalArgumentException("Список десантников пуст");
+        }
+        
+        // Координаты и главы загружаются одним запросом на весь пакет, а не по одному на десантника
+        Set<Long> coordinatesIds = new HashSet<>();
+        Set<Long> chapterIds = new HashSet<>();
+        for (SpaceMarineDTO dto : dtos) {
+            if (dto == null) {
+                continue;
+            }
+            if (dto.getCoordinatesId() != null) {
+                coordinatesIds.add(dto.getCoordinatesId());
+            }
+            if (dto.getChapterId() != null) {
+                chapterIds.add(dto.getChapterId());
+            }
+        }
+        Map<Long, Coordinates> coordinatesById = new HashMap<>();
+        for (Coordinates coordinates : coordinatesDAO.findByIds(coordinatesIds)) {
+            coordinatesById.put(coordinates.getId(), coordinates);
+        }
+        Map<Long, Chapter> chaptersById = new HashMap<>();
+        for (Chapter chapter : chapterDAO.findByIds(chapterIds)) {
+            chaptersById.put(chapter.getId(), chapter);
+        }
+        
+        List<SpaceMarine> spaceMarines = new ArrayList<>(dtos.size());
+        Map<Long, Integer> chapterDeltas = new HashMap<>();
+        List<String> errors = new ArrayList<>();
+        for (int i = 0; i < dtos.size(); i++) {
+            try {
+                SpaceMarine spaceMarine = buildSpaceMarine(dtos.get(i), coordinatesById, chaptersById);
+                Set<ConstraintViolation<SpaceMarine>> violations = validator.validate(spaceMarine);
+                if (!violations.isEmpty()) {
+                    StringBuilder message = new StringBuilder();
+                    for (ConstraintViolation<SpaceMarine> violation : violations) {
+                        message.append(violation.getMessage()).append("; ");
+                    }
+                    errors.add("#" + i + ": " + message);
+                    continue;
+                }
+                spaceMarines.add(spaceMarine);
+                if (spaceMarine.getChapter() != null) {
+                    chapterDeltas.merge(spaceMarine.getChapter().getId(), 1, Integer::sum);
+                }
+            } catch (IllegalArgumentException e) {
+                errors.add("#" + i + ": " + e.getMessage());
+            }
+        }
+        
+        // Пакет атомарен: при любой ошибке ничего не сохраняется
+        if (!errors.isEmpty()) {
+            throw new ValidationException("Пакет отклонен, ошибок: " + errors.size() + ". "
+                    + String.join(" ", errors.subList(0, Math.min(errors.size(), MAX_REPORTED_ERRORS))));
+        }
+        
+        List<Integer> ids = spaceMarineDAO.saveAll(spaceMarines);
+        for (SpaceMarine spaceMarine : spaceMarines) {
+            spaceMarineAggregates.recordCreated(spaceMarine.getHealth(), spaceMarine.getHeartCount());
+        }
+        
+        // Счетчики глав обновляются одним UPDATE на главу
+        for (Map.Entry<Long, Integer> delta : chapterDeltas.entrySet()) {
+            chapterDAO.addMarinesToChapter(delta.getKey(), delta.getValue());
+        }
+        
+        // Одно событие на весь пакет вместо события на каждого десантника
+        changeEvents.fire(ChangeEvent.created(ChangeEvent.SPACE_MARINE, ids));
+        return ids;
+    }
+
+    private SpaceMarine buildSpaceMarine(SpaceMarineDTO dto, Map<Long, Coordinates> coordinatesById,
+                                         Map<Long, Chapter> chaptersById) {
+        if (dto == null) {
+            throw new IllegalArgumentException("Пустая запись");
+        }
+        if (dto.getCoordinatesId() == null) {
+            throw new IllegalArgumentException("Координаты обязательны");
+        }
+        Coordinates coordinates = coordinatesById.get(dto.getCoordinatesId());
+        if (coordinates == null) {
+            throw new IllegalArgumentException("Координаты с ID " + dto.getCoordinatesId() + " не найдены");
+        }
+        
+        Chapter chapter = null;
+        if (dto.getChapterId() != null) {
+            chapter = chaptersById.get(dto.getChapterId());
+            if (chapter == null) {
+                throw new IllegalArgumentException("Глава с ID " + dto.getChapterId() + " не найдена");
+            }
+        }
+        
+        return spaceMarineMapper.toNewEntity(dto, coordinates, chapter);
+    }
+
+    private void fireCreated(SpaceMarine spaceMarine) {
+        changeEvents.fire(ChangeEvent.created(ChangeEvent.SPACE_MARINE, spaceMarine.getId(),
+                spaceMarineMapper.toDTO(spaceMarine)));
+    }
+
+    // previousChapterId передается в событие, только если орден сменился
+    private void fireUpdated(SpaceMarine spaceMarine, Long previousChapterId) {
+        Long chapterId = spaceMarine.getChapter() != null ? spaceMarine.getChapter().getId() : null;
+        changeEvents.fire(ChangeEvent.updated(ChangeEvent.SPACE_MARINE, spaceMarine.getId(),
+                spaceMarineMapper.toDTO(spaceMarine),
+                Objects.equals(previousChapterId, chapterId) ? null : previousChapterId));
+    }
+
+    private void fireDeleted(Integer id, SpaceMarine spaceMarine) {
+        changeEvents.fire(ChangeEvent.deleted(ChangeEvent.SPACE_MARINE, id,
+                spaceMarine.getChapter() != null ? spaceMarine.getChapter().getId() : null));
+    }
+
     public Optional<SpaceMarine> getSpaceMarineById(Integer id) {
         return spaceMarineDAO.findById(id);
     }
@@ -125,27 +279,35 @@ public class SpaceMarineServiceImpl implements SpaceMarineService {
         return spaceMarineDAO.findAll(page, size);
     }
 
-    public List<SpaceMarine> getSpaceMarines(int page, int size, String sortBy, String sortOrder) {
-        return spaceMarineDAO.findAll(page, size, sortBy, sortOrder);
-    }
-
-    public List<SpaceMarine> getSpaceMarinesWithFilters(String nameFilter, String sortBy, String sortOrder, int page, int size) {
-        return spaceMarineDAO.findWithFilters(nameFilter, sortBy, sortOrder, page, size);
+    // Списки только читаются, поэтому строки выбираются сразу в DTO, минуя сущности
+    public PageResult<SpaceMarineDTO> getSpaceMarinesPage(SpaceMarineFilter filter, String sortBy, String sortOrder,
+                                                          int page, String after, int size, CountMode countMode) {
+        if (countMode == CountMode.NONE) {
+            return spaceMarineDAO.findDTOPage(filter, sortBy, sortOrder, page, after, size, false);
+        }
+        // Оценка по статистике возможна только для всей таблицы; с фильтром считаем точно
+        if (countMode == CountMode.APPROXIMATE && filter.isEmpty()) {
+            long estimate = spaceMarineDAO.estimateCount();
+            if (estimate >= 0) {
+                PageResult<SpaceMarineDTO> result = spaceMarineDAO.findDTOPage(filter, sortBy, sortOrder, page, after, size, false);
+                return new PageResult<>(result.getContent(), estimate, CountMode.APPROXIMATE, result.getNextCursor());
+            }
+        }
+        return spaceMarineDAO.findDTOPage(filter, sortBy, sortOrder, page, after, size, true);
     }
 
     public long getSpaceMarinesCount() {
         return spaceMarineDAO.count();
     }
 
-    public long getSpaceMarinesCountWithFilters(String nameFilter) {
-        return spaceMarineDAO.countWithFilters(nameFilter);
-    }
-
     @Transactional
     public SpaceMarine updateSpaceMarine(Integer id, SpaceMarine updatedSpaceMarine) {
         Optional<SpaceMarine> existingSpaceMarine = spaceMarineDAO.findById(id);
         if (existingSpaceMarine.isPresent()) {
             SpaceMarine spaceMarine = existingSpaceMarine.get();
+            int oldHealth = spaceMarine.getHealth();
+            int oldHeartCount = spaceMarine.getHeartCount();
+            Long oldChapterId = spaceMarine.getChapter() != null ? spaceMarine.getChapter().getId() : null;
             
             // Handle chapter change
             if (spaceMarine.getChapter() != null && !spaceMarine.getChapter().equals(updatedSpaceMarine.getChapter())) {
@@ -170,7 +332,10 @@ public class SpaceMarineServiceImpl implements SpaceMarineService {
             spaceMarine.setCategory(updatedSpaceMarine.getCategory());
             spaceMarine.setWeaponType(updatedSpaceMarine.getWeaponType());
             
-            return spaceMarineDAO.update(spaceMarine);
+            SpaceMarine merged = spaceMarineDAO.update(spaceMarine);
+            spaceMarineAggregates.recordUpdated(oldHealth, oldHeartCount, merged.getHealth(), merged.getHeartCount());
+            fireUpdated(merged, oldChapterId);
+            return merged;
         }
         return null;
     }
@@ -183,6 +348,8 @@ public class SpaceMarineServiceImpl implements SpaceMarineService {
         }
         
         SpaceMarine spaceMarine = existingSpaceMarine.get();
+        int oldHealth = spaceMarine.getHealth();
+        int oldHeartCount = spaceMarine.getHeartCount();
         
         // Обновляем основные поля
         spaceMarine.setName(dto.getName());
@@ -238,6 +405,8 @@ public class SpaceMarineServiceImpl implements SpaceMarineService {
         
         // Сначала обновляем SpaceMarine
         SpaceMarine updatedSpaceMarine = spaceMarineDAO.update(spaceMarine);
+        spaceMarineAggregates.recordUpdated(oldHealth, oldHeartCount,
+                updatedSpaceMarine.getHealth(), updatedSpaceMarine.getHeartCount());
         
         // Затем обновляем счетчики в Chapter
         if (oldChapterId != null && (dto.getChapterId() == null || !oldChapterId.equals(dto.getChapterId()))) {
@@ -247,6 +416,7 @@ public class SpaceMarineServiceImpl implements SpaceMarineService {
             chapterDAO.addMarineToChapter(dto.getChapterId());
         }
         
+        fireUpdated(updatedSpaceMarine, oldChapterId);
         return updatedSpaceMarine;
     }
 
@@ -258,6 +428,8 @@ public class SpaceMarineServiceImpl implements SpaceMarineService {
                 chapterDAO.removeMarineFromChapter(spaceMarine.get().getChapter().getId());
             }
             spaceMarineDAO.delete(id);
+            spaceMarineAggregates.recordDeleted(spaceMarine.get().getHealth(), spaceMarine.get().getHeartCount());
+            fireDeleted(id, spaceMarine.get());
             return true;
         }
         return false;
@@ -311,6 +483,8 @@ public class SpaceMarineServiceImpl implements SpaceMarineService {
             
             // Удаляем самого марина
             spaceMarineDAO.delete(id);
+            spaceMarineAggregates.recordDeleted(marine.getHealth(), marine.getHeartCount());
+            fireDeleted(id, marine);
             
             // Теперь можем безопасно удалить связанные объекты (если они не используются другими маринами)
             if (coordinatesIdToDelete != null) {
@@ -373,6 +547,8 @@ public class SpaceMarineServiceImpl implements SpaceMarineService {
             }
             
             spaceMarineDAO.delete(id);
+            spaceMarineAggregates.recordDeleted(marine.getHealth(), marine.getHeartCount());
+            fireDeleted(id, marine);
             
             if (coordinatesIdToDelete != null) {
                 coordinatesActuallyDeleted = coordinatesService.deleteCoordinates(coordinatesIdToDelete);
@@ -400,21 +576,45 @@ public class SpaceMarineServiceImpl implements SpaceMarineService {
         return new DeleteResponse("Десантник не найден");
     }
 
-    public List<SpaceMarine> findSpaceMarinesByNameContaining(String name) {
-        return spaceMarineDAO.findByNameContaining(name);
+    public List<SpaceMarineDTO> findSpaceMarinesByNameContaining(String name) {
+        return spaceMarineDAO.findDTOsByNameContaining(name);
     }
 
-    public List<SpaceMarine> findSpaceMarinesByHealthLessThan(Integer health) {
-        return spaceMarineDAO.findByHealthLessThan(health);
+    public List<SpaceMarineDTO> findSpaceMarinesByHealthLessThan(Integer health) {
+        return spaceMarineDAO.findDTOsByHealthLessThan(health);
     }
 
+    // Из агрегатов в памяти; пока они не построены — запросом к БД
     public long countSpaceMarinesByHealthLessThan(Integer health) {
+        if (health != null && spaceMarineAggregates.isReady()) {
+            return spaceMarineAggregates.countHealthLessThan(health);
+        }
         return spaceMarineDAO.countByHealthLessThan(health);
     }
 
     public Double getAverageHeartCount() {
+        if (spaceMarineAggregates.isReady()) {
+            return spaceMarineAggregates.getAverageHeartCount();
+        }
         return spaceMarineDAO.getAverageHeartCount();
     }
+
+    // Из агрегатов в памяти; если они еще не построены, строим их сейчас
+    public HealthStatisticsResponse getHealthStatistics(int buckets) {
+        if (!spaceMarineAggregates.isReady()) {
+            spaceMarineAggregates.rebuild();
+            if (!spaceMarineAggregates.isReady()) {
+                throw new IllegalStateException("Health statistics are not available yet");
+            }
+        }
+        return spaceMarineAggregates.getHealthStatistics(buckets);
+    }
+
+    // Пересчитывается одним запросом только после записи в таблицу
+    public FacetsResponse getFacets(String nameFilter, int healthBucketSize) {
+        return spaceMarineFacetCache.get(nameFilter, healthBucketSize,
+                () -> spaceMarineDAO.getFacets(nameFilter, healthBucketSize));
+    }
     
     public RelatedObjectsResponse getRelatedObjects(Integer id) {
         Optional<SpaceMarine> spaceMarine = spaceMarineDAO.findById(id);
@@ -450,10 +650,13 @@ public class SpaceMarineServiceImpl implements SpaceMarineService {
             throw new IllegalArgumentException("У десантника нет ордена для отчисления");
         }
         
-        chapterDAO.removeMarineFromChapter(spaceMarine.getChapter().getId());
+        Long oldChapterId = spaceMarine.getChapter().getId();
+        chapterDAO.removeMarineFromChapter(oldChapterId);
         
         spaceMarine.setChapter(null);
         
-        return spaceMarineDAO.update(spaceMarine);
+        SpaceMarine updated = spaceMarineDAO.update(spaceMarine);
+        fireUpdated(updated, oldChapterId);
+        return updated;
     }
 }
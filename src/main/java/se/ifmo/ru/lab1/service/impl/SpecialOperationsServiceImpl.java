@@ -2,12 +2,25 @@ package se.ifmo.ru.lab1.service.impl;
 
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
+import jakarta.json.bind.Jsonb;
+import jakarta.json.bind.JsonbBuilder;
 import jakarta.transaction.Transactional;
+import se.ifmo.ru.lab1.dao.KeysetCursor;
 import se.ifmo.ru.lab1.dao.SpecialOperationsDAO;
+import se.ifmo.ru.lab1.dto.MarineSearchResponse;
+import se.ifmo.ru.lab1.dto.MarineSearchResult;
 import se.ifmo.ru.lab1.entity.Chapter;
 import se.ifmo.ru.lab1.service.SpecialOperationsService;
+import se.ifmo.ru.lab1.stats.SpaceMarineAggregates;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 @ApplicationScoped
@@ -15,18 +28,55 @@ public class SpecialOperationsServiceImpl implements SpecialOperationsService {
 
     @Inject
     private SpecialOperationsDAO specialOperationsDAO;
+    
+    @Inject
+    private SpaceMarineAggregates spaceMarineAggregates;
+
+    private final Jsonb jsonb = JsonbBuilder.create();
 
+    // Те же агрегаты в памяти, что и у /spacemarines/stats; SQL-функции — пока они не построены
     public Double getAverageHeartCount() {
+        if (spaceMarineAggregates.isReady()) {
+            Double average = spaceMarineAggregates.getAverageHeartCount();
+            return average != null ? average : 0.0;
+        }
         BigDecimal result = specialOperationsDAO.getAverageHeartCount();
         return result != null ? result.doubleValue() : 0.0;
     }
 
     public Integer countMarinesByHealth(Integer healthThreshold) {
+        if (healthThreshold != null && spaceMarineAggregates.isReady()) {
+            return (int) spaceMarineAggregates.countHealthLessThan(healthThreshold);
+        }
         return specialOperationsDAO.countMarinesByHealth(healthThreshold);
     }
 
-    public List<Object[]> findMarinesByNameContaining(String nameSubstring) {
-        return specialOperationsDAO.findMarinesByNameContaining(nameSubstring);
+    // Keyset-страница по id: стоимость не растет с глубиной, курсор — id последней строки
+    public MarineSearchResponse findMarinesByNameContaining(String nameSubstring, String after, int size) {
+        Long afterId = after != null && !after.isEmpty() ? KeysetCursor.decode(after).getLastId() : null;
+        List<MarineSearchResult> marines = specialOperationsDAO.findMarinesByNameContaining(nameSubstring, afterId, size);
+        String nextCursor = marines.size() < size ? null
+                : KeysetCursor.of(null, null, marines.get(marines.size() - 1).getId());
+        return new MarineSearchResponse(marines, nextCursor);
+    }
+
+    // Транзакция держит курсор БД открытым; строки пишутся в ответ по одной в формате NDJSON
+    @Transactional
+    public void streamMarinesByNameContaining(String nameSubstring, OutputStream output) {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        specialOperationsDAO.forEachMarineByNameContaining(nameSubstring, marine -> {
+            try {
+                writer.write(jsonb.toJson(marine));
+                writer.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     @Transactional
@@ -0,0 +1,180 @@
+package se.ifmo.ru.lab1.stats;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.enterprise.concurrent.ManagedScheduledExecutorService;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.context.Initialized;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import jakarta.transaction.Status;
+import jakarta.transaction.UserTransaction;
+import se.ifmo.ru.lab1.dao.ChapterDAO;
+import se.ifmo.ru.lab1.transaction.TransactionCallbacks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Необязательный режим отложенных счетчиков marines_count (-Dlab1.chapterCounters.buffered=true).
+// Изменения закоммиченных транзакций копятся в LongAdder на главу (внутри разбит на ячейки,
+// поэтому параллельные инкременты одной главы не конкурируют) и раз в FLUSH_INTERVAL_MS
+// записываются одним UPDATE на главу. Цена: marines_count в БД отстает до следующего сброса,
+// нижняя граница 0 применяется при сбросе, а несброшенные дельты теряются при остановке процесса.
+// Верхняя граница проверяется сразу (tryAdd): прибавления резервируются до коммита.
+@ApplicationScoped
+public class ChapterCounterBuffer {
+
+    private static final Logger LOGGER = Logger.getLogger(ChapterCounterBuffer.class.getName());
+    private static final String ENABLED_PROPERTY = "lab1.chapterCounters.buffered";
+    private static final long FLUSH_INTERVAL_MS = 500;
+    private static final String PENDING_DELTAS = ChapterCounterBuffer.class.getName() + ".deltas";
+
+    @Inject
+    private ChapterDAO chapterDAO;
+
+    @Inject
+    private TransactionCallbacks transactionCallbacks;
+
+    @Resource
+    private UserTransaction userTransaction;
+
+    @Resource
+    private ManagedScheduledExecutorService scheduler;
+
+    private final boolean enabled = Boolean.getBoolean(ENABLED_PROPERTY);
+    private final Map<Long, Counter> counters = new ConcurrentHashMap<>();
+    private ScheduledFuture<?> flushTask;
+
+    void onStartup(@Observes @Initialized(ApplicationScoped.class) Object event) {
+        if (enabled) {
+            flushTask = scheduler.scheduleWithFixedDelay(this::flush,
+                    FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (flushTask != null) {
+            flushTask.cancel(false);
+            flush();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Дельта учитывается только после коммита текущей транзакции
+    public void add(Long chapterId, int delta) {
+        Pending pending = pending();
+        if (pending == null) {
+            counter(chapterId).committed.add(delta);
+            return;
+        }
+        pending.deltas.merge(chapterId, delta, Integer::sum);
+    }
+
+    // Прибавляет delta > 0, если stored (значение в БД, null — главы нет) вместе со всеми
+    // несброшенными и зарезервированными дельтами не превысит limit. Резерв делается до проверки,
+    // а буфер читается до stored: сброс вычитает дельты только после своего коммита, поэтому
+    // параллельные прибавления и сброс могут быть посчитаны дважды (отказ с запасом), но не пропущены
+    public boolean tryAdd(Long chapterId, int delta, int limit, Supplier<Integer> stored) {
+        Counter counter = counter(chapterId);
+        counter.reserved.add(delta);
+        boolean added = false;
+        try {
+            long buffered = counter.committed.sum() + counter.reserved.sum();
+            Integer current = stored.get();
+            added = current != null && current + buffered <= limit;
+        } finally {
+            if (!added) {
+                counter.reserved.add(-delta);
+            }
+        }
+        if (!added) {
+            return false;
+        }
+        Pending pending = pending();
+        if (pending == null) {
+            counter.committed.add(delta);
+            counter.reserved.add(-delta);
+        } else {
+            pending.deltas.merge(chapterId, delta, Integer::sum);
+            pending.reserved.merge(chapterId, delta, Integer::sum);
+        }
+        return true;
+    }
+
+    // Одна транзакция на сброс. Дельты вычитаются из счетчиков только после коммита,
+    // поэтому при ошибке остаются на месте до следующей попытки
+    public synchronized void flush() {
+        Map<Long, Integer> batch = new HashMap<>();
+        for (Map.Entry<Long, Counter> entry : counters.entrySet()) {
+            long value = entry.getValue().committed.sum();
+            if (value != 0) {
+                batch.put(entry.getKey(), (int) value);
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            userTransaction.begin();
+            try {
+                for (Map.Entry<Long, Integer> entry : batch.entrySet()) {
+                    chapterDAO.addMarinesToChapter(entry.getKey(), entry.getValue());
+                }
+                userTransaction.commit();
+            } catch (Exception e) {
+                if (userTransaction.getStatus() == Status.STATUS_ACTIVE
+                        || userTransaction.getStatus() == Status.STATUS_MARKED_ROLLBACK) {
+                    userTransaction.rollback();
+                }
+                throw e;
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Failed to flush chapter counters, will retry", e);
+            return;
+        }
+        // add(-value), а не сброс в 0: дельты, закоммиченные во время записи, остаются
+        batch.forEach((id, value) -> counter(id).committed.add(-value));
+    }
+
+    private Pending pending() {
+        return transactionCallbacks.perTransaction(PENDING_DELTAS, Pending::new, this::commit, this::release);
+    }
+
+    // Сначала учет, потом снятие резерва: в промежутке сумма завышена, а не занижена
+    private void commit(Pending pending) {
+        pending.deltas.forEach((id, value) -> counter(id).committed.add(value));
+        release(pending);
+    }
+
+    private void release(Pending pending) {
+        pending.reserved.forEach((id, value) -> counter(id).reserved.add(-value));
+    }
+
+    private Counter counter(Long chapterId) {
+        return counters.computeIfAbsent(chapterId, id -> new Counter());
+    }
+
+    private static class Counter {
+        // Закоммиченные, но еще не записанные в БД дельты
+        private final LongAdder committed = new LongAdder();
+        // Прибавления еще не завершенных транзакций
+        private final LongAdder reserved = new LongAdder();
+    }
+
+    // Дельты текущей транзакции
+    private static class Pending {
+        private final Map<Long, Integer> deltas = new HashMap<>();
+        private final Map<Long, Integer> reserved = new HashMap<>();
+    }
+}
@@ -0,0 +1,80 @@
+package se.ifmo.ru.lab1.stats;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+// Число десантников по значению health. Значения 1..DOMAIN лежат в дереве Фенвика
+// (добавление и префиксная сумма за O(log DOMAIN)), редкие большие значения — в TreeMap.
+class HealthFenwickTree {
+
+    static final int DOMAIN = 1 << 16;
+
+    private final long[] tree = new long[DOMAIN + 1];
+    private final TreeMap<Integer, Long> overflow = new TreeMap<>();
+    private long total;
+
+    void add(int health, long delta) {
+        total += delta;
+        if (health > DOMAIN) {
+            overflow.merge(health, delta, Long::sum);
+            if (overflow.get(health) == 0) {
+                overflow.remove(health);
+            }
+            return;
+        }
+        for (int i = Math.max(health, 1); i <= DOMAIN; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    // Количество значений строго меньше threshold
+    long countLessThan(int threshold) {
+        if (threshold <= 1) {
+            return 0;
+        }
+        if (threshold - 1 > DOMAIN) {
+            long count = prefix(DOMAIN);
+            for (Map.Entry<Integer, Long> entry : overflow.headMap(threshold).entrySet()) {
+                count += entry.getValue();
+            }
+            return count;
+        }
+        return prefix(threshold - 1);
+    }
+
+    long total() {
+        return total;
+    }
+
+    // Наименьшее значение v, для которого не меньше rank значений <= v (rank от 1 до total).
+    // Спуск по дереву за O(log DOMAIN) без отдельных префиксных сумм
+    int valueAtRank(long rank) {
+        int position = 0;
+        long remaining = rank;
+        for (int step = DOMAIN; step > 0; step >>= 1) {
+            int next = position + step;
+            if (next <= DOMAIN && tree[next] < remaining) {
+                position = next;
+                remaining -= tree[next];
+            }
+        }
+        if (position < DOMAIN) {
+            return position + 1;
+        }
+        for (Map.Entry<Integer, Long> entry : overflow.entrySet()) {
+            remaining -= entry.getValue();
+            if (remaining <= 0) {
+                return entry.getKey();
+            }
+        }
+        return overflow.isEmpty() ? DOMAIN : overflow.lastKey();
+    }
+
+    private long prefix(int index) {
+        long sum = 0;
+        for (int i = index; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,249 @@
+package se.ifmo.ru.lab1.stats;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.enterprise.concurrent.ManagedScheduledExecutorService;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.context.Initialized;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import se.ifmo.ru.lab1.dao.SpaceMarineDAO;
+import se.ifmo.ru.lab1.dto.HealthStatisticsResponse;
+import se.ifmo.ru.lab1.transaction.TransactionCallbacks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Агрегаты по десантникам в памяти: сумма и число heartCount (среднее за O(1)) и распределение
+// health (количество ниже порога за O(log n)). Изменения копятся за транзакцию и применяются
+// только после коммита. Строятся из БД при старте и периодически пересчитываются, чтобы
+// исправить расхождения от записей в обход сервисов.
+@ApplicationScoped
+public class SpaceMarineAggregates {
+
+    private static final Logger LOGGER = Logger.getLogger(SpaceMarineAggregates.class.getName());
+    private static final long RESYNC_INTERVAL_MINUTES = 5;
+    private static final String PENDING_DELTA = SpaceMarineAggregates.class.getName() + ".delta";
+
+    @Inject
+    private SpaceMarineDAO spaceMarineDAO;
+
+    @Inject
+    private TransactionCallbacks transactionCallbacks;
+
+    @Resource
+    private ManagedScheduledExecutorService scheduler;
+
+    private HealthFenwickTree healthTree = new HealthFenwickTree();
+    private long heartCountSum;
+    private boolean ready;
+    // Снимок БД, из которого построено healthTree; null до первой сборки
+    private XactSnapshot snapshot;
+    // Дельты, примененные за время текущей пересборки; null вне пересборки
+    private List<Delta> appliedDuringRebuild;
+    private final Object rebuildLock = new Object();
+    private ScheduledFuture<?> resyncTask;
+
+    void onStartup(@Observes @Initialized(ApplicationScoped.class) Object event) {
+        rebuild();
+        resyncTask = scheduler.scheduleWithFixedDelay(this::rebuild,
+                RESYNC_INTERVAL_MINUTES, RESYNC_INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (resyncTask != null) {
+            resyncTask.cancel(false);
+        }
+    }
+
+    // Гистограмма читается без блокировки, а дельты продолжают применяться к текущему дереву.
+    // Каждая дельта помнит xid своей транзакции, а гистограмма — снимок БД, поэтому при замене
+    // дерева в новое доигрываются ровно те дельты, которых в снимке нет
+    public void rebuild() {
+        synchronized (rebuildLock) {
+            try {
+                startRebuild();
+                finishRebuild(spaceMarineDAO.getHealthHistogram());
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    appliedDuringRebuild = null;
+                }
+                LOGGER.log(Level.WARNING, "Failed to rebuild space marine aggregates", e);
+            }
+        }
+    }
+
+    synchronized void startRebuild() {
+        appliedDuringRebuild = new ArrayList<>();
+    }
+
+    // Строки: снимок, health, количество, сумма heartCount (см. SpaceMarineDAO.getHealthHistogram)
+    void finishRebuild(List<Object[]> rows) {
+        HealthFenwickTree rebuilt = new HealthFenwickTree();
+        long sum = 0;
+        XactSnapshot rebuiltFrom = XactSnapshot.parse((String) rows.get(0)[0]);
+        for (Object[] row : rows) {
+            if (row[1] != null) {
+                rebuilt.add(((Number) row[1]).intValue(), ((Number) row[2]).longValue());
+                sum += ((Number) row[3]).longValue();
+            }
+        }
+        synchronized (this) {
+            for (Delta delta : appliedDuringRebuild) {
+                if (!delta.isIn(rebuiltFrom)) {
+                    sum += delta.addTo(rebuilt);
+                }
+            }
+            healthTree = rebuilt;
+            heartCountSum = sum;
+            snapshot = rebuiltFrom;
+            appliedDuringRebuild = null;
+            ready = true;
+        }
+    }
+
+    // Пока агрегаты не построены, вызывающий код считает по БД
+    public synchronized boolean isReady() {
+        return ready;
+    }
+
+    // null, если десантников нет (как AVG в SQL)
+    public synchronized Double getAverageHeartCount() {
+        long count = healthTree.total();
+        return count == 0 ? null : (double) heartCountSum / count;
+    }
+
+    public synchronized long countHealthLessThan(int threshold) {
+        return healthTree.countLessThan(threshold);
+    }
+
+    // Квантили и гистограмма за одно взятие блокировки, поэтому согласованы между собой.
+    // Значения health хранятся без сжатия, так что квантили точные (ошибка ранга 0)
+    // относительно закоммиченных через сервисы изменений
+    public synchronized HealthStatisticsResponse getHealthStatistics(int buckets) {
+        HealthStatisticsResponse statistics = new HealthStatisticsResponse();
+        long count = healthTree.total();
+        statistics.setCount(count);
+        if (count == 0) {
+            return statistics;
+        }
+        int min = healthTree.valueAtRank(1);
+        int max = healthTree.valueAtRank(count);
+        statistics.setMin(min);
+        statistics.setMax(max);
+        statistics.setP50(quantile(0.5, count));
+        statistics.setP90(quantile(0.9, count));
+        statistics.setP99(quantile(0.99, count));
+
+        // Интервалы одинаковой ширины от min до max включительно
+        long width = Math.max(1, ((long) max - min + buckets) / buckets);
+        long below = 0;
+        for (long from = min; from <= max; from += width) {
+            long to = Math.min(from + width, (long) max + 1);
+            long upTo = to > Integer.MAX_VALUE ? count : healthTree.countLessThan((int) to);
+            statistics.getHistogram().add(new HealthStatisticsResponse.Bucket(from, to, upTo - below));
+            below = upTo;
+        }
+        return statistics;
+    }
+
+    // Ближайший ранг: наименьшее значение, не меньше которого ceil(q * count) значений
+    private int quantile(double q, long count) {
+        return healthTree.valueAtRank(Math.max(1, (long) Math.ceil(q * count)));
+    }
+
+    public void recordCreated(int health, int heartCount) {
+        record(health, heartCount, 1);
+    }
+
+    public void recordDeleted(int health, int heartCount) {
+        record(health, heartCount, -1);
+    }
+
+    public void recordUpdated(int oldHealth, int oldHeartCount, int health, int heartCount) {
+        record(oldHealth, oldHeartCount, -1);
+        record(health, heartCount, 1);
+    }
+
+    // Для массовых изменений, где затронутые строки не известны поштучно
+    public void resyncAfterCommit() {
+        Delta delta = pendingDelta();
+        if (delta != null) {
+            delta.resync = true;
+        } else {
+            scheduler.execute(this::rebuild);
+        }
+    }
+
+    private void record(int health, int heartCount, int sign) {
+        Delta delta = pendingDelta();
+        if (delta != null) {
+            delta.add(health, heartCount, sign);
+        } else {
+            Delta single = new Delta(null);
+            single.add(health, heartCount, sign);
+            apply(single);
+        }
+    }
+
+    // Одна дельта на транзакцию, применяется после коммита; null вне транзакции
+    private Delta pendingDelta() {
+        return transactionCallbacks.perTransaction(PENDING_DELTA,
+                () -> new Delta(spaceMarineDAO.currentTransactionId()), this::apply);
+    }
+
+    // Дельта, уже учтенная в снимке текущего дерева (коммит успел до пересборки,
+    // а afterCompletion — нет), пропускается
+    void apply(Delta delta) {
+        if (delta.resync) {
+            scheduler.execute(this::rebuild);
+            return;
+        }
+        synchronized (this) {
+            if (appliedDuringRebuild != null) {
+                appliedDuringRebuild.add(delta);
+            }
+            if (snapshot == null || !delta.isIn(snapshot)) {
+                heartCountSum += delta.addTo(healthTree);
+            }
+        }
+    }
+
+    static class Delta {
+        private final Map<Integer, Long> healthCounts = new HashMap<>();
+        private long heartCountSum;
+        private boolean resync;
+        // xid транзакции; null для изменений вне транзакции, они считаются не вошедшими в снимок
+        private final Long xid;
+
+        Delta(Long xid) {
+            this.xid = xid;
+        }
+
+        void add(int health, int heartCount, int sign) {
+            healthCounts.merge(health, (long) sign, Long::sum);
+            heartCountSum += (long) sign * heartCount;
+        }
+
+        private boolean isIn(XactSnapshot snapshot) {
+            return xid != null && snapshot.includes(xid);
+        }
+
+        // Возвращает изменение суммы heartCount
+        private long addTo(HealthFenwickTree tree) {
+            for (Map.Entry<Integer, Long> entry : healthCounts.entrySet()) {
+                if (entry.getValue() != 0) {
+                    tree.add(entry.getKey(), entry.getValue());
+                }
+            }
+            return heartCountSum;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package se.ifmo.ru.lab1.stats;
+
+import java.util.HashSet;
+import java.util.Set;
+
+// Снимок PostgreSQL в текстовом виде pg_current_snapshot(): "xmin:xmax:xip1,xip2,...".
+// Транзакция видна в снимке, если закоммичена до его взятия: xid < xmax и xid не из списка
+// активных. Вызывающий проверяет только закоммиченные транзакции, поэтому откаты не учитываются.
+final class XactSnapshot {
+
+    private final long xmin;
+    private final long xmax;
+    private final Set<Long> inProgress;
+
+    private XactSnapshot(long xmin, long xmax, Set<Long> inProgress) {
+        this.xmin = xmin;
+        this.xmax = xmax;
+        this.inProgress = inProgress;
+    }
+
+    static XactSnapshot parse(String text) {
+        String[] parts = text.split(":", -1);
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("Malformed snapshot: " + text);
+        }
+        Set<Long> inProgress = new HashSet<>();
+        if (!parts[2].isEmpty()) {
+            for (String xid : parts[2].split(",")) {
+                inProgress.add(Long.parseLong(xid));
+            }
+        }
+        return new XactSnapshot(Long.parseLong(parts[0]), Long.parseLong(parts[1]), inProgress);
+    }
+
+    boolean includes(long xid) {
+        if (xid < xmin) {
+            return true;
+        }
+        return xid < xmax && !inProgress.contains(xid);
+    }
+}
@@ -0,0 +1,88 @@
+package se.ifmo.ru.lab1.transaction;
+
+import jakarta.annotation.Resource;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.transaction.Status;
+import jakarta.transaction.Synchronization;
+import jakarta.transaction.TransactionSynchronizationRegistry;
+
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+
+// Действия, привязанные к завершению текущей JTA-транзакции. Вне транзакции выполняются сразу.
+@ApplicationScoped
+public class TransactionCallbacks {
+
+    @Resource
+    private TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+
+    public boolean isTransactionActive() {
+        return transactionSynchronizationRegistry.getTransactionStatus() == Status.STATUS_ACTIVE;
+    }
+
+    // Только после успешного коммита; при откате действие отбрасывается
+    public void afterCommit(Runnable action) {
+        if (!isTransactionActive()) {
+            action.run();
+            return;
+        }
+        register(status -> {
+            if (status == Status.STATUS_COMMITTED) {
+                action.run();
+            }
+        });
+    }
+
+    // Сброс кэшей: сразу, чтобы текущая транзакция видела свои изменения, и повторно после
+    // завершения (коммит или откат), чтобы в кэше не осталась версия, прочитанная параллельным
+    // запросом до коммита
+    public void nowAndAfterCompletion(Runnable action) {
+        action.run();
+        if (isTransactionActive()) {
+            register(status -> action.run());
+        }
+    }
+
+    // Один объект на транзакцию под ключом key; onCommit получает его после коммита.
+    // null вне транзакции
+    public <T> T perTransaction(Object key, Supplier<T> factory, Consumer<T> onCommit) {
+        return perTransaction(key, factory, onCommit, resource -> {
+        });
+    }
+
+    // То же, но onRollback получает объект, если транзакция не закоммичена
+    @SuppressWarnings("unchecked")
+    public <T> T perTransaction(Object key, Supplier<T> factory, Consumer<T> onCommit, Consumer<T> onRollback) {
+        if (!isTransactionActive()) {
+            return null;
+        }
+        T resource = (T) transactionSynchronizationRegistry.getResource(key);
+        if (resource == null) {
+            T created = factory.get();
+            transactionSynchronizationRegistry.putResource(key, created);
+            register(status -> {
+                if (status == Status.STATUS_COMMITTED) {
+                    onCommit.accept(created);
+                } else {
+                    onRollback.accept(created);
+                }
+            });
+            resource = created;
+        }
+        return resource;
+    }
+
+    private void register(IntConsumer callback) {
+        transactionSynchronizationRegistry.registerInterposedSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                callback.accept(status);
+            }
+        });
+    }
+}
@@ -1,38 +1,37 @@
 package se.ifmo.ru.lab1.ws;
 
+import jakarta.inject.Inject;
 import jakarta.websocket.OnClose;
+import jakarta.websocket.OnError;
 import jakarta.websocket.OnOpen;
 import jakarta.websocket.Session;
 import jakarta.websocket.server.ServerEndpoint;
 import jakarta.websocket.OnMessage;
 
-import java.io.IOException;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-
 @ServerEndpoint("/ws/marines")
 public class SpaceMarineWebSocket {
-    private static final Set<Session> sessions = ConcurrentHashMap.newKeySet();
+
+    @Inject
+    private WebSocketDispatcher dispatcher;
 
     @OnOpen
     public void onOpen(Session session) {
-        sessions.add(session);
+        dispatcher.register(session);
     }
 
     @OnClose
     public void onClose(Session session) {
-        sessions.remove(session);
+        dispatcher.unregister(session);
     }
 
-    @OnMessage
-    public void onMessage(String message, Session session) throws IOException {
-        // Можно реализовать логику от клиента, например "subscribe to events"
-        session.getBasicRemote().sendText("ACK: " + message);
+    @OnError
+    public void onError(Session session, Throwable error) {
+        dispatcher.unregister(session);
     }
 
-    public static void broadcast(String message) {
-        for (Session session : sessions) {
-            session.getAsyncRemote().sendText(message);
-        }
+    // Подписка на часть событий, см. SubscriptionRequest
+    @OnMessage
+    public void onMessage(String message, Session session) {
+        dispatcher.subscribe(session, message);
     }
 }
@@ -0,0 +1,192 @@
+package se.ifmo.ru.lab1.ws;
+
+import se.ifmo.ru.lab1.dto.ChangeEvent;
+import se.ifmo.ru.lab1.dto.SpaceMarineDTO;
+import se.ifmo.ru.lab1.dto.SubscriptionRequest;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Индекс подписок сессий: по типу сущности, id ордена и id десантника. Получатели события
+// выбираются поиском по индексу, без перебора всех сессий. Сессия без подписки получает все события.
+// Изменения подписок редки и выполняются под общей блокировкой; поиск читает конкурентные множества
+// без блокировки.
+class SubscriptionIndex<S> {
+
+    private static final Set<String> ENTITIES =
+            Set.of(ChangeEvent.SPACE_MARINE, ChangeEvent.CHAPTER, ChangeEvent.COORDINATES);
+    private static final int MAX_IDS = 1000;
+
+    private final Set<S> unfiltered = ConcurrentHashMap.newKeySet();
+    private final Map<String, Set<S>> byEntity = new ConcurrentHashMap<>();
+    private final Map<Long, Set<S>> byChapter = new ConcurrentHashMap<>();
+    private final Map<Integer, Set<S>> byMarine = new ConcurrentHashMap<>();
+    // Сессии с подпиской (для событий "changed" без подробностей)
+    private final Set<S> filtered = ConcurrentHashMap.newKeySet();
+    private final Map<S, Subscription> subscriptions = new HashMap<>();
+
+    public synchronized void add(S session) {
+        unfiltered.add(session);
+    }
+
+    public synchronized void remove(S session) {
+        unfiltered.remove(session);
+        Subscription old = subscriptions.remove(session);
+        if (old != null) {
+            unindex(session, old);
+        }
+    }
+
+    // IllegalArgumentException для некорректного запроса; подписка сессии при этом не меняется
+    public synchronized void apply(S session, SubscriptionRequest request) {
+        String type = request.getType() == null ? "" : request.getType();
+        switch (type) {
+            case "subscribe":
+                replace(session, new Subscription(
+                        entities(request.getEntities()),
+                        ids(request.getChapterIds(), "chapterIds"),
+                        ids(request.getMarineIds(), "marineIds"),
+                        ids(request.getPageIds(), "pageIds")));
+                break;
+            case "page":
+                Subscription current = subscriptions.get(session);
+                replace(session, new Subscription(
+                        current != null ? current.entities : Set.of(),
+                        current != null ? current.chapterIds : Set.of(),
+                        current != null ? current.marineIds : Set.of(),
+                        ids(request.getPageIds(), "pageIds")));
+                break;
+            case "unsubscribe":
+                Subscription old = subscriptions.remove(session);
+                if (old != null) {
+                    unindex(session, old);
+                }
+                unfiltered.add(session);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown message type: " + request.getType()
+                        + " (expected subscribe, page or unsubscribe)");
+        }
+    }
+
+    public Set<S> match(ChangeEvent event) {
+        Set<S> targets = new LinkedHashSet<>(unfiltered);
+        addAll(targets, byEntity.get(event.getEntity()));
+        if (ChangeEvent.SPACE_MARINE.equals(event.getEntity())) {
+            if ("changed".equals(event.getAction())) {
+                // Неизвестно, какие десантники изменились: событие нужно всем, кто следит за десантниками
+                targets.addAll(filtered);
+                return targets;
+            }
+            if (event.getId() instanceof Integer id) {
+                addAll(targets, byMarine.get(id));
+            }
+            if (event.getIds() != null) {
+                for (Object id : event.getIds()) {
+                    addAll(targets, byMarine.get(id));
+                }
+            }
+            // Новый орден — из data, прежний (при удалении или переводе) — из previousChapterId
+            if (event.getData() instanceof SpaceMarineDTO marine && marine.getChapter() != null) {
+                addAll(targets, byChapter.get(marine.getChapter().getId()));
+            }
+            if (event.getPreviousChapterId() != null) {
+                addAll(targets, byChapter.get(event.getPreviousChapterId()));
+            }
+        } else if (ChangeEvent.CHAPTER.equals(event.getEntity()) && event.getId() instanceof Long id) {
+            // Изменение или удаление ордена касается и его десантников
+            addAll(targets, byChapter.get(id));
+        }
+        return targets;
+    }
+
+    private void replace(S session, Subscription subscription) {
+        Subscription old = subscriptions.put(session, subscription);
+        if (old != null) {
+            unindex(session, old);
+        }
+        unfiltered.remove(session);
+        filtered.add(session);
+        for (String entity : subscription.entities) {
+            byEntity.computeIfAbsent(entity, key -> ConcurrentHashMap.newKeySet()).add(session);
+        }
+        for (Long chapterId : subscription.chapterIds) {
+            byChapter.computeIfAbsent(chapterId, key -> ConcurrentHashMap.newKeySet()).add(session);
+        }
+        for (Integer marineId : subscription.allMarineIds()) {
+            byMarine.computeIfAbsent(marineId, key -> ConcurrentHashMap.newKeySet()).add(session);
+        }
+    }
+
+    private void unindex(S session, Subscription subscription) {
+        filtered.remove(session);
+        for (String entity : subscription.entities) {
+            removeFrom(byEntity, entity, session);
+        }
+        for (Long chapterId : subscription.chapterIds) {
+            removeFrom(byChapter, chapterId, session);
+        }
+        for (Integer marineId : subscription.allMarineIds()) {
+            removeFrom(byMarine, marineId, session);
+        }
+    }
+
+    private static <K, S> void removeFrom(Map<K, Set<S>> index, K key, S session) {
+        Set<S> sessions = index.get(key);
+        if (sessions != null) {
+            sessions.remove(session);
+            if (sessions.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    private static <S> void addAll(Set<S> targets, Collection<S> sessions) {
+        if (sessions != null) {
+            targets.addAll(sessions);
+        }
+    }
+
+    private static Set<String> entities(List<String> values) {
+        if (values == null) {
+            return Set.of();
+        }
+        for (String entity : values) {
+            if (entity == null || !ENTITIES.contains(entity)) {
+                throw new IllegalArgumentException("Unknown entity: " + entity + " (expected " + ENTITIES + ")");
+            }
+        }
+        return Set.copyOf(values);
+    }
+
+    private static <T> Set<T> ids(List<T> values, String field) {
+        if (values == null) {
+            return Set.of();
+        }
+        if (values.size() > MAX_IDS) {
+            throw new IllegalArgumentException(field + " may contain at most " + MAX_IDS + " ids");
+        }
+        Set<T> ids = new HashSet<>(values);
+        ids.remove(null);
+        return Set.copyOf(ids);
+    }
+
+    private record Subscription(Set<String> entities, Set<Long> chapterIds,
+                                Set<Integer> marineIds, Set<Integer> pageIds) {
+
+        private Set<Integer> allMarineIds() {
+            if (pageIds.isEmpty()) {
+                return marineIds;
+            }
+            Set<Integer> all = new HashSet<>(marineIds);
+            all.addAll(pageIds);
+            return all;
+        }
+    }
+}
@@ -0,0 +1,445 @@
+package se.ifmo.ru.lab1.ws;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
+import jakarta.enterprise.concurrent.ManagedScheduledExecutorService;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.context.Initialized;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.event.TransactionPhase;
+import jakarta.json.bind.Jsonb;
+import jakarta.json.bind.JsonbBuilder;
+import jakarta.json.bind.JsonbException;
+import jakarta.websocket.CloseReason;
+import jakarta.websocket.Session;
+import se.ifmo.ru.lab1.dto.ChangeEvent;
+import se.ifmo.ru.lab1.dto.SubscriptionRequest;
+import se.ifmo.ru.lab1.dto.WebSocketStatisticsResponse;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Рассылка событий WebSocket вне потока запроса. Сервисы публикуют ChangeEvent через CDI Event внутри
+// своей транзакции; onCommitted получает его только после успешного коммита (откаченные изменения
+// клиентам не приходят) и, как и broadcast, только кладет событие во входную очередь. Одна задача
+// на ManagedExecutorService в порядке поступления один раз сериализует каждое событие в JSON
+// и раскладывает по очередям подписанных на него сессий (SubscriptionIndex).
+// Номер seq ведется отдельно для каждой сессии. У каждой сессии не больше одной незавершенной отправки и не больше MAX_QUEUED
+// ожидающих сообщений. При переполнении действует политика -Dlab1.ws.overflowPolicy:
+//   coalesce (по умолчанию) — очередь заменяется одним сообщением resync, клиент перечитывает данные;
+//   drop — новое сообщение отбрасывается.
+// Сессия, у которой отправка не завершилась за SEND_TIMEOUT_MS, завершилась ошибкой или очередь
+// переполнилась MAX_OVERFLOWS раз подряд, закрывается: клиент переподключится и перечитает данные.
+// События сессии копятся в течение окна -Dlab1.ws.coalesceWindowMs (по умолчанию 50 мс, 0 — без
+// окна) и уходят одним кадром {"seq":N,"action":"batch","events":[...]}; одно событие уходит как есть.
+// Повторные события об одном объекте в окне схлопываются в последнее и встают на его место в кадре
+// (created + updated дают created с новыми данными, created + deleted не дают ничего), "changed" —
+// одно на тип сущности. Больше MAX_BATCH объектов за окно — resync.
+@ApplicationScoped
+public class WebSocketDispatcher {
+
+    private static final Logger LOGGER = Logger.getLogger(WebSocketDispatcher.class.getName());
+    private static final String OVERFLOW_POLICY_PROPERTY = "lab1.ws.overflowPolicy";
+    private static final String COALESCE_WINDOW_PROPERTY = "lab1.ws.coalesceWindowMs";
+    private static final long DEFAULT_COALESCE_WINDOW_MS = 50;
+    private static final int MAX_BATCH = 256;
+    private static final int MAX_QUEUED = 64;
+    private static final int MAX_OVERFLOWS = 3;
+    private static final long SEND_TIMEOUT_MS = 10_000;
+    private static final long SWEEP_INTERVAL_MS = 1_000;
+    // Клиент перечитывает все открытые списки (main.js, reusable.js)
+    static final String RESYNC_MESSAGE = "{\"action\":\"resync\"}";
+
+    @Resource
+    private ManagedExecutorService executor;
+
+    @Resource
+    private ManagedScheduledExecutorService scheduler;
+
+    private final boolean coalesce = !"drop".equalsIgnoreCase(System.getProperty(OVERFLOW_POLICY_PROPERTY, "coalesce"));
+    private final Map<String, Outbox> outboxes = new ConcurrentHashMap<>();
+    private final Queue<ChangeEvent> inbound = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final SubscriptionIndex<Outbox> subscriptions = new SubscriptionIndex<>();
+    private final Jsonb jsonb = JsonbBuilder.create();
+    private final long coalesceWindowMs = Long.getLong(COALESCE_WINDOW_PROPERTY, DEFAULT_COALESCE_WINDOW_MS);
+    // Сессии с накопленными событиями; все окна сбрасываются одной задачей планировщика
+    private final Set<Outbox> pendingFlush = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    // Событий, адресованных сессиям, и отправленных им кадров с событиями
+    private final LongAdder eventsQueued = new LongAdder();
+    private final LongAdder framesSent = new LongAdder();
+    // Кадров, не отправленных благодаря объединению разных объектов в один batch
+    private final LongAdder framesSaved = new LongAdder();
+    private final LongAdder duplicatesMerged = new LongAdder();
+    // Событий, замененных resync из-за переполнения окна
+    private final LongAdder eventsDropped = new LongAdder();
+    private ScheduledFuture<?> sweepTask;
+
+    void onStartup(@Observes @Initialized(ApplicationScoped.class) Object event) {
+        sweepTask = scheduler.scheduleWithFixedDelay(this::evictSlowConsumers,
+                SWEEP_INTERVAL_MS, SWEEP_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (sweepTask != null) {
+            sweepTask.cancel(false);
+        }
+    }
+
+    public void register(Session session) {
+        session.getAsyncRemote().setSendTimeout(SEND_TIMEOUT_MS);
+        Outbox outbox = new Outbox(session);
+        outboxes.put(session.getId(), outbox);
+        subscriptions.add(outbox);
+    }
+
+    public void unregister(Session session) {
+        Outbox outbox = outboxes.remove(session.getId());
+        if (outbox != null) {
+            subscriptions.remove(outbox);
+        }
+    }
+
+    // Сообщение клиента (SubscriptionRequest); об ошибке клиент узнает сообщением {"action":"error"}
+    public void subscribe(Session session, String message) {
+        Outbox outbox = outboxes.get(session.getId());
+        if (outbox == null) {
+            return;
+        }
+        try {
+            SubscriptionRequest request;
+            try {
+                request = jsonb.fromJson(message, SubscriptionRequest.class);
+            } catch (JsonbException e) {
+                throw new IllegalArgumentException("Invalid subscription message: " + e.getMessage());
+            }
+            if (request == null) {
+                throw new IllegalArgumentException("Empty subscription message");
+            }
+            subscriptions.apply(outbox, request);
+        } catch (IllegalArgumentException e) {
+            outbox.reply(jsonb.toJson(Map.of("action", "error", "message", String.valueOf(e.getMessage()))));
+        }
+    }
+
+    public WebSocketStatisticsResponse getStatistics() {
+        return new WebSocketStatisticsResponse(outboxes.size(), coalesceWindowMs, eventsQueued.sum(),
+                framesSent.sum(), framesSaved.sum(), duplicatesMerged.sum(), eventsDropped.sum());
+    }
+
+    // Вызывается в потоке, завершившем транзакцию (или сразу, если транзакции нет)
+    void onCommitted(@Observes(during = TransactionPhase.AFTER_SUCCESS) ChangeEvent event) {
+        broadcast(event);
+    }
+
+    // Не ждет ни раскладки, ни отправки
+    public void broadcast(ChangeEvent event) {
+        inbound.add(event);
+        scheduleDrain();
+    }
+
+    private void scheduleDrain() {
+        if (!draining.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            draining.set(false);
+            LOGGER.log(Level.WARNING, "WebSocket dispatch rejected, " + inbound.size() + " messages pending", e);
+        }
+    }
+
+    private void drain() {
+        ChangeEvent event;
+        while ((event = inbound.poll()) != null) {
+            String body;
+            try {
+                body = jsonb.toJson(event);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Failed to serialize WebSocket event", e);
+                continue;
+            }
+            Object key = coalesceKey(event);
+            for (Outbox outbox : subscriptions.match(event)) {
+                eventsQueued.increment();
+                if (coalesceWindowMs <= 0) {
+                    framesSent.increment();
+                    outbox.offer(body);
+                } else {
+                    outbox.collect(key, event, body);
+                    pendingFlush.add(outbox);
+                }
+            }
+        }
+        draining.set(false);
+        if (!pendingFlush.isEmpty()) {
+            scheduleFlush();
+        }
+        // Сообщение могло прийти между последним poll и сбросом флага
+        if (!inbound.isEmpty()) {
+            scheduleDrain();
+        }
+    }
+
+    // Событие о конкретном объекте схлопывается с предыдущим о нем же; "changed" — с предыдущим
+    // "changed" той же сущности. null — событие не схлопывается (пакетное создание)
+    private static Object coalesceKey(ChangeEvent event) {
+        if (event.getId() != null) {
+            return event.getEntity() + ":" + event.getId();
+        }
+        if ("changed".equals(event.getAction())) {
+            return event.getEntity() + ":changed";
+        }
+        return null;
+    }
+
+    private void scheduleFlush() {
+        if (!flushScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            scheduler.schedule(this::flush, coalesceWindowMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            flushScheduled.set(false);
+            LOGGER.log(Level.WARNING, "WebSocket flush rejected, " + pendingFlush.size() + " sessions pending", e);
+        }
+    }
+
+    private void flush() {
+        flushScheduled.set(false);
+        Iterator<Outbox> iterator = pendingFlush.iterator();
+        while (iterator.hasNext()) {
+            Outbox outbox = iterator.next();
+            // Сначала снимаем отметку: событие, пришедшее во время сброса, отметит сессию заново
+            iterator.remove();
+            outbox.flush();
+        }
+        if (!pendingFlush.isEmpty()) {
+            scheduleFlush();
+        }
+    }
+
+    private void evictSlowConsumers() {
+        long now = System.currentTimeMillis();
+        for (Outbox outbox : outboxes.values()) {
+            if (outbox.isStalled(now)) {
+                evict(outbox, "send timed out");
+            }
+        }
+    }
+
+    private void evict(Outbox outbox, String reason) {
+        if (outboxes.remove(outbox.session.getId(), outbox)) {
+            subscriptions.remove(outbox);
+            LOGGER.info("Closing slow WebSocket session " + outbox.session.getId() + ": " + reason);
+            try {
+                outbox.session.close(new CloseReason(CloseReason.CloseCodes.TRY_AGAIN_LATER, "Slow consumer"));
+            } catch (IOException | IllegalStateException e) {
+                LOGGER.log(Level.FINE, "Failed to close WebSocket session " + outbox.session.getId(), e);
+            }
+        }
+    }
+
+    private final class Outbox {
+        private final Session session;
+        private final Deque<String> queue = new ArrayDeque<>();
+        private boolean sending;
+        private long sendStartedAt;
+        private int overflows;
+        // Номер последнего кадра этой сессии, включая отброшенные
+        private long seq;
+        // События текущего окна в порядке последнего события каждого объекта
+        private final Map<Object, Pending> pending = new LinkedHashMap<>();
+        // В окне слишком много событий: вместо них уйдет resync
+        private boolean pendingResync;
+
+        private Outbox(Session session) {
+            this.session = session;
+        }
+
+        // body — событие в JSON без seq
+        private void offer(String body) {
+            boolean slow;
+            synchronized (this) {
+                slow = enqueue(body) && overflows >= MAX_OVERFLOWS;
+            }
+            if (slow) {
+                evict(this, "queue overflowed " + MAX_OVERFLOWS + " times in a row");
+                return;
+            }
+            sendNext();
+        }
+
+        private void collect(Object key, ChangeEvent event, String body) {
+            synchronized (this) {
+                if (pendingResync) {
+                    eventsDropped.increment();
+                    return;
+                }
+                Object slot = key != null ? key : new Object();
+                // remove + put: объект переезжает в конец кадра, на место своего последнего события
+                Pending previous = pending.remove(slot);
+                if (previous != null) {
+                    duplicatesMerged.increment();
+                    // Клиент еще не видел созданный объект: он должен получить created с новыми данными,
+                    // а если объект уже удален — ничего
+                    if ("created".equals(previous.event.getAction()) && "updated".equals(event.getAction())) {
+                        pending.put(slot, new Pending(
+                                ChangeEvent.created(event.getEntity(), event.getId(), event.getData()), null));
+                        return;
+                    }
+                    if ("created".equals(previous.event.getAction()) && "deleted".equals(event.getAction())) {
+                        return;
+                    }
+                } else if (pending.size() >= MAX_BATCH) {
+                    eventsDropped.add(pending.size() + 1);
+                    pending.clear();
+                    pendingResync = true;
+                    return;
+                }
+                pending.put(slot, new Pending(event, body));
+            }
+        }
+
+        private void flush() {
+            boolean resync;
+            String frame = null;
+            synchronized (this) {
+                resync = pendingResync;
+                if (!resync) {
+                    if (pending.isEmpty()) {
+                        return;
+                    }
+                    frame = batchFrame();
+                    framesSaved.add(pending.size() - 1);
+                }
+                pendingResync = false;
+                pending.clear();
+            }
+            if (resync) {
+                reply(RESYNC_MESSAGE);
+                return;
+            }
+            framesSent.increment();
+            offer(frame);
+        }
+
+        // Вызывается под блокировкой сессии
+        private String batchFrame() {
+            if (pending.size() == 1) {
+                return pending.values().iterator().next().body();
+            }
+            StringBuilder frame = new StringBuilder("{\"action\":\"batch\",\"events\":[");
+            boolean first = true;
+            for (Pending event : pending.values()) {
+                if (!first) {
+                    frame.append(',');
+                }
+                frame.append(event.body());
+                first = false;
+            }
+            return frame.append("]}").toString();
+        }
+
+        // Ответ на сообщение клиента, вне нумерации событий
+        private void reply(String message) {
+            synchronized (this) {
+                if (queue.size() >= MAX_QUEUED) {
+                    return;
+                }
+                queue.addLast(message);
+            }
+            sendNext();
+        }
+
+        // true, если очередь была переполнена. Номер занимается и отброшенным событием,
+        // чтобы клиент увидел пропуск
+        private boolean enqueue(String body) {
+            long number = ++seq;
+            if (queue.size() < MAX_QUEUED) {
+                queue.addLast("{\"seq\":" + number + "," + body.substring(1));
+                return false;
+            }
+            overflows++;
+            if (coalesce) {
+                queue.clear();
+                queue.addLast(RESYNC_MESSAGE);
+            }
+            return true;
+        }
+
+        private void sendNext() {
+            String message;
+            synchronized (this) {
+                if (sending || queue.isEmpty()) {
+                    return;
+                }
+                message = queue.pollFirst();
+                sending = true;
+                sendStartedAt = System.currentTimeMillis();
+            }
+            try {
+                session.getAsyncRemote().sendText(message, result -> {
+                    synchronized (this) {
+                        sending = false;
+                        if (result.isOK()) {
+                            overflows = 0;
+                        }
+                    }
+                    if (result.isOK()) {
+                        sendNext();
+                    } else {
+                        evict(this, "send failed: " + result.getException());
+                    }
+                });
+            } catch (IllegalStateException e) {
+                // Сессия уже закрыта
+                synchronized (this) {
+                    sending = false;
+                }
+                evict(this, "session closed");
+            }
+        }
+
+        private synchronized boolean isStalled(long now) {
+            return sending && now - sendStartedAt > SEND_TIMEOUT_MS;
+        }
+    }
+
+    // body == null — событие получено слиянием и сериализуется при отправке
+    private final class Pending {
+        private final ChangeEvent event;
+        private String body;
+
+        private Pending(ChangeEvent event, String body) {
+            this.event = event;
+            this.body = body;
+        }
+
+        private String body() {
+            if (body == null) {
+                body = jsonb.toJson(event);
+            }
+            return body;
+        }
+    }
+}
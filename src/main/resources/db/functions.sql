@@ -1,23 +1,33 @@
 -- Database functions for special operations
 
 -- Function to calculate average heart count
+-- Reads the trigger-maintained histogram (see schema.sql): one row per distinct health value
 CREATE OR REPLACE FUNCTION get_average_heart_count()
 RETURNS DECIMAL AS $$
 BEGIN
-    RETURN (SELECT AVG(heart_count) FROM space_marines);
+    RETURN (SELECT SUM(heart_count_sum)::DECIMAL / NULLIF(SUM(marines), 0)
+            FROM space_marine_health_stats);
 END;
-$$ LANGUAGE plpgsql;
+$$ LANGUAGE plpgsql STABLE;
 
 -- Function to count marines with health less than threshold
+-- Range scan over the primary key of the histogram instead of a scan of space_marines
 CREATE OR REPLACE FUNCTION count_marines_by_health(health_threshold INTEGER)
 RETURNS INTEGER AS $$
 BEGIN
-    RETURN (SELECT COUNT(*) FROM space_marines WHERE health < health_threshold);
+    RETURN (SELECT COALESCE(SUM(marines), 0)
+            FROM space_marine_health_stats
+            WHERE health < health_threshold);
 END;
-$$ LANGUAGE plpgsql;
+$$ LANGUAGE plpgsql STABLE;
 
 -- Function to find marines by name containing substring
-CREATE OR REPLACE FUNCTION find_marines_by_name(name_substring VARCHAR)
+-- Keyset pagination by id: rows with id > after_id, at most max_rows (NULL means no limit).
+-- The old single-argument version is dropped so calls do not become ambiguous.
+DROP FUNCTION IF EXISTS find_marines_by_name(VARCHAR);
+CREATE OR REPLACE FUNCTION find_marines_by_name(name_substring VARCHAR,
+                                                after_id INTEGER DEFAULT NULL,
+                                                max_rows INTEGER DEFAULT NULL)
 RETURNS TABLE(
     id INTEGER,
     name VARCHAR,
@@ -29,8 +39,10 @@ RETURNS TABLE(
     creation_date TIMESTAMP WITH TIME ZONE
 ) AS $$
 BEGIN
-    RETURN QUERY
-    SELECT 
+    -- EXECUTE plans the query for the actual pattern, so idx_space_marines_name_trgm is used;
+    -- % and _ in the substring are escaped and matched literally
+    RETURN QUERY EXECUTE
+    'SELECT 
         sm.id,
         sm.name,
         sm.health,
@@ -41,9 +53,15 @@ BEGIN
         sm.creation_date
     FROM space_marines sm
     LEFT JOIN chapters c ON sm.chapter_id = c.id
-    WHERE sm.name ILIKE '%' || name_substring || '%';
+    WHERE sm.name ILIKE $1
+      AND ($2 IS NULL OR sm.id > $2)
+    ORDER BY sm.id
+    LIMIT $3'
+    USING '%' || replace(replace(replace(name_substring, '\', '\\'), '%', '\%'), '_', '\_') || '%',
+          after_id,
+          max_rows;
 END;
-$$ LANGUAGE plpgsql;
+$$ LANGUAGE plpgsql STABLE;
 
 -- Function to create new chapter
 CREATE OR REPLACE FUNCTION create_new_chapter(chapter_name VARCHAR, marines_count INTEGER)
@@ -70,3 +88,38 @@ BEGIN
     RETURN FOUND;
 END;
 $$ LANGUAGE plpgsql;
+
+-- Function to merge coordinates rows with equal (x, y): marines are repointed to the row with
+-- the smallest id and the other rows are deleted. NULL y values are treated as equal.
+-- The lock blocks concurrent inserts/updates of coordinates until the calling transaction ends.
+CREATE OR REPLACE FUNCTION compact_coordinates()
+RETURNS TABLE(merged_points BIGINT, removed_rows BIGINT, repointed_marines BIGINT) AS $$
+DECLARE
+    v_merged BIGINT;
+    v_removed BIGINT;
+    v_repointed BIGINT;
+BEGIN
+    LOCK TABLE coordinates IN SHARE ROW EXCLUSIVE MODE;
+
+    DROP TABLE IF EXISTS coordinates_duplicates;
+    CREATE TEMP TABLE coordinates_duplicates ON COMMIT DROP AS
+    SELECT id, keep_id
+    FROM (SELECT id, min(id) OVER (PARTITION BY x, y) AS keep_id FROM coordinates) c
+    WHERE id <> keep_id;
+
+    SELECT count(DISTINCT keep_id) INTO v_merged FROM coordinates_duplicates;
+
+    UPDATE space_marines sm
+    SET coordinates_id = d.keep_id
+    FROM coordinates_duplicates d
+    WHERE sm.coordinates_id = d.id;
+    GET DIAGNOSTICS v_repointed = ROW_COUNT;
+
+    DELETE FROM coordinates c
+    USING coordinates_duplicates d
+    WHERE c.id = d.id;
+    GET DIAGNOSTICS v_removed = ROW_COUNT;
+
+    RETURN QUERY SELECT v_merged, v_removed, v_repointed;
+END;
+$$ LANGUAGE plpgsql;
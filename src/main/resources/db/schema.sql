@@ -0,0 +1,94 @@
+-- Schema changes that hbm2ddl "update" does not apply to existing tables
+
+-- Pooled id allocation: sequences must advance by the entity allocationSize (50),
+-- otherwise Hibernate refuses to start with an increment size mismatch
+ALTER SEQUENCE IF EXISTS space_marine_id_seq INCREMENT BY 50;
+ALTER SEQUENCE IF EXISTS chapter_id_seq INCREMENT BY 50;
+ALTER SEQUENCE IF EXISTS coordinates_id_seq INCREMENT BY 50;
+
+-- Name search. CONCURRENTLY keeps the table writable while the index builds on a large table
+-- (psql runs each statement in its own transaction, which CONCURRENTLY requires).
+-- LIKE/ILIKE '%x%' (findByNameContaining, find_marines_by_name): trigram GIN index
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_space_marines_name_trgm
+    ON space_marines USING gin (name gin_trgm_ops);
+-- lower(name) = ? (nameFilter of the marine list and export)
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_space_marines_lower_name
+    ON space_marines (lower(name));
+
+-- The chapter_id foreign-key index is superseded by idx_space_marines_chapter_health_id
+-- (chapter_id, health, id), which hbm2ddl creates from the entity mapping
+DROP INDEX CONCURRENTLY IF EXISTS idx_space_marines_chapter_id;
+
+-- Nearest-neighbour (<->) and bounding-box (<@) queries over coordinates. The expression must
+-- match CoordinatesDAO.POINT exactly; rows with NULL y have no point and are not indexed
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_coordinates_point
+    ON coordinates USING gist (point(x::float8, y));
+
+-- Coordinates are interned by value: CoordinatesDAO.upsert relies on ON CONFLICT (x, y).
+-- Existing duplicates are merged first (compact_coordinates() from functions.sql), otherwise
+-- the unique index cannot be built. NULLS NOT DISTINCT (PostgreSQL 15+) makes (x, NULL) unique too
+SELECT * FROM compact_coordinates();
+CREATE UNIQUE INDEX CONCURRENTLY IF NOT EXISTS idx_coordinates_x_y_unique
+    ON coordinates (x, y) NULLS NOT DISTINCT;
+
+-- Marine statistics maintained by row-level triggers: number of marines and sum of heart_count
+-- per health value. get_average_heart_count() and count_marines_by_health() read this table.
+-- Rows are keyed by health rather than a single totals row, so concurrent writes to marines
+-- with different health values do not queue on one row lock.
+CREATE TABLE IF NOT EXISTS space_marine_health_stats (
+    health          INTEGER PRIMARY KEY,
+    marines         BIGINT  NOT NULL,
+    heart_count_sum BIGINT  NOT NULL
+);
+
+CREATE OR REPLACE FUNCTION space_marine_health_stats_apply(p_health INTEGER, p_marines INTEGER, p_heart_count BIGINT)
+RETURNS VOID AS $$
+BEGIN
+    INSERT INTO space_marine_health_stats AS s (health, marines, heart_count_sum)
+    VALUES (p_health, p_marines, p_heart_count)
+    ON CONFLICT (health) DO UPDATE
+        SET marines = s.marines + EXCLUDED.marines,
+            heart_count_sum = s.heart_count_sum + EXCLUDED.heart_count_sum;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION space_marine_health_stats_trigger()
+RETURNS TRIGGER AS $$
+BEGIN
+    -- Hibernate rewrites every column on update; unchanged statistics need no write
+    IF TG_OP = 'UPDATE' AND OLD.health = NEW.health AND OLD.heart_count = NEW.heart_count THEN
+        RETURN NULL;
+    END IF;
+    IF TG_OP IN ('UPDATE', 'DELETE') THEN
+        PERFORM space_marine_health_stats_apply(OLD.health, -1, -OLD.heart_count);
+    END IF;
+    IF TG_OP IN ('INSERT', 'UPDATE') THEN
+        PERFORM space_marine_health_stats_apply(NEW.health, 1, NEW.heart_count);
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION space_marine_health_stats_truncate()
+RETURNS TRIGGER AS $$
+BEGIN
+    TRUNCATE space_marine_health_stats;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Backfill and trigger installation in one transaction; the lock keeps writers out until
+-- the triggers are in place, so no change is counted twice or missed
+BEGIN;
+LOCK TABLE space_marines IN SHARE ROW EXCLUSIVE MODE;
+TRUNCATE space_marine_health_stats;
+INSERT INTO space_marine_health_stats (health, marines, heart_count_sum)
+SELECT health, COUNT(*), SUM(heart_count) FROM space_marines GROUP BY health;
+CREATE OR REPLACE TRIGGER space_marines_health_stats
+    AFTER INSERT OR DELETE OR UPDATE OF health, heart_count ON space_marines
+    FOR EACH ROW EXECUTE FUNCTION space_marine_health_stats_trigger();
+CREATE OR REPLACE TRIGGER space_marines_health_stats_truncate
+    AFTER TRUNCATE ON space_marines
+    FOR EACH STATEMENT EXECUTE FUNCTION space_marine_health_stats_truncate();
+COMMIT;
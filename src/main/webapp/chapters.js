@@ -22,12 +22,9 @@ document.addEventListener("DOMContentLoaded", () => {
         
         // Переопределяем wsHandler чтобы использовать наш load метод
         this.wsHandler = (message, action, id) => {
-            if (this.wsEvents.includes(action)) {
+            if (this.wsEvents.includes(action) || action === 'resync') {
                 console.log(`WebSocket event ${action} received for ${this.apiBase}`);
-                this.load();
-                if (this.loadRelated) {
-                    this.loadRelated();
-                }
+                this.scheduleReload();
             }
         };
     };
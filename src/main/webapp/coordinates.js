@@ -59,13 +59,10 @@ document.addEventListener("DOMContentLoaded", () => {
         
         // Переопределяем wsHandler чтобы использовать наш load метод
         this.wsHandler = (message, action, id) => {
-            if (this.wsEvents.includes(action)) {
+            if (this.wsEvents.includes(action) || action === 'resync') {
                 console.log(`WebSocket event ${action} received for ${this.apiBase}`);
-                // Вызываем наш переопределенный load метод
-                this.load();
-                if (this.loadRelated) {
-                    this.loadRelated();
-                }
+                // scheduleReload вызывает наш переопределенный load метод
+                this.scheduleReload();
             }
         };
     };
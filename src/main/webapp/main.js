@@ -3,7 +3,6 @@ const API_CHAPTERS = "http://localhost:8080/lab1-1.0-SNAPSHOT/api/chapters";
 const API_COORDS = "http://localhost:8080/lab1-1.0-SNAPSHOT/api/coordinates";
 
 let selectedMarine = null;
-let ws = null;
 let currentPage = 0;
 let pageSize = 10;
 let totalPages = 0;
@@ -12,65 +11,131 @@ let currentSortBy = "";
 let currentSortOrder = "asc";
 let activeSorts = []; // Массив для множественной сортировки: [{field: "name", order: "asc"}, {field: "id", order: "desc"}]
 
-// Инициализация WebSocket
-function initWebSocket() {
-    const protocol = window.location.protocol === 'https:' ? 'wss:' : 'ws:';
-    const wsUrl = `${protocol}//${window.location.host}/lab1-1.0-SNAPSHOT/ws/marines`;
-    
-    ws = new WebSocket(wsUrl);
-    
-    ws.onopen = function() {
-        console.log('WebSocket connected');
-    };
-    
-    ws.onmessage = function(event) {
-        console.log('WebSocket message:', event.data);
-        handleWebSocketMessage(event.data);
-    };
+// Соединение WebSocket открывает reusable.js; здесь — обработка событий для страницы SpaceMarine.
+// События несут новое состояние объекта, поэтому таблица и списки выбора обновляются на месте,
+// без запросов к API. Перечитываем данные только для событий без подробностей ("changed",
+// пакетное создание) и после потери событий ("resync").
+function handleWebSocketMessage(message) {
+    const parsed = window.parseWSEvent(message);
+    if (!parsed) return;
+    const { event, action } = parsed;
     
-    ws.onclose = function() {
-        console.log('WebSocket disconnected, trying to reconnect...');
-        setTimeout(initWebSocket, 3000); // Переподключение через 3 секунды
-    };
+    if (action === 'resync') {
+        if (typeof loadChaptersAndCoordinates === 'function') loadChaptersAndCoordinates();
+        if (typeof loadMarines === 'function') loadMarines();
+    } else if (action === 'batch') {
+        parsed.events.forEach(e => applyChangeEvent(e.event));
+    } else {
+        applyChangeEvent(event);
+    }
     
-    ws.onerror = function(error) {
-        console.error('WebSocket error:', error);
-    };
+    // Вызываем глобальные обработчики
+    window.notifyWSHandlers(parsed);
 }
 
-function handleWebSocketMessage(message) {
-    const [action, id] = message.split(':');
-    
-    // Вызываем специфичные обработчики для страницы SpaceMarine
-    switch(action) {
-        case 'created':
-        case 'updated':
-        case 'deleted':
-            if (typeof loadMarines === 'function') loadMarines(); // Перезагружаем таблицу SpaceMarine
+function applyChangeEvent(event) {
+    switch (event.entity) {
+        case 'spaceMarine':
+            if (event.action === 'updated' && event.data) {
+                replaceMarineRow(event.data);
+            } else if (event.action === 'created' && event.data) {
+                appendMarineRow(event.data);
+            } else if (event.action === 'deleted') {
+                removeMarineRows(m => m.id === event.id);
+            } else {
+                loadMarines();
+            }
             break;
-        case 'chapter_created':
-        case 'chapter_updated':  
-        case 'chapter_deleted':
-            if (typeof loadChaptersAndCoordinates === 'function') loadChaptersAndCoordinates();
-            if (typeof loadMarines === 'function') loadMarines();
+        case 'chapter':
+            patchSelectOption("select[name='chapterId']", event, c => c.name);
+            if (event.action === 'updated') {
+                patchMarineRows(m => m.chapter?.id === event.id, m => ({ ...m, chapter: event.data }));
+            } else if (event.action === 'deleted') {
+                // Десантники удаляются вместе с орденом
+                removeMarineRows(m => m.chapter?.id === event.id);
+            } else if (event.action === 'changed') {
+                loadChaptersAndCoordinates();
+            }
             break;
-        case 'coordinates_created':
-        case 'coordinates_updated':
-        case 'coordinates_deleted':
-            if (typeof loadChaptersAndCoordinates === 'function') loadChaptersAndCoordinates();
-            if (typeof loadMarines === 'function') loadMarines();
+        case 'coordinates':
+            patchSelectOption("select[name='coordinatesId']", event, c => `x:${c.x}, y:${c.y}`);
+            if (event.action === 'updated') {
+                patchMarineRows(m => m.coordinates?.id === event.id, m => ({ ...m, coordinates: event.data }));
+            } else if (event.action === 'deleted') {
+                // Десантники удаляются вместе с координатами
+                removeMarineRows(m => m.coordinates?.id === event.id);
+            } else if (event.action === 'changed') {
+                loadChaptersAndCoordinates();
+                loadMarines();
+            }
             break;
     }
-    
-    // Вызываем глобальные обработчики
-    if (window.globalWSHandlers) {
-        window.globalWSHandlers.forEach(handler => {
-            try {
-                handler(message, action, id);
-            } catch (e) {
-                console.error('WebSocket handler error:', e);
-            }
-        });
+}
+
+// Сервер присылает только события об открытых строках, орденах и координатах (для таблицы и
+// списков выбора). Все события о десантниках нужны лишь на последней неполной странице без
+// сортировки — туда добавляются новые строки
+function subscribeToVisibleMarines() {
+    if (!window.setWSSubscription) return;
+    const rows = marineRows();
+    const canAppend = activeSorts.length === 0 && currentPage >= totalPages - 1 && rows.length < pageSize;
+    window.setWSSubscription({
+        type: 'subscribe',
+        entities: canAppend ? ['chapter', 'coordinates', 'spaceMarine'] : ['chapter', 'coordinates'],
+        pageIds: rows.map(row => row.marineData.id)
+    });
+}
+
+function marineRows() {
+    return Array.from(document.querySelectorAll("#marineTable tbody tr")).filter(row => row.marineData);
+}
+
+function replaceMarineRow(marine) {
+    const row = marineRows().find(r => r.marineData.id === marine.id);
+    if (row) {
+        row.replaceWith(createMarineRow(marine));
+    }
+}
+
+// Новый десантник виден без перезагрузки, только если он попадает на текущую страницу:
+// порядок по id (новый id больше всех), последняя неполная страница и подходящий фильтр
+function appendMarineRow(marine) {
+    const rows = marineRows();
+    const lastPage = currentPage >= totalPages - 1;
+    const matchesFilter = !currentFilter || marine.name.toLowerCase() === currentFilter.trim().toLowerCase();
+    if (activeSorts.length === 0 && lastPage && rows.length < pageSize && matchesFilter) {
+        document.querySelector("#marineTable tbody").appendChild(createMarineRow(marine));
+        subscribeToVisibleMarines();
+    }
+}
+
+function removeMarineRows(predicate) {
+    marineRows().filter(row => predicate(row.marineData)).forEach(row => {
+        if (selectedMarine && selectedMarine.id === row.marineData.id) {
+            selectedMarine = null;
+        }
+        row.remove();
+    });
+    subscribeToVisibleMarines();
+}
+
+function patchMarineRows(predicate, patch) {
+    marineRows().filter(row => predicate(row.marineData))
+        .forEach(row => row.replaceWith(createMarineRow(patch(row.marineData))));
+}
+
+function patchSelectOption(selector, event, label) {
+    const select = document.querySelector(selector);
+    if (!select || event.id == null) return;
+    const option = Array.from(select.options).find(o => o.value === String(event.id));
+    if (event.action === 'deleted') {
+        if (option) option.remove();
+    } else if (event.data) {
+        if (option) {
+            option.textContent = label(event.data);
+        } else {
+            select.add(new Option(label(event.data), event.id));
+        }
     }
 }
 
@@ -97,8 +162,6 @@ window.removeWebSocketHandler = function(handler) {
 };
 
 document.addEventListener("DOMContentLoaded", async () => {
-    initWebSocket(); // Инициализируем WebSocket
-    
     await loadChaptersAndCoordinates();
     loadMarines();
 
@@ -330,35 +393,8 @@ async function loadMarines() {
             }
         }
 
-        sortedMarines.forEach(m => {
-            const row = document.createElement("tr");
-            row.innerHTML = `
-                <td>${m.id}</td>
-                <td class="editable" data-field="name" data-original="${m.name}">${m.name}</td>
-                <td class="editable" data-field="health" data-original="${m.health}">${m.health}</td>
-                <td class="editable" data-field="heartCount" data-original="${m.heartCount}">${m.heartCount}</td>
-                <td class="editable dropdown-field" data-field="category" data-original="${m.category ?? ''}">${m.category ?? "-"}</td>
-                <td class="editable dropdown-field" data-field="weaponType" data-original="${m.weaponType ?? ''}">${m.weaponType ?? "-"}</td>
-                <td class="editable dropdown-field" data-field="coordinatesId" data-original="${m.coordinates?.id ?? ''}">${m.coordinates ? `x:${m.coordinates.x}, y:${m.coordinates.y}` : "-"}</td>
-                <td class="editable dropdown-field" data-field="chapterId" data-original="${m.chapter?.id ?? ''}">${m.chapter?.name ?? "-"}</td>
-            `;
-            
-            // Сохраняем объект в строке для быстрого доступа
-            row.marineData = m;
-            
-            // Обработка клика для выделения
-            row.addEventListener("click", (e) => {
-                if (e.target.classList.contains('editable')) return; // Не выделяем при клике на editable поле
-                document.querySelectorAll("#marineTable tr").forEach(r => r.classList.remove("selected"));
-                row.classList.add("selected");
-                selectedMarine = m; // Сохраняем выбранного десантника
-            });
-            
-            // Добавляем обработчики для inline editing
-            setupInlineEditing(row);
-            
-            tbody.appendChild(row);
-        });
+        sortedMarines.forEach(m => tbody.appendChild(createMarineRow(m)));
+        subscribeToVisibleMarines();
         
         // Обновляем иконки сортировки после загрузки данных
         updateSortIcons();
@@ -373,6 +409,36 @@ async function loadMarines() {
     }
 }
 
+function createMarineRow(m) {
+    const row = document.createElement("tr");
+    row.innerHTML = `
+        <td>${m.id}</td>
+        <td class="editable" data-field="name" data-original="${m.name}">${m.name}</td>
+        <td class="editable" data-field="health" data-original="${m.health}">${m.health}</td>
+        <td class="editable" data-field="heartCount" data-original="${m.heartCount}">${m.heartCount}</td>
+        <td class="editable dropdown-field" data-field="category" data-original="${m.category ?? ''}">${m.category ?? "-"}</td>
+        <td class="editable dropdown-field" data-field="weaponType" data-original="${m.weaponType ?? ''}">${m.weaponType ?? "-"}</td>
+        <td class="editable dropdown-field" data-field="coordinatesId" data-original="${m.coordinates?.id ?? ''}">${m.coordinates ? `x:${m.coordinates.x}, y:${m.coordinates.y}` : "-"}</td>
+        <td class="editable dropdown-field" data-field="chapterId" data-original="${m.chapter?.id ?? ''}">${m.chapter?.name ?? "-"}</td>
+    `;
+    
+    // Сохраняем объект в строке для быстрого доступа
+    row.marineData = m;
+    
+    // Обработка клика для выделения
+    row.addEventListener("click", (e) => {
+        if (e.target.classList.contains('editable')) return; // Не выделяем при клике на editable поле
+        document.querySelectorAll("#marineTable tr").forEach(r => r.classList.remove("selected"));
+        row.classList.add("selected");
+        selectedMarine = m; // Сохраняем выбранного десантника
+    });
+    
+    // Добавляем обработчики для inline editing
+    setupInlineEditing(row);
+    
+    return row;
+}
+
 function updatePaginationControls() {
     const paginationDiv = document.getElementById("pagination");
     if (!paginationDiv) return;
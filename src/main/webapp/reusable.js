@@ -7,6 +7,16 @@ if (!window.wsInitialized) {
         
         window.ws.onopen = function() {
             console.log('WebSocket connected');
+            // Нумерация событий для нового соединения начинается заново; события, пришедшие
+            // пока соединения не было, потеряны — после переподключения страница перечитывает данные
+            window.wsLastSeq = null;
+            if (window.wsSubscription) {
+                window.ws.send(JSON.stringify(window.wsSubscription));
+            }
+            if (window.wsConnectedOnce && window.handleWSMessage) {
+                window.handleWSMessage(JSON.stringify({ action: 'resync' }));
+            }
+            window.wsConnectedOnce = true;
         };
         
         window.ws.onmessage = function(event) {
@@ -31,21 +41,77 @@ if (!window.wsInitialized) {
         };
     }
 
-    window.globalWSHandlers = window.globalWSHandlers || [];
-    window.handleWSMessage = window.handleWSMessage || function(message) {
-        const [action, id] = message.split(':');
-        
-        if (window.globalWSHandlers) {
-            window.globalWSHandlers.forEach(handler => {
+    // Событие сервера: {seq, entity, action, id, ids, data}. Возвращает событие и имя действия
+    // в прежнем формате ("created", "chapter_updated", ...). Пропуск seq означает потерю событий,
+    // такое событие превращается в "resync" — страницы перечитывают данные целиком.
+    // События, накопленные сервером за окно, приходят кадром {seq, action: "batch", events: [...]};
+    // для него возвращается action "batch" и разобранные события в events
+    window.wsLastSeq = null;
+    window.parseWSEvent = function(message) {
+        let event;
+        try {
+            event = JSON.parse(message);
+        } catch (e) {
+            return null;
+        }
+        if (event.action === 'error') {
+            console.warn('WebSocket subscription error:', event.message);
+            return null;
+        }
+        if (event.action === 'resync') {
+            window.wsLastSeq = null;
+            return { event, action: 'resync', id: undefined };
+        }
+        const gap = window.wsLastSeq !== null && event.seq !== window.wsLastSeq + 1;
+        window.wsLastSeq = event.seq;
+        if (gap) {
+            return { event, action: 'resync', id: event.id };
+        }
+        if (event.action === 'batch') {
+            return { event, action: 'batch', id: undefined, events: event.events.map(legacyWSEvent) };
+        }
+        return legacyWSEvent(event);
+    };
+
+    function legacyWSEvent(event) {
+        const action = event.entity === 'spaceMarine' ? event.action : `${event.entity}_${event.action}`;
+        return { event, action, id: event.id };
+    }
+
+    // Обработчики вызываются один раз на каждое действие кадра: страницы перечитывают данные
+    // по имени действия, и повторы внутри кадра ничего не добавляют
+    window.notifyWSHandlers = function(parsed) {
+        const events = parsed.action === 'batch'
+            ? parsed.events.filter((e, i, all) => all.findIndex(other => other.action === e.action) === i)
+            : [parsed];
+        (window.globalWSHandlers || []).forEach(handler => {
+            events.forEach(({ event, action, id }) => {
                 try {
-                    handler(message, action, id);
+                    handler(event, action, id);
                 } catch (e) {
                     console.error('WebSocket handler error:', e);
                 }
             });
+        });
+    };
+
+    // Подписка сессии на часть событий (см. SubscriptionRequest на сервере); без нее приходят все.
+    // Последняя подписка повторяется после переподключения
+    window.wsSubscription = null;
+    window.setWSSubscription = function(subscription) {
+        window.wsSubscription = subscription;
+        if (window.ws && window.ws.readyState === WebSocket.OPEN) {
+            window.ws.send(JSON.stringify(subscription));
         }
     };
 
+    window.globalWSHandlers = window.globalWSHandlers || [];
+    window.handleWSMessage = window.handleWSMessage || function(message) {
+        const parsed = window.parseWSEvent(message);
+        if (!parsed) return;
+        window.notifyWSHandlers(parsed);
+    };
+
     window.addWebSocketHandler = function(handler) {
         if (window.globalWSHandlers.indexOf(handler) === -1) {
             window.globalWSHandlers.push(handler);
@@ -118,12 +184,9 @@ class CrudPage {
     
     setupWebSocketListener() {
         this.wsHandler = (message, action, id) => {
-            if (this.wsEvents.includes(action)) {
+            if (this.wsEvents.includes(action) || action === 'resync') {
                 console.log(`WebSocket event ${action} received for ${this.apiBase}`);
-                this.load();
-                if (this.loadRelated) {
-                    this.loadRelated();
-                }
+                this.scheduleReload();
             }
         };
         
@@ -132,6 +195,19 @@ class CrudPage {
         }
     }
 
+    // Несколько событий одного кадра дают одну перезагрузку
+    scheduleReload() {
+        if (this.reloadQueued) return;
+        this.reloadQueued = true;
+        queueMicrotask(() => {
+            this.reloadQueued = false;
+            this.load();
+            if (this.loadRelated) {
+                this.loadRelated();
+            }
+        });
+    }
+
     async load() {
         try {
             const params = new URLSearchParams();
@@ -46,7 +46,57 @@ document.addEventListener("DOMContentLoaded", () => {
         }
     });
 
-    // Операция 3: Поиск по имени
+    // Операция 3: Поиск по имени (постранично, следующая страница по nextCursor)
+    let nameSearch = null;
+
+    async function loadNameSearchPage() {
+        let url = `${API_SPECIAL_OPS}/search-by-name?name=${encodeURIComponent(nameSearch.name)}`;
+        if (nameSearch.cursor) {
+            url += `&after=${encodeURIComponent(nameSearch.cursor)}`;
+        }
+        const res = await fetch(url);
+        if (!res.ok) {
+            const errorText = await res.text();
+            throw new Error(errorText || "Ошибка выполнения запроса");
+        }
+        const data = await res.json();
+        nameSearch.marines.push(...(data.marines || []));
+        nameSearch.cursor = data.nextCursor;
+        renderNameSearch();
+    }
+
+    function renderNameSearch() {
+        const resultDiv = document.getElementById("findByNameResult");
+        const listDiv = document.getElementById("findByNameList");
+        
+        if (nameSearch.marines.length === 0) {
+            listDiv.innerHTML = '<p style="color: #666;">Ничего не найдено</p>';
+        } else {
+            const suffix = nameSearch.cursor ? "+" : "";
+            let html = `<p><strong>Найдено десантников: ${nameSearch.marines.length}${suffix}</strong></p>`;
+            html += '<table class="result-table"><thead><tr><th>Имя</th><th>ID</th></tr></thead><tbody>';
+            nameSearch.marines.forEach(marine => {
+                html += `<tr><td>${marine.name}</td><td>${marine.id}</td></tr>`;
+            });
+            html += '</tbody></table>';
+            if (nameSearch.cursor) {
+                html += '<button id="findByNameMoreBtn" class="btn-secondary">Показать еще</button>';
+            }
+            listDiv.innerHTML = html;
+            const moreBtn = document.getElementById("findByNameMoreBtn");
+            if (moreBtn) {
+                moreBtn.addEventListener("click", async () => {
+                    try {
+                        await loadNameSearchPage();
+                    } catch (e) {
+                        await showAlert("Ошибка: " + e.message, "Ошибка");
+                    }
+                });
+            }
+        }
+        resultDiv.style.display = "block";
+    }
+
     document.getElementById("findByNameBtn").addEventListener("click", async () => {
         const nameValue = document.getElementById("nameSearchValue").value.trim();
         if (!nameValue) {
@@ -54,29 +104,9 @@ document.addEventListener("DOMContentLoaded", () => {
             return;
         }
         
+        nameSearch = { name: nameValue, cursor: null, marines: [] };
         try {
-            const res = await fetch(`${API_SPECIAL_OPS}/search-by-name?name=${encodeURIComponent(nameValue)}`);
-            if (!res.ok) {
-                const errorText = await res.text();
-                throw new Error(errorText || "Ошибка выполнения запроса");
-            }
-            const data = await res.json();
-            
-            const resultDiv = document.getElementById("findByNameResult");
-            const listDiv = document.getElementById("findByNameList");
-            
-            if (!data.marines || data.marines.length === 0) {
-                listDiv.innerHTML = '<p style="color: #666;">Ничего не найдено</p>';
-            } else {
-                let html = `<p><strong>Найдено десантников: ${data.marines.length}</strong></p>`;
-                html += '<table class="result-table"><thead><tr><th>Имя</th><th>ID</th></tr></thead><tbody>';
-                data.marines.forEach(marine => {
-                    html += `<tr><td>${marine[0]}</td><td>${marine[1]}</td></tr>`;
-                });
-                html += '</tbody></table>';
-                listDiv.innerHTML = html;
-            }
-            resultDiv.style.display = "block";
+            await loadNameSearchPage();
         } catch (e) {
             await showAlert("Ошибка: " + e.message, "Ошибка");
         }
@@ -0,0 +1,130 @@
+package se.ifmo.ru.lab1.dao;
+
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Order;
+import jakarta.persistence.criteria.Root;
+import org.junit.jupiter.api.Test;
+import se.ifmo.ru.lab1.entity.AstartesCategory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class KeysetCursorTest {
+
+    private final CriteriaBuilder cb = RecordingCriteria.builder();
+    private final Root<Object> root = RecordingCriteria.root(Map.of(
+            "id", Integer.class,
+            "name", String.class,
+            "health", Integer.class,
+            "category", AstartesCategory.class));
+
+    @Test
+    void encodeDecodeRoundTrip() {
+        for (String value : new String[]{"Titus", "", "a|b|c", "Тит", null}) {
+            String token = KeysetCursor.of("name", value, 42);
+            assertEquals(token, KeysetCursor.decode(token).encode());
+        }
+    }
+
+    @Test
+    void roundTripKeepsEmptyStringApartFromNull() {
+        String empty = KeysetCursor.of("name", "", 5);
+        String missing = KeysetCursor.of("name", null, 5);
+
+        assertEquals("or(greaterThan(name, ), and(equal(name, ), greaterThan(id, 5)), isNull(name))",
+                KeysetCursor.decode(empty).toPredicate(cb, root, "name", "asc").toString());
+        assertEquals("and(isNull(name), greaterThan(id, 5))",
+                KeysetCursor.decode(missing).toPredicate(cb, root, "name", "asc").toString());
+    }
+
+    @Test
+    void decodeRejectsMalformedTokens() {
+        assertThrows(IllegalArgumentException.class, () -> KeysetCursor.decode("not base64!"));
+        assertThrows(IllegalArgumentException.class, () -> KeysetCursor.decode(base64("name|42")));
+        assertThrows(IllegalArgumentException.class, () -> KeysetCursor.decode(base64("name|x|vTitus")));
+    }
+
+    @Test
+    void idOnlyCursorExposesLastId() {
+        assertEquals(17, KeysetCursor.decode(KeysetCursor.of(null, null, 17)).getLastId());
+        assertEquals(17, KeysetCursor.decode(KeysetCursor.of(" ", null, 17)).getLastId());
+        KeysetCursor sorted = KeysetCursor.decode(KeysetCursor.of("name", "Titus", 17));
+        assertThrows(IllegalArgumentException.class, sorted::getLastId);
+    }
+
+    @Test
+    void predicateWithoutSortComparesIdOnly() {
+        KeysetCursor cursor = KeysetCursor.decode(KeysetCursor.of(null, null, 17));
+
+        assertEquals("greaterThan(id, 17)", cursor.toPredicate(cb, root, null, "asc").toString());
+        assertEquals("lessThan(id, 17)", cursor.toPredicate(cb, root, "", "desc").toString());
+    }
+
+    @Test
+    void ascendingPredicateContinuesAfterKeyThenIdThenNulls() {
+        KeysetCursor cursor = KeysetCursor.decode(KeysetCursor.of("name", "Titus", 42));
+
+        assertEquals("or(greaterThan(name, Titus), and(equal(name, Titus), greaterThan(id, 42)), isNull(name))",
+                cursor.toPredicate(cb, root, "name", "asc").toString());
+    }
+
+    @Test
+    void descendingPredicateStopsBeforeNulls() {
+        KeysetCursor cursor = KeysetCursor.decode(KeysetCursor.of("name", "Titus", 42));
+
+        assertEquals("or(lessThan(name, Titus), and(equal(name, Titus), lessThan(id, 42)))",
+                cursor.toPredicate(cb, root, "name", "desc").toString());
+    }
+
+    @Test
+    void nullKeyPredicate() {
+        KeysetCursor cursor = KeysetCursor.decode(KeysetCursor.of("name", null, 42));
+
+        assertEquals("or(isNotNull(name), and(isNull(name), lessThan(id, 42)))",
+                cursor.toPredicate(cb, root, "name", "desc").toString());
+    }
+
+    @Test
+    void keyIsParsedAsFieldType() {
+        KeysetCursor health = KeysetCursor.decode(KeysetCursor.of("health", 50, 3));
+        KeysetCursor category = KeysetCursor.decode(KeysetCursor.of("category", AstartesCategory.ASSAULT, 3));
+
+        assertEquals("or(greaterThan(health, 50), and(equal(health, 50), greaterThan(id, 3)), isNull(health))",
+                health.toPredicate(cb, root, "health", "asc").toString());
+        assertEquals("or(lessThan(category, ASSAULT), and(equal(category, ASSAULT), lessThan(id, 3)))",
+                category.toPredicate(cb, root, "category", "desc").toString());
+
+        KeysetCursor broken = KeysetCursor.decode(KeysetCursor.of("health", "many", 3));
+        assertThrows(NumberFormatException.class, () -> broken.toPredicate(cb, root, "health", "asc"));
+    }
+
+    @Test
+    void predicateRejectsCursorFromAnotherSort() {
+        KeysetCursor byName = KeysetCursor.decode(KeysetCursor.of("name", "Titus", 42));
+        KeysetCursor byId = KeysetCursor.decode(KeysetCursor.of(null, null, 42));
+
+        assertThrows(IllegalArgumentException.class, () -> byName.toPredicate(cb, root, "health", "asc"));
+        assertThrows(IllegalArgumentException.class, () -> byName.toPredicate(cb, root, null, "asc"));
+        assertThrows(IllegalArgumentException.class, () -> byId.toPredicate(cb, root, "name", "asc"));
+    }
+
+    @Test
+    void orderByAddsIdTieBreakerInSameDirection() {
+        Order[] asc = KeysetCursor.orderBy(cb, root, "name", "asc");
+        Order[] desc = KeysetCursor.orderBy(cb, root, "name", "DESC");
+        Order[] idOnly = KeysetCursor.orderBy(cb, root, null, "desc");
+
+        assertEquals("[asc(name), asc(id)]", Arrays.toString(asc));
+        assertEquals("[desc(name), desc(id)]", Arrays.toString(desc));
+        assertEquals("[desc(id)]", Arrays.toString(idOnly));
+    }
+
+    private static String base64(String raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,84 @@
+package se.ifmo.ru.lab1.dao;
+
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Root;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// CriteriaBuilder и Root без JPA-провайдера: каждый вызов возвращает узел, чей toString —
+// запись построенного выражения, например or(greaterThan(name, b), and(equal(name, b), greaterThan(id, 7))).
+// root.get("a").get("b") записывается как a.b; getJavaType берет тип поля из переданной карты.
+final class RecordingCriteria {
+
+    private RecordingCriteria() {
+    }
+
+    static CriteriaBuilder builder() {
+        return node(CriteriaBuilder.class, "cb", Map.of());
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> Root<T> root(Map<String, Class<?>> attributeTypes) {
+        return node(Root.class, "", attributeTypes);
+    }
+
+    private static <T> T node(Class<T> type, String label, Map<String, Class<?>> attributeTypes) {
+        Object proxy = Proxy.newProxyInstance(RecordingCriteria.class.getClassLoader(), new Class<?>[]{type},
+                (self, method, args) -> invoke(self, label, method, args, attributeTypes));
+        return type.cast(proxy);
+    }
+
+    private static Object invoke(Object self, String label, Method method, Object[] args,
+                                 Map<String, Class<?>> attributeTypes) {
+        switch (method.getName()) {
+            case "toString":
+                return label;
+            case "hashCode":
+                return System.identityHashCode(self);
+            case "equals":
+                return self == args[0];
+            case "getJavaType":
+                Class<?> javaType = attributeTypes.get(label);
+                if (javaType == null) {
+                    throw new IllegalArgumentException("No type for attribute " + label);
+                }
+                return javaType;
+            default:
+                break;
+        }
+        String result;
+        if (method.getName().equals("get") && args != null && args.length == 1 && args[0] instanceof String name) {
+            result = label.isEmpty() ? name : label + "." + name;
+        } else if (label.equals("cb")) {
+            result = method.getName() + "(" + String.join(", ", flatten(args)) + ")";
+        } else {
+            result = label + "." + method.getName() + "(" + String.join(", ", flatten(args)) + ")";
+        }
+        if (!method.getReturnType().isInterface()) {
+            throw new UnsupportedOperationException(method.toString());
+        }
+        return node(method.getReturnType(), result, attributeTypes);
+    }
+
+    private static List<String> flatten(Object[] args) {
+        List<String> parts = new ArrayList<>();
+        if (args == null) {
+            return parts;
+        }
+        for (Object arg : args) {
+            if (arg != null && arg.getClass().isArray()) {
+                for (int i = 0; i < Array.getLength(arg); i++) {
+                    parts.add(String.valueOf(Array.get(arg, i)));
+                }
+            } else {
+                parts.add(String.valueOf(arg));
+            }
+        }
+        return parts;
+    }
+}
@@ -0,0 +1,136 @@
+package se.ifmo.ru.lab1.dao;
+
+import jakarta.persistence.EntityManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import se.ifmo.ru.lab1.dto.SpaceMarineDTO;
+import se.ifmo.ru.lab1.entity.AstartesCategory;
+import se.ifmo.ru.lab1.entity.Chapter;
+import se.ifmo.ru.lab1.entity.Coordinates;
+import se.ifmo.ru.lab1.entity.SpaceMarine;
+import se.ifmo.ru.lab1.entity.Weapon;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Число SQL-запросов списков и поиска не зависит от числа строк: связи coordinates и chapter
+// приходят в том же запросе (граф SpaceMarine.withRelations или DTO-проекция), а не 1 + 2N.
+// Кэш второго уровня в TestDatabase выключен, поэтому каждая связь, не пришедшая JOIN'ом, стоит запроса
+class SpaceMarineDAOTest {
+
+    private static final int ROWS = 20;
+
+    private static SessionFactory sessionFactory;
+    private static Statistics statistics;
+    // single* — связи одного десантника; shared* — общие для ROWS десантников, остальные связи у каждого свои
+    private static Chapter single;
+    private static Coordinates singleCoordinates;
+    private static Chapter shared;
+    private static Coordinates sharedCoordinates;
+    private static final List<Long> coordinatesIds = new ArrayList<>();
+
+    private final EntityManager entityManager = sessionFactory.createEntityManager();
+    private final SpaceMarineDAO dao;
+
+    SpaceMarineDAOTest() throws ReflectiveOperationException {
+        dao = TestDatabase.spaceMarineDAO(entityManager);
+    }
+
+    @BeforeAll
+    static void createData() {
+        sessionFactory = TestDatabase.open("statements");
+        statistics = sessionFactory.getStatistics();
+
+        sessionFactory.inTransaction(session -> {
+            single = new Chapter("Single", 1);
+            singleCoordinates = new Coordinates(0f, 0d);
+            shared = new Chapter("Shared", ROWS);
+            sharedCoordinates = new Coordinates(1f, 1d);
+            session.persist(single);
+            session.persist(singleCoordinates);
+            session.persist(shared);
+            session.persist(sharedCoordinates);
+            session.persist(marine("Lone", singleCoordinates, single, 1));
+            for (int i = 0; i < ROWS; i++) {
+                Coordinates coordinates = new Coordinates((float) i + 2, null);
+                session.persist(coordinates);
+                coordinatesIds.add(coordinates.getId());
+                session.persist(marine("Shared chapter " + i, coordinates, shared, 50));
+
+                Chapter chapter = new Chapter("Chapter " + i, 1);
+                session.persist(chapter);
+                session.persist(marine("Shared coordinates " + i, sharedCoordinates, chapter, 50));
+            }
+        });
+    }
+
+    @AfterAll
+    static void close() {
+        sessionFactory.close();
+    }
+
+    @Test
+    void dtoPageIsOneStatement() {
+        assertConstant(
+                () -> dao.findDTOPage(SpaceMarineFilter.NONE, "id", "asc", 0, null, 1, true).getContent(),
+                () -> dao.findDTOPage(SpaceMarineFilter.NONE, "id", "asc", 0, null, 2 * ROWS + 1, true).getContent());
+
+        String cursor = dao.findDTOPage(SpaceMarineFilter.NONE, "name", "asc", 0, null, 1, false).getNextCursor();
+        assertConstant(
+                () -> dao.findDTOPage(SpaceMarineFilter.NONE, "name", "asc", 0, cursor, 1, false).getContent(),
+                () -> dao.findDTOPage(SpaceMarineFilter.NONE, "name", "asc", 0, cursor, 2 * ROWS, false).getContent());
+    }
+
+    @Test
+    void dtoSearchesAreOneStatement() {
+        assertConstant(() -> dao.findDTOsByNameContaining("Lone"),
+                () -> dao.findDTOsByNameContaining("Shared"));
+        assertConstant(() -> dao.findDTOsByHealthLessThan(2),
+                () -> dao.findDTOsByHealthLessThan(100));
+    }
+
+    @Test
+    void entityListsFetchRelationsInTheSameStatement() {
+        assertConstant(() -> dao.findByChapterId(single.getId()),
+                () -> dao.findByChapterId(shared.getId()));
+        assertConstant(() -> dao.findByCoordinatesId(singleCoordinates.getId()),
+                () -> dao.findByCoordinatesId(sharedCoordinates.getId()));
+        assertConstant(() -> dao.findByCoordinatesIds(List.of(singleCoordinates.getId())),
+                () -> dao.findByCoordinatesIds(coordinatesIds));
+    }
+
+    private void assertConstant(Supplier<List<?>> one, Supplier<List<?>> many) {
+        assertEquals(1, statements(one, 1));
+        assertEquals(1, statements(many, ROWS));
+    }
+
+    // Запросы одного вызова; строк должно быть не меньше minRows, чтобы N+1 было видно
+    private long statements(Supplier<List<?>> query, int minRows) {
+        entityManager.clear();
+        statistics.clear();
+        List<?> rows = query.get();
+        long statements = statistics.getPrepareStatementCount();
+        assertTrue(rows.size() >= minRows, "rows: " + rows.size());
+        for (Object row : rows) {
+            if (row instanceof SpaceMarine marine) {
+                marine.getCoordinates().getX();
+                marine.getChapter().getName();
+            } else {
+                ((SpaceMarineDTO) row).getCoordinates().getX();
+            }
+        }
+        assertEquals(statements, statistics.getPrepareStatementCount(), "lazy loads after the query");
+        return statements;
+    }
+
+    private static SpaceMarine marine(String name, Coordinates coordinates, Chapter chapter, int health) {
+        return new SpaceMarine(name, coordinates, chapter, health, 1, AstartesCategory.ASSAULT, Weapon.FLAMER);
+    }
+}
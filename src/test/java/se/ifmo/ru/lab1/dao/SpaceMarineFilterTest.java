@@ -0,0 +1,107 @@
+package se.ifmo.ru.lab1.dao;
+
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Root;
+import org.junit.jupiter.api.Test;
+import se.ifmo.ru.lab1.entity.SpaceMarine;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SpaceMarineFilterTest {
+
+    private final CriteriaBuilder cb = RecordingCriteria.builder();
+    private final Root<SpaceMarine> root = RecordingCriteria.root(Map.of());
+
+    @Test
+    void blankParametersGiveEmptyFilter() {
+        SpaceMarineFilter filter = SpaceMarineFilter.parse(null, "", "  ", null, "", null, " ");
+
+        assertTrue(filter.isEmpty());
+        assertNull(filter.getName());
+        assertEquals("[]", predicates(filter));
+        assertTrue(SpaceMarineFilter.NONE.isEmpty());
+    }
+
+    @Test
+    void nameIsNormalized() {
+        SpaceMarineFilter filter = SpaceMarineFilter.byName("  Titus ");
+
+        assertFalse(filter.isEmpty());
+        assertEquals("titus", filter.getName());
+        assertEquals("[equal(lower(name), titus)]", predicates(filter));
+    }
+
+    @Test
+    void rangesAndExactValues() {
+        assertEquals("[greaterThanOrEqualTo(health, 10), lessThanOrEqualTo(health, 50)]",
+                predicates(parseHealth("10..50")));
+        assertEquals("[greaterThanOrEqualTo(health, 10)]", predicates(parseHealth("10..")));
+        assertEquals("[lessThanOrEqualTo(health, 50)]", predicates(parseHealth(" ..50 ")));
+        assertEquals("[greaterThanOrEqualTo(health, 42), lessThanOrEqualTo(health, 42)]",
+                predicates(parseHealth("42")));
+        assertEquals("[greaterThanOrEqualTo(heartCount, 1), lessThanOrEqualTo(heartCount, 3)]",
+                predicates(SpaceMarineFilter.parse(null, null, "1..3", null, null, null, null)));
+    }
+
+    @Test
+    void enumSetsAreCaseInsensitive() {
+        SpaceMarineFilter filter = SpaceMarineFilter.parse(null, null, null,
+                "assault, ,Terminator", "FLAMER", null, null);
+
+        assertEquals("[category.in([ASSAULT, TERMINATOR]), weaponType.in([FLAMER])]", predicates(filter));
+    }
+
+    @Test
+    void creationDateIsHalfOpenRangeInServerZone() {
+        SpaceMarineFilter filter = SpaceMarineFilter.parse(null, null, null, null, null, null,
+                "2024-01-01..2024-02-01T00:00:00Z");
+        String from = LocalDate.of(2024, 1, 1).atStartOfDay(ZoneId.systemDefault()).toString();
+
+        assertEquals("[greaterThanOrEqualTo(creationDate, " + from + "), lessThan(creationDate, 2024-02-01T00:00Z)]",
+                predicates(filter));
+    }
+
+    @Test
+    void equalityClausesPrecedeRanges() {
+        SpaceMarineFilter filter = SpaceMarineFilter.parse("Titus", "..50", null, "ASSAULT", null, " 5 ", null);
+
+        assertEquals("[equal(chapter.id, 5), category.in([ASSAULT]), equal(lower(name), titus), "
+                + "lessThanOrEqualTo(health, 50)]", predicates(filter));
+    }
+
+    @Test
+    void invalidValuesAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> parseHealth("abc"));
+        assertThrows(IllegalArgumentException.class, () -> parseHealth(".."));
+        assertThrows(IllegalArgumentException.class, () -> parseHealth("50..10"));
+        assertThrows(IllegalArgumentException.class, () -> parseHealth("1..x"));
+        assertThrows(IllegalArgumentException.class,
+                () -> SpaceMarineFilter.parse(null, null, null, "PSYKER", null, null, null));
+        assertThrows(IllegalArgumentException.class,
+                () -> SpaceMarineFilter.parse(null, null, null, " , ", null, null, null));
+        assertThrows(IllegalArgumentException.class,
+                () -> SpaceMarineFilter.parse(null, null, null, null, null, "five", null));
+        assertThrows(IllegalArgumentException.class,
+                () -> SpaceMarineFilter.parse(null, null, null, null, null, null, "2024-01-01"));
+        assertThrows(IllegalArgumentException.class,
+                () -> SpaceMarineFilter.parse(null, null, null, null, null, null, "2024-02-01..2024-01-01"));
+        assertThrows(IllegalArgumentException.class,
+                () -> SpaceMarineFilter.parse(null, null, null, null, null, null, "yesterday.."));
+    }
+
+    private static SpaceMarineFilter parseHealth(String health) {
+        return SpaceMarineFilter.parse(null, health, null, null, null, null, null);
+    }
+
+    private String predicates(SpaceMarineFilter filter) {
+        return filter.toPredicates(cb, root).toString();
+    }
+}
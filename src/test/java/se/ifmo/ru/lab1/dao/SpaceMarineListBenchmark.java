@@ -0,0 +1,136 @@
+package se.ifmo.ru.lab1.dao;
+
+import com.sun.management.ThreadMXBean;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Root;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import se.ifmo.ru.lab1.dto.SpaceMarineDTO;
+import se.ifmo.ru.lab1.entity.AstartesCategory;
+import se.ifmo.ru.lab1.entity.Chapter;
+import se.ifmo.ru.lab1.entity.Coordinates;
+import se.ifmo.ru.lab1.entity.SpaceMarine;
+import se.ifmo.ru.lab1.entity.Weapon;
+import se.ifmo.ru.lab1.mapper.SpaceMarineMapper;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Страница списка десантников двумя путями: управляемые сущности с графом withRelations и
+// SpaceMarineMapper.toDTO (как было до DTO-проекции) против findDTOPage. Каждый вызов — в своей
+// транзакции с пустым контекстом, как запрос к REST; коммит включает dirty checking сущностей.
+// Печатает время и память, выделенную потоком, на одну страницу. Имя класса не подходит под
+// шаблоны surefire, поэтому в обычную сборку не входит:
+//   mvn test -Dtest=SpaceMarineListBenchmark
+class SpaceMarineListBenchmark {
+
+    private static final int ROWS = 1000;
+    private static final int CHAPTERS = 10;
+    private static final int[] PAGE_SIZES = {10, 100, 1000};
+    // Строк на замер одного пути при каждом размере страницы; столько же на прогрев
+    private static final int ROWS_PER_RUN = 50_000;
+
+    private static SessionFactory sessionFactory;
+
+    private final EntityManager entityManager = sessionFactory.createEntityManager();
+    private final SpaceMarineDAO dao;
+    private final SpaceMarineMapper mapper = new SpaceMarineMapper();
+    private final ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    SpaceMarineListBenchmark() throws ReflectiveOperationException {
+        dao = TestDatabase.spaceMarineDAO(entityManager);
+    }
+
+    @BeforeAll
+    static void createData() {
+        sessionFactory = TestDatabase.open("benchmark");
+        sessionFactory.inTransaction(session -> {
+            List<Chapter> chapters = new ArrayList<>();
+            for (int i = 0; i < CHAPTERS; i++) {
+                Chapter chapter = new Chapter("Chapter " + i, ROWS / CHAPTERS);
+                session.persist(chapter);
+                chapters.add(chapter);
+            }
+            for (int i = 0; i < ROWS; i++) {
+                Coordinates coordinates = new Coordinates((float) i, (double) -i);
+                session.persist(coordinates);
+                session.persist(new SpaceMarine("Marine " + i, coordinates, chapters.get(i % CHAPTERS),
+                        1 + i % 100, 1 + i % 3, AstartesCategory.values()[i % AstartesCategory.values().length],
+                        Weapon.values()[i % Weapon.values().length]));
+            }
+        });
+    }
+
+    @AfterAll
+    static void close() {
+        sessionFactory.close();
+    }
+
+    @Test
+    void entityAndMapperVersusDtoProjection() {
+        System.out.printf("%6s %18s %18s %18s %18s%n",
+                "size", "entity+mapper us", "projection us", "entity+mapper KB", "projection KB");
+        for (int size : PAGE_SIZES) {
+            assertEquals(ids(entityPage(size)), ids(dtoPage(size)));
+            int iterations = ROWS_PER_RUN / size;
+            measure(this::entityPage, size, iterations);
+            measure(this::dtoPage, size, iterations);
+            double[] entity = measure(this::entityPage, size, iterations);
+            double[] projection = measure(this::dtoPage, size, iterations);
+            System.out.printf("%6d %18.1f %18.1f %18.1f %18.1f%n",
+                    size, entity[0], projection[0], entity[1], projection[1]);
+        }
+    }
+
+    // {мкс, КБ} на страницу
+    private double[] measure(IntFunction<List<SpaceMarineDTO>> page, int size, int iterations) {
+        long bytes = threads.getCurrentThreadAllocatedBytes();
+        long started = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            entityManager.getTransaction().begin();
+            page.apply(size);
+            entityManager.getTransaction().commit();
+            entityManager.clear();
+        }
+        long elapsed = System.nanoTime() - started;
+        long allocated = threads.getCurrentThreadAllocatedBytes() - bytes;
+        return new double[]{elapsed / 1000.0 / iterations, allocated / 1024.0 / iterations};
+    }
+
+    // Прежний путь списка: findAll(page, size, sortBy, sortOrder) с графом и маппер в сервисе
+    private List<SpaceMarineDTO> entityPage(int size) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<SpaceMarine> cq = cb.createQuery(SpaceMarine.class);
+        Root<SpaceMarine> root = cq.from(SpaceMarine.class);
+        cq.orderBy(KeysetCursor.orderBy(cb, root, "id", "asc"));
+        TypedQuery<SpaceMarine> query = entityManager.createQuery(cq);
+        query.setHint("jakarta.persistence.fetchgraph", entityManager.getEntityGraph(SpaceMarine.WITH_RELATIONS));
+        query.setMaxResults(size);
+        List<SpaceMarineDTO> dtos = new ArrayList<>(size);
+        for (SpaceMarine marine : query.getResultList()) {
+            dtos.add(mapper.toDTO(marine));
+        }
+        return dtos;
+    }
+
+    private List<SpaceMarineDTO> dtoPage(int size) {
+        return dao.findDTOPage(SpaceMarineFilter.NONE, "id", "asc", 0, null, size, false).getContent();
+    }
+
+    private static List<Integer> ids(List<SpaceMarineDTO> page) {
+        List<Integer> ids = new ArrayList<>(page.size());
+        for (SpaceMarineDTO dto : page) {
+            ids.add(dto.getId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,40 @@
+package se.ifmo.ru.lab1.dao;
+
+import jakarta.persistence.EntityManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import se.ifmo.ru.lab1.entity.Chapter;
+import se.ifmo.ru.lab1.entity.Coordinates;
+import se.ifmo.ru.lab1.entity.SpaceMarine;
+
+import java.lang.reflect.Field;
+
+// Hibernate поверх H2 в памяти: схема создается из сущностей, кэш второго уровня и валидация
+// выключены, статистика включена, как в persistence.xml
+final class TestDatabase {
+
+    private TestDatabase() {
+    }
+
+    static SessionFactory open(String name) {
+        return new Configuration()
+                .addAnnotatedClass(SpaceMarine.class)
+                .addAnnotatedClass(Coordinates.class)
+                .addAnnotatedClass(Chapter.class)
+                .setProperty("hibernate.connection.url", "jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1")
+                .setProperty("hibernate.hbm2ddl.auto", "create-drop")
+                .setProperty("hibernate.cache.use_second_level_cache", "false")
+                .setProperty("hibernate.generate_statistics", "true")
+                .setProperty("jakarta.persistence.validation.mode", "none")
+                .buildSessionFactory();
+    }
+
+    // DAO без CDI: только EntityManager, кэши ответов для чтения не нужны
+    static SpaceMarineDAO spaceMarineDAO(EntityManager entityManager) throws ReflectiveOperationException {
+        SpaceMarineDAO dao = new SpaceMarineDAO();
+        Field field = SpaceMarineDAO.class.getDeclaredField("entityManager");
+        field.setAccessible(true);
+        field.set(dao, entityManager);
+        return dao;
+    }
+}
@@ -0,0 +1,275 @@
+package se.ifmo.ru.lab1.stats;
+
+import jakarta.transaction.Status;
+import jakarta.transaction.UserTransaction;
+import org.junit.jupiter.api.Test;
+import se.ifmo.ru.lab1.dao.ChapterDAO;
+import se.ifmo.ru.lab1.transaction.TransactionCallbacks;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChapterCounterBufferTest {
+
+    private static final int THREADS = 8;
+    private static final int OPERATIONS = 20_000;
+    private static final long CHAPTERS = 4;
+
+    private final FakeDatabase database = new FakeDatabase();
+    private final FakeTransactions transactions = new FakeTransactions();
+    private final ChapterCounterBuffer buffer = new ChapterCounterBuffer();
+
+    ChapterCounterBufferTest() throws ReflectiveOperationException {
+        inject("chapterDAO", database.dao);
+        inject("userTransaction", database.transaction);
+        inject("transactionCallbacks", transactions);
+    }
+
+    @Test
+    void concurrentDeltasAndFlushesSumExactly() throws Exception {
+        Map<Long, AtomicLong> expected = new ConcurrentHashMap<>();
+        for (long id = 1; id <= CHAPTERS; id++) {
+            expected.put(id, new AtomicLong());
+        }
+        // Каждый седьмой сброс падает и должен оставить дельты до следующей попытки
+        database.failEvery = 7;
+
+        runConcurrently(() -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < OPERATIONS; i++) {
+                long chapterId = 1 + random.nextLong(CHAPTERS);
+                int delta = random.nextInt(5) - 2;
+                if (random.nextBoolean()) {
+                    buffer.add(chapterId, delta);
+                    expected.get(chapterId).addAndGet(delta);
+                    continue;
+                }
+                transactions.begin();
+                buffer.add(chapterId, delta);
+                buffer.add(chapterId, delta);
+                if (random.nextInt(4) == 0) {
+                    transactions.rollback();
+                } else {
+                    transactions.commit();
+                    expected.get(chapterId).addAndGet(2L * delta);
+                }
+            }
+        });
+        database.failEvery = 0;
+        buffer.flush();
+
+        for (long id = 1; id <= CHAPTERS; id++) {
+            assertEquals(expected.get(id).get(), database.count(id), "chapter " + id);
+        }
+        assertTrue(database.failures.get() > 0);
+    }
+
+    @Test
+    void concurrentTryAddNeverPassesLimit() throws Exception {
+        database.counts.put(1L, 990L);
+        AtomicInteger accepted = new AtomicInteger();
+
+        runConcurrently(() -> {
+            for (int i = 0; i < 50; i++) {
+                transactions.begin();
+                if (buffer.tryAdd(1L, 1, 1000, () -> database.stored(1L))) {
+                    if (ThreadLocalRandom.current().nextInt(3) == 0) {
+                        transactions.rollback();
+                    } else {
+                        transactions.commit();
+                        accepted.incrementAndGet();
+                    }
+                } else {
+                    transactions.rollback();
+                }
+            }
+        });
+        buffer.flush();
+
+        assertTrue(accepted.get() <= 10);
+        assertEquals(990 + accepted.get(), database.count(1L));
+        // Без параллельных операций отказ с запасом пропадает: оставшиеся места заполняются точно
+        while (buffer.tryAdd(1L, 1, 1000, () -> database.stored(1L))) {
+            accepted.incrementAndGet();
+        }
+        buffer.flush();
+        assertEquals(10, accepted.get());
+        assertEquals(1000, database.count(1L));
+    }
+
+    @Test
+    void tryAddRejectsMissingChapter() {
+        assertFalse(buffer.tryAdd(42L, 1, 1000, () -> null));
+        buffer.flush();
+        assertEquals(0, database.count(42L));
+        assertEquals(0, database.writes.get());
+    }
+
+    private void runConcurrently(Runnable worker) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean done = new AtomicBoolean();
+        List<Throwable> errors = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+                    worker.run();
+                } catch (Throwable e) {
+                    synchronized (errors) {
+                        errors.add(e);
+                    }
+                }
+            }));
+        }
+        Thread flusher = new Thread(() -> {
+            while (!done.get()) {
+                buffer.flush();
+            }
+        });
+        threads.forEach(Thread::start);
+        flusher.start();
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        done.set(true);
+        flusher.join();
+        assertTrue(errors.isEmpty(), () -> errors.toString());
+    }
+
+    private void inject(String name, Object value) throws ReflectiveOperationException {
+        Field field = ChapterCounterBuffer.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(buffer, value);
+    }
+
+    // Таблица chapters: записи сброса видны только после коммита его транзакции
+    private static class FakeDatabase {
+        private final Map<Long, Long> counts = new ConcurrentHashMap<>();
+        private final Map<Long, Long> uncommitted = new HashMap<>();
+        private final AtomicInteger writes = new AtomicInteger();
+        private final AtomicInteger failures = new AtomicInteger();
+        private volatile int failEvery;
+        private int status = Status.STATUS_NO_TRANSACTION;
+
+        private final ChapterDAO dao = new ChapterDAO() {
+            @Override
+            public void addMarinesToChapter(Long chapterId, int delta) {
+                uncommitted.merge(chapterId, (long) delta, Long::sum);
+            }
+        };
+
+        private final UserTransaction transaction = new UserTransaction() {
+            @Override
+            public void begin() {
+                status = Status.STATUS_ACTIVE;
+            }
+
+            @Override
+            public void commit() {
+                int write = writes.incrementAndGet();
+                if (failEvery > 0 && write % failEvery == 0) {
+                    failures.incrementAndGet();
+                    throw new IllegalStateException("Simulated flush failure");
+                }
+                uncommitted.forEach((id, delta) -> counts.merge(id, delta, Long::sum));
+                uncommitted.clear();
+                status = Status.STATUS_NO_TRANSACTION;
+            }
+
+            @Override
+            public void rollback() {
+                uncommitted.clear();
+                status = Status.STATUS_NO_TRANSACTION;
+            }
+
+            @Override
+            public void setRollbackOnly() {
+                status = Status.STATUS_MARKED_ROLLBACK;
+            }
+
+            @Override
+            public int getStatus() {
+                return status;
+            }
+
+            @Override
+            public void setTransactionTimeout(int seconds) {
+            }
+        };
+
+        private long count(Long chapterId) {
+            return counts.getOrDefault(chapterId, 0L);
+        }
+
+        private Integer stored(Long chapterId) {
+            return (int) count(chapterId);
+        }
+    }
+
+    // Транзакция на поток: ресурсы и обработчики завершения, как у TransactionSynchronizationRegistry
+    private static class FakeTransactions extends TransactionCallbacks {
+        private final ThreadLocal<Map<Object, Object>> resources = new ThreadLocal<>();
+        private final ThreadLocal<List<Consumer<Boolean>>> completions = new ThreadLocal<>();
+
+        void begin() {
+            resources.set(new HashMap<>());
+            completions.set(new ArrayList<>());
+        }
+
+        void commit() {
+            complete(true);
+        }
+
+        void rollback() {
+            complete(false);
+        }
+
+        private void complete(boolean committed) {
+            List<Consumer<Boolean>> callbacks = completions.get();
+            resources.remove();
+            completions.remove();
+            callbacks.forEach(callback -> callback.accept(committed));
+        }
+
+        @Override
+        public boolean isTransactionActive() {
+            return resources.get() != null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T perTransaction(Object key, Supplier<T> factory, Consumer<T> onCommit, Consumer<T> onRollback) {
+            if (!isTransactionActive()) {
+                return null;
+            }
+            return (T) resources.get().computeIfAbsent(key, k -> {
+                T created = factory.get();
+                completions.get().add(committed -> {
+                    if (committed) {
+                        onCommit.accept(created);
+                    } else {
+                        onRollback.accept(created);
+                    }
+                });
+                return created;
+            });
+        }
+    }
+}
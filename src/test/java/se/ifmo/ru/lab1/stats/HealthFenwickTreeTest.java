@@ -0,0 +1,115 @@
+package se.ifmo.ru.lab1.stats;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class HealthFenwickTreeTest {
+
+    @Test
+    void emptyTree() {
+        HealthFenwickTree tree = new HealthFenwickTree();
+
+        assertEquals(0, tree.total());
+        assertEquals(0, tree.countLessThan(100));
+        assertEquals(0, tree.countLessThan(Integer.MAX_VALUE));
+    }
+
+    @Test
+    void countsStrictlyBelowThreshold() {
+        HealthFenwickTree tree = new HealthFenwickTree();
+        tree.add(10, 2);
+        tree.add(20, 1);
+        tree.add(30, 3);
+
+        assertEquals(6, tree.total());
+        assertEquals(0, tree.countLessThan(1));
+        assertEquals(0, tree.countLessThan(10));
+        assertEquals(2, tree.countLessThan(11));
+        assertEquals(3, tree.countLessThan(30));
+        assertEquals(6, tree.countLessThan(31));
+    }
+
+    @Test
+    void valueAtRankWalksSortedValues() {
+        HealthFenwickTree tree = new HealthFenwickTree();
+        tree.add(10, 2);
+        tree.add(20, 1);
+        tree.add(30, 3);
+
+        assertEquals(10, tree.valueAtRank(1));
+        assertEquals(10, tree.valueAtRank(2));
+        assertEquals(20, tree.valueAtRank(3));
+        assertEquals(30, tree.valueAtRank(4));
+        assertEquals(30, tree.valueAtRank(6));
+    }
+
+    @Test
+    void removalsCancelAdditions() {
+        HealthFenwickTree tree = new HealthFenwickTree();
+        tree.add(5, 1);
+        tree.add(7, 1);
+        tree.add(5, -1);
+
+        assertEquals(1, tree.total());
+        assertEquals(0, tree.countLessThan(7));
+        assertEquals(7, tree.valueAtRank(1));
+    }
+
+    @Test
+    void valuesAboveDomainGoToOverflow() {
+        int domain = HealthFenwickTree.DOMAIN;
+        HealthFenwickTree tree = new HealthFenwickTree();
+        tree.add(domain, 1);
+        tree.add(domain + 1, 2);
+        tree.add(Integer.MAX_VALUE, 1);
+
+        assertEquals(4, tree.total());
+        assertEquals(0, tree.countLessThan(domain));
+        assertEquals(1, tree.countLessThan(domain + 1));
+        assertEquals(3, tree.countLessThan(domain + 2));
+        assertEquals(3, tree.countLessThan(Integer.MAX_VALUE));
+        assertEquals(domain, tree.valueAtRank(1));
+        assertEquals(domain + 1, tree.valueAtRank(3));
+        assertEquals(Integer.MAX_VALUE, tree.valueAtRank(4));
+
+        tree.add(domain + 1, -2);
+        assertEquals(Integer.MAX_VALUE, tree.valueAtRank(2));
+    }
+
+    @Test
+    void matchesSortedListOnRandomData() {
+        Random random = new Random(42);
+        HealthFenwickTree tree = new HealthFenwickTree();
+        List<Integer> values = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) {
+            int health = random.nextInt(10) == 0
+                    ? HealthFenwickTree.DOMAIN + 1 + random.nextInt(1_000)
+                    : 1 + random.nextInt(1_000);
+            values.add(health);
+            tree.add(health, 1);
+        }
+        for (int i = 0; i < 1_000; i++) {
+            Integer removed = values.remove(random.nextInt(values.size()));
+            tree.add(removed, -1);
+        }
+        Collections.sort(values);
+
+        assertEquals(values.size(), tree.total());
+        for (int rank = 1; rank <= values.size(); rank += 37) {
+            assertEquals(values.get(rank - 1), tree.valueAtRank(rank), "rank " + rank);
+        }
+        for (int threshold = 0; threshold < HealthFenwickTree.DOMAIN + 1_100; threshold += 97) {
+            int expected = 0;
+            while (expected < values.size() && values.get(expected) < threshold) {
+                expected++;
+            }
+            assertEquals(expected, tree.countLessThan(threshold), "threshold " + threshold);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package se.ifmo.ru.lab1.stats;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SpaceMarineAggregatesTest {
+
+    @Test
+    void snapshotVisibility() {
+        XactSnapshot snapshot = XactSnapshot.parse("100:110:102,105");
+
+        assertTrue(snapshot.includes(99));
+        assertTrue(snapshot.includes(100));
+        assertFalse(snapshot.includes(102));
+        assertTrue(snapshot.includes(104));
+        assertFalse(snapshot.includes(105));
+        assertFalse(snapshot.includes(110));
+        assertFalse(snapshot.includes(200));
+        assertTrue(XactSnapshot.parse("50:50:").includes(49));
+        assertThrows(IllegalArgumentException.class, () -> XactSnapshot.parse("50:50"));
+    }
+
+    @Test
+    void rebuildReplaysOnlyDeltasMissingFromSnapshot() {
+        SpaceMarineAggregates aggregates = new SpaceMarineAggregates();
+        aggregates.startRebuild();
+        aggregates.finishRebuild(List.<Object[]>of(new Object[]{"90:90:", 10, 2L, 6L}));
+
+        aggregates.startRebuild();
+        // Закоммичена до снимка гистограммы, afterCompletion пришел во время пересборки
+        aggregates.apply(created(85, 20, 1));
+        // В снимке еще активна
+        aggregates.apply(created(100, 30, 4));
+        // Началась после снимка
+        aggregates.apply(created(120, 40, 5));
+        aggregates.finishRebuild(List.of(
+                new Object[]{"95:110:100", 10, 2L, 6L},
+                new Object[]{"95:110:100", 20, 1L, 1L}));
+
+        assertEquals(5, aggregates.getHealthStatistics(1).getCount());
+        assertEquals(2, aggregates.countHealthLessThan(20));
+        assertEquals(3, aggregates.countHealthLessThan(30));
+        assertEquals(4, aggregates.countHealthLessThan(40));
+        assertEquals((6 + 1 + 4 + 5) / 5.0, aggregates.getAverageHeartCount());
+    }
+
+    @Test
+    void lateDeltaAlreadyInSnapshotIsSkipped() {
+        SpaceMarineAggregates aggregates = new SpaceMarineAggregates();
+        aggregates.startRebuild();
+        aggregates.finishRebuild(List.<Object[]>of(new Object[]{"95:110:100", 10, 3L, 9L}));
+
+        // Коммит до снимка, afterCompletion после замены дерева
+        aggregates.apply(created(96, 10, 3));
+        // Была активна в снимке
+        aggregates.apply(created(100, 20, 1));
+
+        assertEquals(4, aggregates.getHealthStatistics(1).getCount());
+        assertEquals(3, aggregates.countHealthLessThan(20));
+        assertEquals((9 + 1) / 4.0, aggregates.getAverageHeartCount());
+    }
+
+    @Test
+    void emptyTableStillCarriesSnapshot() {
+        SpaceMarineAggregates aggregates = new SpaceMarineAggregates();
+        aggregates.startRebuild();
+        aggregates.apply(created(7, 50, 2));
+        aggregates.finishRebuild(List.<Object[]>of(new Object[]{"5:6:", null, null, null}));
+
+        assertTrue(aggregates.isReady());
+        assertEquals(1, aggregates.getHealthStatistics(1).getCount());
+        assertEquals(2.0, aggregates.getAverageHeartCount());
+    }
+
+    private static SpaceMarineAggregates.Delta created(long xid, int health, int heartCount) {
+        SpaceMarineAggregates.Delta delta = new SpaceMarineAggregates.Delta(xid);
+        delta.add(health, heartCount, 1);
+        return delta;
+    }
+}
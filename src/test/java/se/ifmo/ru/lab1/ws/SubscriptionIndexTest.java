@@ -0,0 +1,105 @@
+package se.ifmo.ru.lab1.ws;
+
+import org.junit.jupiter.api.Test;
+import se.ifmo.ru.lab1.dto.ChangeEvent;
+import se.ifmo.ru.lab1.dto.ChapterDTO;
+import se.ifmo.ru.lab1.dto.SpaceMarineDTO;
+import se.ifmo.ru.lab1.dto.SubscriptionRequest;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SubscriptionIndexTest {
+
+    private final SubscriptionIndex<String> index = new SubscriptionIndex<>();
+
+    SubscriptionIndexTest() {
+        index.add("all");
+        index.add("chapter5");
+        index.add("chapter7");
+        index.add("marine42");
+        index.add("chapters");
+        index.apply("chapter5", subscribe(null, List.of(5L), null));
+        index.apply("chapter7", subscribe(null, List.of(7L), null));
+        index.apply("marine42", subscribe(null, null, List.of(42)));
+        index.apply("chapters", subscribe(List.of(ChangeEvent.CHAPTER), null, null));
+    }
+
+    @Test
+    void createdReachesChapterOfData() {
+        ChangeEvent event = ChangeEvent.created(ChangeEvent.SPACE_MARINE, 42, marine(42, 5L));
+
+        assertEquals(Set.of("all", "chapter5", "marine42"), index.match(event));
+    }
+
+    @Test
+    void moveReachesOldAndNewChapter() {
+        ChangeEvent event = ChangeEvent.updated(ChangeEvent.SPACE_MARINE, 42, marine(42, 7L), 5L);
+
+        assertEquals(Set.of("all", "chapter5", "chapter7", "marine42"), index.match(event));
+    }
+
+    @Test
+    void removalFromChapterReachesOldChapter() {
+        ChangeEvent event = ChangeEvent.updated(ChangeEvent.SPACE_MARINE, 1, marine(1, null), 7L);
+
+        assertEquals(Set.of("all", "chapter7"), index.match(event));
+    }
+
+    @Test
+    void deleteReachesPreviousChapter() {
+        assertEquals(Set.of("all", "chapter5", "marine42"),
+                index.match(ChangeEvent.deleted(ChangeEvent.SPACE_MARINE, 42, 5L)));
+        assertEquals(Set.of("all"),
+                index.match(ChangeEvent.deleted(ChangeEvent.SPACE_MARINE, 1, null)));
+    }
+
+    @Test
+    void chapterEventsReachChapterAndEntitySubscribers() {
+        assertEquals(Set.of("all", "chapter7", "chapters"),
+                index.match(ChangeEvent.deleted(ChangeEvent.CHAPTER, 7L)));
+    }
+
+    @Test
+    void changedReachesEveryFilteredSession() {
+        assertEquals(Set.of("all", "chapter5", "chapter7", "marine42", "chapters"),
+                index.match(ChangeEvent.changed(ChangeEvent.SPACE_MARINE)));
+    }
+
+    @Test
+    void unsubscribeReturnsToAllEvents() {
+        SubscriptionRequest unsubscribe = new SubscriptionRequest();
+        unsubscribe.setType("unsubscribe");
+        index.apply("chapter5", unsubscribe);
+
+        assertEquals(Set.of("all", "chapter5"),
+                index.match(ChangeEvent.deleted(ChangeEvent.SPACE_MARINE, 1, null)));
+    }
+
+    @Test
+    void rejectsUnknownEntity() {
+        assertThrows(IllegalArgumentException.class,
+                () -> index.apply("all", subscribe(List.of("planet"), null, null)));
+    }
+
+    private static SubscriptionRequest subscribe(List<String> entities, List<Long> chapterIds, List<Integer> marineIds) {
+        SubscriptionRequest request = new SubscriptionRequest();
+        request.setType("subscribe");
+        request.setEntities(entities);
+        request.setChapterIds(chapterIds);
+        request.setMarineIds(marineIds);
+        return request;
+    }
+
+    private static SpaceMarineDTO marine(Integer id, Long chapterId) {
+        SpaceMarineDTO marine = new SpaceMarineDTO();
+        marine.setId(id);
+        if (chapterId != null) {
+            marine.setChapter(new ChapterDTO(chapterId, "Chapter " + chapterId, 1));
+        }
+        return marine;
+    }
+}